@@ -0,0 +1,34 @@
+package com.safa.loanapi.common;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class RoundTwoDecimalBenchmark {
+    @Param({"100.0", "1000000.0"})
+    private double maxAmount;
+
+    private double[] amounts;
+
+    @Setup
+    public void setUp() {
+        SplittableRandom random = new SplittableRandom(42);
+        amounts = random.doubles(1024, 0, maxAmount).toArray();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(1024)
+    public void roundTwoDecimal(Blackhole blackhole) {
+        for (double amount : amounts) {
+            blackhole.consume(Common.roundTwoDecimal(amount));
+        }
+    }
+}
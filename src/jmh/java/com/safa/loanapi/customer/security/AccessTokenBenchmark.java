@@ -0,0 +1,56 @@
+package com.safa.loanapi.customer.security;
+
+import org.openjdk.jmh.annotations.*;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.util.Collections;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Verifying an access token, on the same thread every time and on a new virtual thread per token like the requests of
+ * the application.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class AccessTokenBenchmark {
+    private AccessTokenService accessTokenService;
+    private String token;
+
+    @Setup
+    public void setUp() {
+        accessTokenService = new AccessTokenService("benchmark-secret", Duration.ofMinutes(15), Clock.systemUTC());
+        token = accessTokenService.issue(new CustomUserDetails(1L, "benchmark", null,
+                Collections.singleton(new SimpleGrantedAuthority("ROLE_CUSTOMER")))).getAccessToken();
+    }
+
+    @Benchmark
+    @Threads(4)
+    public CustomUserDetails verify() {
+        return accessTokenService.verify(token);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public CustomUserDetails verifyOnVirtualThread() throws ExecutionException, InterruptedException {
+        FutureTask<CustomUserDetails> task = new FutureTask<>(() -> accessTokenService.verify(token));
+        Thread.startVirtualThread(task);
+        return task.get();
+    }
+
+    @Benchmark
+    @Threads(4)
+    public Thread startVirtualThread() throws InterruptedException {
+        // The cost of the thread alone, to subtract from verifyOnVirtualThread
+        Thread thread = Thread.startVirtualThread(() -> { });
+        thread.join();
+        return thread;
+    }
+}
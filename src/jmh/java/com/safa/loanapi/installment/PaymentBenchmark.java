@@ -0,0 +1,55 @@
+package com.safa.loanapi.installment;
+
+import com.safa.loanapi.installment.dao.Installment;
+import org.openjdk.jmh.annotations.*;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The {@link PaymentAllocation} of {@link InstallmentService#payInstallment} without the repositories: payable
+ * installments are priced for the payment day and paid while the amount covers them.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class PaymentBenchmark {
+    @Param({"6", "12", "24"})
+    private int numberOfInstallments;
+
+    @Param({"500.0", "100000.0"})
+    private double amount;
+
+    private List<Installment> installments;
+    private LocalDate today;
+
+    @Setup
+    public void setUp() {
+        // Installments are spread around today, so the loop prices overdue, due and early installments
+        today = LocalDate.of(2025, 6, 15);
+        LocalDate firstDueDate = today.minusMonths(numberOfInstallments / 2).withDayOfMonth(1);
+
+        installments = new ArrayList<>(numberOfInstallments);
+        for (int i = 0; i < numberOfInstallments; i++) {
+            installments.add(new Installment(1L, BigDecimal.valueOf(166.67), BigDecimal.valueOf(183.33), firstDueDate.plusMonths(i)));
+        }
+    }
+
+    @Benchmark
+    public double payInstallments() {
+        // Allocated without marking the installments paid, so every invocation pays the same ones
+        PaymentAllocation<Installment> allocation = PaymentAllocation.allocate(installments, amount, today);
+
+        double addedCreditLimit = 0;
+        for (Installment installment : allocation.getPaid()) {
+            addedCreditLimit += installment.getAmount().doubleValue();
+        }
+        return allocation.getTotalAmountSpent() + addedCreditLimit;
+    }
+}
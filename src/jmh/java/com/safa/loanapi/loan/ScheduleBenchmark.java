@@ -0,0 +1,65 @@
+package com.safa.loanapi.loan;
+
+import com.safa.loanapi.installment.dao.Installment;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Splitting a loan into installments: the boxed {@link LoanService#divideEvenly}, the reusable {@link LoanSchedule}
+ * and the whole schedule of entities {@code createLoan} saves, also on a new virtual thread per loan like the requests
+ * of the application.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ScheduleBenchmark {
+    @Param({"1000.0", "123456.78"})
+    private double amount;
+
+    @Param({"6", "12", "24"})
+    private int numberOfInstallments;
+
+    private final LoanSchedule schedule = new LoanSchedule(24);
+    private long principalCents;
+    private long totalCents;
+
+    @Setup
+    public void setUp() {
+        principalCents = LoanService.toCents(amount);
+        totalCents = LoanService.totalCents(amount, 0.1);
+    }
+
+    @Benchmark
+    public List<Double> divideEvenly() {
+        return LoanService.divideEvenly(amount, numberOfInstallments);
+    }
+
+    @Benchmark
+    public LoanSchedule flatSchedule() {
+        return schedule.flat(principalCents, totalCents, numberOfInstallments);
+    }
+
+    @Benchmark
+    public LoanSchedule annuitySchedule() {
+        return schedule.annuity(principalCents, 0.01, numberOfInstallments);
+    }
+
+    @Benchmark
+    public List<Installment> buildInstallments() {
+        return LoanService.buildInstallments(1L, amount, 0.1, numberOfInstallments);
+    }
+
+    @Benchmark
+    public List<Installment> buildInstallmentsOnVirtualThread() throws ExecutionException, InterruptedException {
+        FutureTask<List<Installment>> task = new FutureTask<>(() -> LoanService.buildInstallments(1L, amount, 0.1, numberOfInstallments));
+        Thread.startVirtualThread(task);
+        return task.get();
+    }
+}
@@ -0,0 +1,33 @@
+package com.safa.loanapi.validator;
+
+import com.safa.loanapi.loan.dto.CreateLoan;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class NumberOfInstallmentValidatorBenchmark {
+    private static final Integer[] VALUES = {3, 6, 9, 12, 18, 24, 36};
+
+    private final NumberOfInstallmentValidator validator = new NumberOfInstallmentValidator();
+
+    @Setup
+    public void setUp() throws NoSuchFieldException {
+        // Use the constraint exactly as it is declared on the create loan request
+        validator.initialize(CreateLoan.class.getDeclaredField("numberOfInstallments").getAnnotation(NumberOfInstallment.class));
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(7)
+    public void isValid(Blackhole blackhole) {
+        for (Integer value : VALUES) {
+            blackhole.consume(validator.isValid(value, null));
+        }
+    }
+}
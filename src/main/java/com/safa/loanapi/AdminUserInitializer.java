@@ -17,6 +17,11 @@ public class AdminUserInitializer implements CommandLineRunner {
 
     @Override
     public void run(String... args) throws Exception {
+        // Usernames are unique, the admin is only created the first time the application starts on a database
+        if (customerRepository.findByUsername("admin").isPresent()) {
+            return;
+        }
+
         Customer admin = new Customer();
         admin.setName("admin");
         admin.setSurname("admin");
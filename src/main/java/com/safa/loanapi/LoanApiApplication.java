@@ -2,12 +2,25 @@ package com.safa.loanapi;
 
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.context.annotation.Bean;
+import org.springframework.scheduling.annotation.EnableScheduling;
+
+import java.time.Clock;
 
 @SpringBootApplication
+@EnableScheduling
 public class LoanApiApplication {
 
 	public static void main(String[] args) {
 		SpringApplication.run(LoanApiApplication.class, args);
 	}
 
+	/**
+	 * The clock business dates are taken from, replaced by a fixed clock in tests.
+	 */
+	@Bean
+	public Clock clock() {
+		return Clock.systemDefaultZone();
+	}
+
 }
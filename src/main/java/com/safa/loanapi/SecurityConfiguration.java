@@ -2,11 +2,15 @@ package com.safa.loanapi;
 
 import com.safa.loanapi.exception.advice.AccessDeniedAdvice;
 import com.safa.loanapi.exception.advice.AuthenticationRequiredAdvice;
+import com.safa.loanapi.customer.security.AccessTokenService;
 import com.safa.loanapi.customer.security.CustomUserDetailsService;
+import com.safa.loanapi.customer.security.TokenAuthenticationFilter;
+import io.micrometer.observation.ObservationRegistry;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.security.authentication.AuthenticationManager;
+import org.springframework.security.authentication.ObservationAuthenticationManager;
 import org.springframework.security.config.annotation.authentication.builders.AuthenticationManagerBuilder;
 import org.springframework.security.config.annotation.authentication.configuration.AuthenticationConfiguration;
 import org.springframework.security.config.annotation.method.configuration.EnableMethodSecurity;
@@ -17,6 +21,7 @@ import org.springframework.security.config.annotation.web.configurers.AbstractHt
 import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.security.web.SecurityFilterChain;
+import org.springframework.security.web.authentication.www.BasicAuthenticationFilter;
 
 import static org.springframework.security.config.Customizer.withDefaults;
 
@@ -27,9 +32,16 @@ public class SecurityConfiguration {
     @Autowired
     CustomUserDetailsService customUserDetailsService;
 
+    @Autowired
+    AccessTokenService accessTokenService;
+
+    @Autowired
+    ObservationRegistry observationRegistry;
+
     @Bean
     public AuthenticationManager authenticationManager(AuthenticationConfiguration authenticationConfiguration) throws Exception {
-        return authenticationConfiguration.getAuthenticationManager();
+        // Password logins are timed as the spring.security.authentications metric
+        return new ObservationAuthenticationManager(observationRegistry, authenticationConfiguration.getAuthenticationManager());
     }
 
     @Bean
@@ -41,11 +53,16 @@ public class SecurityConfiguration {
     public SecurityFilterChain filterChain(HttpSecurity http) throws Exception {
         AuthenticationManagerBuilder authenticationManagerBuilder = http.getSharedObject(AuthenticationManagerBuilder.class);
         authenticationManagerBuilder.userDetailsService(customUserDetailsService).passwordEncoder(passwordEncoder());
-        AuthenticationManager authenticationManager = authenticationManagerBuilder.build();
+        AuthenticationManager authenticationManager = new ObservationAuthenticationManager(observationRegistry, authenticationManagerBuilder.build());
+        AuthenticationRequiredAdvice authenticationEntryPoint = new AuthenticationRequiredAdvice();
         http
                 .authorizeHttpRequests((configurer) -> configurer
                         .requestMatchers("/h2-console/**").permitAll()
-                        .requestMatchers("/customers/{customer_id}/loans", "/loans").hasAnyRole("ADMIN", "CUSTOMER")
+                        .requestMatchers("/auth/token").permitAll()
+                        .requestMatchers("/loans/bulk", "/loans/export").hasRole("ADMIN")
+                        .requestMatchers("/actuator/health").permitAll()
+                        .requestMatchers("/actuator/**").hasRole("ADMIN")
+                        .requestMatchers("/customers/{customer_id}/loans", "/customers/{customer_id}/summary", "/loans").hasAnyRole("ADMIN", "CUSTOMER")
                         .requestMatchers("/customers").permitAll()
                         .anyRequest().authenticated()
                 )
@@ -53,8 +70,10 @@ public class SecurityConfiguration {
                 .csrf(AbstractHttpConfigurer::disable)
                 .exceptionHandling((exceptionHandling) ->
                         exceptionHandling.accessDeniedHandler(new AccessDeniedAdvice())
-                                .authenticationEntryPoint(new AuthenticationRequiredAdvice())
+                                .authenticationEntryPoint(authenticationEntryPoint)
                 )
+                // Bearer tokens are checked first, HTTP basic stays available but runs BCrypt on every request
+                .addFilterBefore(new TokenAuthenticationFilter(accessTokenService, authenticationEntryPoint), BasicAuthenticationFilter.class)
                 .httpBasic(withDefaults());
         return http.build();
     }
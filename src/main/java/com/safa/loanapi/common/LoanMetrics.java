@@ -0,0 +1,79 @@
+package com.safa.loanapi.common;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.stereotype.Component;
+
+import java.math.BigDecimal;
+
+/**
+ * Business counters of the loan and payment paths.
+ *
+ * <p>The counters are registered once and shared by every service that creates loans or pays installments, so the
+ * API, bulk origination and settlement all count into the same meters:</p>
+ * <ul>
+ *   <li>{@code loans.originated}: loans originated.</li>
+ *   <li>{@code installments.paid}: installments paid.</li>
+ *   <li>{@code installments.penalties} and {@code installments.penalties.amount}: overdue installments paid with a
+ *   late payment penalty, and the sum of those penalties.</li>
+ *   <li>{@code credit.limit.rejections}: credit limit reservations rejected for not enough available limit.</li>
+ * </ul>
+ */
+@Component
+public class LoanMetrics {
+    private final Counter loansCreated;
+    private final Counter installmentsPaid;
+    private final Counter penalties;
+    private final Counter penaltyAmount;
+    private final Counter limitRejections;
+
+    public LoanMetrics(MeterRegistry meterRegistry) {
+        this.loansCreated = Counter.builder("loans.originated")
+                .description("Loans originated")
+                .register(meterRegistry);
+        this.installmentsPaid = Counter.builder("installments.paid")
+                .description("Installments paid")
+                .register(meterRegistry);
+        this.penalties = Counter.builder("installments.penalties")
+                .description("Overdue installments paid with a late payment penalty")
+                .register(meterRegistry);
+        this.penaltyAmount = Counter.builder("installments.penalties.amount")
+                .description("Sum of the late payment penalties paid")
+                .register(meterRegistry);
+        this.limitRejections = Counter.builder("credit.limit.rejections")
+                .description("Credit limit reservations rejected for not enough available limit")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Counts originated loans.
+     *
+     * @param count the number of loans created
+     */
+    public void loansCreated(int count) {
+        loansCreated.increment(count);
+    }
+
+    /**
+     * Counts a paid installment and, if it was paid late, its penalty.
+     *
+     * @param totalAmount the amount due of the installment
+     * @param paidAmount  the amount paid, including the discount or penalty
+     */
+    public void installmentPaid(BigDecimal totalAmount, BigDecimal paidAmount) {
+        installmentsPaid.increment();
+
+        BigDecimal penalty = paidAmount.subtract(totalAmount);
+        if (penalty.signum() > 0) {
+            penalties.increment();
+            penaltyAmount.increment(penalty.doubleValue());
+        }
+    }
+
+    /**
+     * Counts a credit limit reservation rejected for not enough available limit.
+     */
+    public void limitRejected() {
+        limitRejections.increment();
+    }
+}
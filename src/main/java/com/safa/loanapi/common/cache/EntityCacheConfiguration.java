@@ -0,0 +1,79 @@
+package com.safa.loanapi.common.cache;
+
+import com.github.benmanes.caffeine.jcache.configuration.CaffeineConfiguration;
+import com.github.benmanes.caffeine.jcache.spi.CaffeineCachingProvider;
+import org.hibernate.cache.jcache.ConfigSettings;
+import org.hibernate.cache.spi.RegionFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.orm.jpa.HibernatePropertiesCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import javax.cache.CacheManager;
+import java.time.Duration;
+import java.util.OptionalLong;
+
+/**
+ * Configures the Hibernate second-level cache of the {@code Customer} and {@code Loan} entities and of the cacheable
+ * queries.
+ *
+ * <p>Every region is a Caffeine cache behind the JCache API, bounded to {@code entityCache.<region>.maxSize} entries
+ * evicted by W-TinyLFU and expiring {@code entityCache.<region>.ttl} after they were written. The update timestamps
+ * Hibernate checks cached query results against are neither bounded nor expired, as evicting them would let stale
+ * query results through. Each application context gets its own cache manager, so contexts sharing the JVM do not see
+ * each other's entities.</p>
+ *
+ * <p>With {@code hibernateStatistics.enabled}, hit, miss and put counts of every region are exported with the
+ * Hibernate statistics as the {@code hibernate.second.level.cache.*} and {@code hibernate.cache.query.*} metrics.</p>
+ */
+@Configuration
+public class EntityCacheConfiguration {
+    public static final String CUSTOMER_REGION = "customer";
+    public static final String LOAN_REGION = "loan";
+
+    @Bean(destroyMethod = "close")
+    CaffeineCachingProvider entityCachingProvider() {
+        return new CaffeineCachingProvider();
+    }
+
+    @Bean(destroyMethod = "close")
+    CacheManager entityCacheManager(CaffeineCachingProvider entityCachingProvider,
+                                    @Value("${entityCache.customer.maxSize:10000}") long customerMaxSize,
+                                    @Value("${entityCache.customer.ttl:10m}") Duration customerTtl,
+                                    @Value("${entityCache.loan.maxSize:100000}") long loanMaxSize,
+                                    @Value("${entityCache.loan.ttl:10m}") Duration loanTtl,
+                                    @Value("${entityCache.queries.maxSize:10000}") long queriesMaxSize,
+                                    @Value("${entityCache.queries.ttl:5m}") Duration queriesTtl) {
+        CacheManager cacheManager = entityCachingProvider.getCacheManager();
+        cacheManager.createCache(CUSTOMER_REGION, bounded(customerMaxSize, customerTtl));
+        cacheManager.createCache(LOAN_REGION, bounded(loanMaxSize, loanTtl));
+        cacheManager.createCache(RegionFactory.DEFAULT_QUERY_RESULTS_REGION_UNQUALIFIED_NAME, bounded(queriesMaxSize, queriesTtl));
+        cacheManager.createCache(RegionFactory.DEFAULT_UPDATE_TIMESTAMPS_REGION_UNQUALIFIED_NAME, unbounded());
+        return cacheManager;
+    }
+
+    /**
+     * Hands the cache manager to Hibernate's JCache region factory. A region without a cache above fails the startup
+     * instead of silently getting an unbounded one.
+     */
+    @Bean
+    HibernatePropertiesCustomizer entityCacheProperties(CacheManager entityCacheManager) {
+        return properties -> {
+            properties.put(ConfigSettings.CACHE_MANAGER, entityCacheManager);
+            properties.put(ConfigSettings.MISSING_CACHE_STRATEGY, "fail");
+        };
+    }
+
+    private static CaffeineConfiguration<Object, Object> bounded(long maxSize, Duration ttl) {
+        CaffeineConfiguration<Object, Object> configuration = unbounded();
+        configuration.setMaximumSize(OptionalLong.of(maxSize));
+        configuration.setExpireAfterWrite(OptionalLong.of(ttl.toNanos()));
+        return configuration;
+    }
+
+    private static CaffeineConfiguration<Object, Object> unbounded() {
+        CaffeineConfiguration<Object, Object> configuration = new CaffeineConfiguration<>();
+        configuration.setStoreByValue(false);
+        return configuration;
+    }
+}
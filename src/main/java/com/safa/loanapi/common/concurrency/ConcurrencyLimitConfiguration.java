@@ -0,0 +1,52 @@
+package com.safa.loanapi.common.concurrency;
+
+import com.zaxxer.hikari.HikariConfigMXBean;
+import com.zaxxer.hikari.HikariDataSource;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.security.SecurityProperties;
+import org.springframework.boot.jdbc.DataSourceUnwrapper;
+import org.springframework.boot.web.servlet.FilterRegistrationBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import javax.sql.DataSource;
+import java.time.Duration;
+
+/**
+ * Limits the number of requests processed at the same time to what the connection pool can serve.
+ */
+@Configuration
+public class ConcurrencyLimitConfiguration {
+    // Hikari's default maximumPoolSize
+    private static final int DEFAULT_POOL_SIZE = 10;
+
+    /**
+     * Registers the {@link ConcurrencyLimitFilter} right after the security filters, so authentication, which mostly
+     * verifies tokens and hits the user cache, is not limited.
+     *
+     * <p>{@code concurrency.maxRequests} defaults to the maximum size of the Hikari pool: every admitted request can
+     * get a connection without waiting, everything beyond that waits in the filter where it can be turned away after
+     * {@code concurrency.queueTimeout}.</p>
+     */
+    @Bean
+    FilterRegistrationBean<ConcurrencyLimitFilter> concurrencyLimitFilter(DataSource dataSource,
+                                                                          @Value("${concurrency.maxRequests:0}") int maxRequests,
+                                                                          @Value("${concurrency.queueTimeout:1s}") Duration queueTimeout,
+                                                                          MeterRegistry meterRegistry) {
+        int permits = maxRequests > 0 ? maxRequests : poolSize(dataSource);
+
+        FilterRegistrationBean<ConcurrencyLimitFilter> registration = new FilterRegistrationBean<>(new ConcurrencyLimitFilter(permits, queueTimeout, meterRegistry));
+        registration.setOrder(SecurityProperties.DEFAULT_FILTER_ORDER + 1);
+        return registration;
+    }
+
+    private static int poolSize(DataSource dataSource) {
+        HikariConfigMXBean pool = DataSourceUnwrapper.unwrap(dataSource, HikariConfigMXBean.class, HikariDataSource.class);
+        if (pool == null) {
+            throw new IllegalStateException("The connection pool size is unknown, set concurrency.maxRequests");
+        }
+        // The size stays unset until the pool starts and applies its default
+        return pool.getMaximumPoolSize() > 0 ? pool.getMaximumPoolSize() : DEFAULT_POOL_SIZE;
+    }
+}
@@ -0,0 +1,76 @@
+package com.safa.loanapi.common.concurrency;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.http.HttpHeaders;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Bounds the number of requests processed at the same time.
+ *
+ * <p>With virtual threads Tomcat no longer caps the number of requests in flight, so thousands of them could queue up
+ * on the connection pool at once and all of them would time out together. This filter lets at most {@code permits}
+ * requests through, the others wait in arrival order for up to {@code queueTimeout} and are then answered with
+ * {@code 503 Service Unavailable} and a {@code Retry-After} header, so clients back off instead of piling up.</p>
+ *
+ * <p>Actuator endpoints are not limited, so health checks keep answering under load. Work handed off to another
+ * thread, like a streamed response body, runs after the permit has been released.</p>
+ */
+public class ConcurrencyLimitFilter extends OncePerRequestFilter {
+    private final Semaphore permits;
+    private final long queueTimeoutNanos;
+    private final Counter rejections;
+
+    public ConcurrencyLimitFilter(int permits, Duration queueTimeout, MeterRegistry meterRegistry) {
+        this.permits = new Semaphore(permits, true);
+        this.queueTimeoutNanos = queueTimeout.toNanos();
+        this.rejections = Counter.builder("http.server.requests.rejected")
+                .description("Requests rejected because the concurrency limit stayed exhausted")
+                .register(meterRegistry);
+        Gauge.builder("http.server.requests.permits.available", this.permits, Semaphore::availablePermits)
+                .description("Requests that can start right away without waiting for the concurrency limit")
+                .register(meterRegistry);
+    }
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        return request.getRequestURI().startsWith(request.getContextPath() + "/actuator/");
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+            throws ServletException, IOException {
+        boolean acquired;
+        try {
+            acquired = permits.tryAcquire(queueTimeoutNanos, TimeUnit.NANOSECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            acquired = false;
+        }
+
+        if (!acquired) {
+            rejections.increment();
+            response.setStatus(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+            response.setHeader(HttpHeaders.RETRY_AFTER, "1");
+            response.setContentType("application/json");
+            response.getWriter().write("{\"error\": \"The server is busy, please try again.\"}");
+            return;
+        }
+
+        try {
+            filterChain.doFilter(request, response);
+        } finally {
+            permits.release();
+        }
+    }
+}
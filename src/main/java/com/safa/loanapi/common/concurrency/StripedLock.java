@@ -0,0 +1,24 @@
+package com.safa.loanapi.common.concurrency;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Runs the annotated method under the {@link StripedLockManager} lock of a customer or loan, outside of the method's
+ * transaction, so the next caller only reads the rows once the previous one committed.
+ */
+@Target(ElementType.METHOD)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface StripedLock {
+    /**
+     * What the key identifies, e.g. {@code customer} or {@code loan}.
+     */
+    String scope();
+
+    /**
+     * SpEL expression over the method parameters that evaluates to the ID to lock, e.g. {@code #loanId}.
+     */
+    String key();
+}
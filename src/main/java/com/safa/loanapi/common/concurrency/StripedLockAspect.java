@@ -0,0 +1,55 @@
+package com.safa.loanapi.common.concurrency;
+
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.Around;
+import org.aspectj.lang.annotation.Aspect;
+import org.aspectj.lang.reflect.MethodSignature;
+import org.springframework.context.expression.MethodBasedEvaluationContext;
+import org.springframework.core.DefaultParameterNameDiscoverer;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.expression.Expression;
+import org.springframework.expression.spel.standard.SpelExpressionParser;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Applies {@link StripedLock}. It is ordered right before the transaction interceptor, so the lock is taken before the
+ * transaction begins and released after it committed, and a retried attempt runs in a new transaction. Method
+ * security runs first, so unauthorized calls never wait for a lock.
+ */
+@Aspect
+@Component
+@Order(Ordered.LOWEST_PRECEDENCE - 1)
+class StripedLockAspect {
+    private final SpelExpressionParser parser = new SpelExpressionParser();
+    private final DefaultParameterNameDiscoverer parameterNames = new DefaultParameterNameDiscoverer();
+    private final Map<String, Expression> keys = new ConcurrentHashMap<>();
+    private final StripedLockManager lockManager;
+
+    StripedLockAspect(StripedLockManager lockManager) {
+        this.lockManager = lockManager;
+    }
+
+    @Around("@annotation(stripedLock)")
+    Object lock(ProceedingJoinPoint joinPoint, StripedLock stripedLock) {
+        MethodSignature signature = (MethodSignature) joinPoint.getSignature();
+        MethodBasedEvaluationContext context = new MethodBasedEvaluationContext(joinPoint.getTarget(), signature.getMethod(), joinPoint.getArgs(), parameterNames);
+        Long id = keys.computeIfAbsent(stripedLock.key(), parser::parseExpression).getValue(context, Long.class);
+        if (id == null) {
+            throw new IllegalArgumentException("The lock key " + stripedLock.key() + " of " + signature.getMethod() + " is null");
+        }
+
+        return lockManager.execute(stripedLock.scope(), id, () -> {
+            try {
+                return joinPoint.proceed();
+            } catch (RuntimeException | Error e) {
+                throw e;
+            } catch (Throwable e) {
+                throw new IllegalStateException(e);
+            }
+        });
+    }
+}
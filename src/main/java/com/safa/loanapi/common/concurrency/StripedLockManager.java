@@ -0,0 +1,162 @@
+package com.safa.loanapi.common.concurrency;
+
+import com.safa.loanapi.exception.ConcurrentUpdateException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.persistence.OptimisticLockException;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+/**
+ * Serializes conflicting operations in this process by the ID of the customer or loan they change.
+ *
+ * <p>IDs are hashed onto {@code locks.stripes} {@link ReentrantLock}s, so the memory used does not grow with the
+ * number of customers and loans, at the price of an unrelated ID occasionally waiting on the same stripe. Reentrant
+ * locks do not pin virtual threads while they wait. A caller waits at most {@code locks.timeout} for its stripe.</p>
+ *
+ * <p>The lock only covers this process. Another instance can still change the same rows, which the {@code @Version}
+ * of the changed entity detects at commit; such an optimistic locking failure is retried up to
+ * {@code locks.retries} times while the stripe is held. The following metrics are published:</p>
+ * <ul>
+ *   <li>{@code locks.wait}: the time spent waiting for a stripe.</li>
+ *   <li>{@code locks.retries}: operations run again after an optimistic locking failure.</li>
+ * </ul>
+ */
+@Component
+public class StripedLockManager {
+    private final ReentrantLock[] stripes;
+    private final long timeoutNanos;
+    private final int retries;
+
+    private final Timer wait;
+    private final Counter retried;
+
+    public StripedLockManager(@Value("${locks.stripes:1024}") int stripes,
+                              @Value("${locks.timeout:5s}") Duration timeout,
+                              @Value("${locks.retries:3}") int retries,
+                              MeterRegistry meterRegistry) {
+        // A power of two, so the stripe is picked with a mask
+        int size = Integer.highestOneBit(Math.max(1, stripes - 1)) << 1;
+        this.stripes = new ReentrantLock[size];
+        for (int i = 0; i < size; i++) {
+            this.stripes[i] = new ReentrantLock();
+        }
+        this.timeoutNanos = timeout.toNanos();
+        this.retries = retries;
+
+        this.wait = Timer.builder("locks.wait")
+                .description("Time spent waiting for the lock of a customer or loan")
+                .register(meterRegistry);
+        this.retried = Counter.builder("locks.retries")
+                .description("Operations run again after an optimistic locking failure")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Runs an operation while holding the lock of the given ID, retrying it when another process changed the same
+     * entity in the meantime.
+     *
+     * @param scope  what the ID identifies, e.g. {@code customer} or {@code loan}
+     * @param id     the ID of the customer or loan the operation changes
+     * @param action the operation, it must start and commit its own transaction so every attempt sees fresh rows
+     * @return the result of the operation
+     * @throws ConcurrentUpdateException if the lock is not acquired in time or every attempt failed
+     */
+    public <T> T execute(String scope, long id, Supplier<T> action) {
+        ReentrantLock lock = stripe(scope, id);
+        acquire(lock, scope, id);
+        try {
+            return retry(scope, id, action);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Runs an operation while holding the locks of all the given IDs, retrying it when another process changed one
+     * of the entities in the meantime.
+     *
+     * <p>The stripes are taken in the order of their index, so two callers whose IDs share stripes never wait on
+     * each other in opposite order. If a stripe is not acquired in time, the ones already taken are released.</p>
+     *
+     * @param scope  what the IDs identify, e.g. {@code customer} or {@code loan}
+     * @param ids    the IDs of the customers or loans the operation changes
+     * @param action the operation, it must start and commit its own transaction so every attempt sees fresh rows
+     * @return the result of the operation
+     * @throws ConcurrentUpdateException if a lock is not acquired in time or every attempt failed
+     */
+    public <T> T executeAll(String scope, Collection<Long> ids, Supplier<T> action) {
+        // Stripe index to one of the IDs hashed onto it, for the error message
+        TreeMap<Integer, Long> stripeIds = new TreeMap<>();
+        for (Long id : ids) {
+            stripeIds.putIfAbsent(stripeIndex(scope, id), id);
+        }
+        if (stripeIds.isEmpty()) {
+            return action.get();
+        }
+
+        List<ReentrantLock> acquired = new ArrayList<>(stripeIds.size());
+        try {
+            stripeIds.forEach((index, id) -> {
+                acquire(stripes[index], scope, id);
+                acquired.add(stripes[index]);
+            });
+            return retry(scope, stripeIds.firstEntry().getValue(), action);
+        } finally {
+            acquired.forEach(ReentrantLock::unlock);
+        }
+    }
+
+    private <T> T retry(String scope, long id, Supplier<T> action) {
+        for (int attempt = 0; ; attempt++) {
+            try {
+                return action.get();
+            } catch (OptimisticLockingFailureException | OptimisticLockException e) {
+                if (attempt >= retries) {
+                    throw new ConcurrentUpdateException(scope, id);
+                }
+                retried.increment();
+            }
+        }
+    }
+
+    ReentrantLock stripe(String scope, long id) {
+        return stripes[stripeIndex(scope, id)];
+    }
+
+    private int stripeIndex(String scope, long id) {
+        // Spread the bits, so sequential IDs of different scopes do not share stripes
+        int hash = 31 * scope.hashCode() + Long.hashCode(id);
+        hash ^= hash >>> 16;
+        hash *= 0x85ebca6b;
+        hash ^= hash >>> 13;
+        return hash & (stripes.length - 1);
+    }
+
+    private void acquire(ReentrantLock lock, String scope, long id) {
+        long startedAt = System.nanoTime();
+        boolean acquired;
+        try {
+            acquired = lock.tryLock(timeoutNanos, TimeUnit.NANOSECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            acquired = false;
+        }
+        wait.record(System.nanoTime() - startedAt, TimeUnit.NANOSECONDS);
+
+        if (!acquired) {
+            throw new ConcurrentUpdateException(scope, id);
+        }
+    }
+}
@@ -0,0 +1,125 @@
+package com.safa.loanapi.common.idempotency;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.safa.loanapi.exception.IdempotencyKeyReusedException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Supplier;
+
+/**
+ * Remembers the responses of requests sent with an {@code Idempotency-Key} header, so a retried request is answered
+ * with the response of the first one instead of being executed again.
+ *
+ * <p>Keys are scoped to the authenticated user and the operation, two users or two endpoints never share a response.
+ * Up to {@code idempotency.maxSize} responses are kept for {@code idempotency.ttl} after the first request:</p>
+ * <ul>
+ *   <li>The first request with a key executes the action and stores its response.</li>
+ *   <li>A retry while the first request is still running waits for its response instead of executing again.</li>
+ *   <li>A retry after it completed gets the stored response, marked with the {@code Idempotent-Replayed} header.</li>
+ *   <li>If the action fails, the key is forgotten so the request can be retried, and the waiting retries fail with
+ *   the same exception.</li>
+ * </ul>
+ *
+ * <p>Reusing a key for a different request body is rejected with {@link IdempotencyKeyReusedException}.</p>
+ */
+@Component
+public class IdempotencyStore {
+    public static final String HEADER = "Idempotency-Key";
+    public static final String REPLAYED_HEADER = "Idempotent-Replayed";
+
+    private final Cache<Key, Entry> entries;
+    private final Counter replays;
+
+    public IdempotencyStore(@Value("${idempotency.maxSize:100000}") long maxSize,
+                            @Value("${idempotency.ttl:24h}") Duration ttl,
+                            MeterRegistry meterRegistry) {
+        this.entries = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(ttl)
+                .build();
+        this.replays = Counter.builder("idempotency.replays")
+                .description("Requests answered with the response of an earlier request with the same idempotency key")
+                .register(meterRegistry);
+
+        Gauge.builder("idempotency.keys", entries, Cache::estimatedSize)
+                .description("Idempotency keys remembered")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Executes the action once per idempotency key.
+     *
+     * @param idempotencyKey the value of the {@code Idempotency-Key} header, {@code null} to always execute the action
+     * @param operation      what the action does, e.g. the method and path of the request
+     * @param request        the request body, a retry must send an equal one
+     * @param action         executes the request
+     * @return the response of the action, or of the earlier request with the same key
+     * @throws IdempotencyKeyReusedException if the key was used for a different request body
+     */
+    @SuppressWarnings("unchecked")
+    public <T> ResponseEntity<T> execute(String idempotencyKey, String operation, Object request, Supplier<ResponseEntity<T>> action) {
+        if (idempotencyKey == null) {
+            return action.get();
+        }
+
+        Key key = new Key(principal(), operation, idempotencyKey);
+        Entry created = new Entry(request, new CompletableFuture<>());
+        Entry existing = entries.asMap().putIfAbsent(key, created);
+        if (existing == null) {
+            return run(key, created, action);
+        }
+
+        if (!existing.request().equals(request)) {
+            throw new IdempotencyKeyReusedException(idempotencyKey);
+        }
+        replays.increment();
+        try {
+            ResponseEntity<T> response = (ResponseEntity<T>) existing.response().join();
+            return ResponseEntity.status(response.getStatusCode())
+                    .headers(response.getHeaders())
+                    .header(REPLAYED_HEADER, "true")
+                    .body(response.getBody());
+        } catch (CompletionException e) {
+            // Fail the same way as the request that was waited for
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw e;
+        }
+    }
+
+    private <T> ResponseEntity<T> run(Key key, Entry entry, Supplier<ResponseEntity<T>> action) {
+        try {
+            ResponseEntity<T> response = action.get();
+            entry.response().complete(response);
+            return response;
+        } catch (RuntimeException e) {
+            // A failed request is not remembered, so the client can retry it
+            entries.asMap().remove(key, entry);
+            entry.response().completeExceptionally(e);
+            throw e;
+        }
+    }
+
+    private static String principal() {
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        return authentication == null ? "" : authentication.getName();
+    }
+
+    private record Key(String principal, String operation, String idempotencyKey) {
+    }
+
+    private record Entry(Object request, CompletableFuture<ResponseEntity<?>> response) {
+    }
+}
@@ -0,0 +1,49 @@
+package com.safa.loanapi.common.sql;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import net.ttddyy.dsproxy.support.ProxyDataSourceBuilder;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.web.servlet.FilterRegistrationBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.Ordered;
+
+import javax.sql.DataSource;
+
+/**
+ * Routes every JDBC statement through {@link SqlStatementCounter} and counts the statements of every HTTP request.
+ */
+@Configuration
+public class SqlStatementCountConfiguration {
+
+    /**
+     * Wraps the application's {@link DataSource} in a proxy that reports every statement execution to the
+     * {@link SqlStatementCounter}. JPA and {@code JdbcTemplate} both get the proxy.
+     */
+    @Bean
+    static BeanPostProcessor sqlStatementCountingDataSourcePostProcessor() {
+        return new BeanPostProcessor() {
+            @Override
+            public Object postProcessAfterInitialization(Object bean, String beanName) {
+                if (!(bean instanceof DataSource dataSource)) {
+                    return bean;
+                }
+                return ProxyDataSourceBuilder.create(dataSource)
+                        .name(beanName)
+                        .listener(new SqlStatementCounter())
+                        .build();
+            }
+        };
+    }
+
+    /**
+     * Runs the {@link SqlStatementCountFilter} ahead of the security filters, so the statements of the authentication
+     * are counted too.
+     */
+    @Bean
+    FilterRegistrationBean<SqlStatementCountFilter> sqlStatementCountFilter(MeterRegistry meterRegistry) {
+        FilterRegistrationBean<SqlStatementCountFilter> registration = new FilterRegistrationBean<>(new SqlStatementCountFilter(meterRegistry));
+        registration.setOrder(Ordered.HIGHEST_PRECEDENCE);
+        return registration;
+    }
+}
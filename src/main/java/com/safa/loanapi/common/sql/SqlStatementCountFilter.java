@@ -0,0 +1,46 @@
+package com.safa.loanapi.common.sql;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.web.filter.OncePerRequestFilter;
+import org.springframework.web.servlet.HandlerMapping;
+
+import java.io.IOException;
+
+/**
+ * Counts the SQL statements of every HTTP request, including the ones issued while authenticating it.
+ *
+ * <p>The counts are published as the {@code http.server.requests.statements} distribution, tagged with the request
+ * method and the matched URI template like {@code http.server.requests}. Work handed off to another thread, like a
+ * streamed response body, is not counted.</p>
+ */
+public class SqlStatementCountFilter extends OncePerRequestFilter {
+    private final MeterRegistry meterRegistry;
+
+    public SqlStatementCountFilter(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+            throws ServletException, IOException {
+        SqlStatementCounter.start();
+        try {
+            filterChain.doFilter(request, response);
+        } finally {
+            long statements = SqlStatementCounter.stop();
+
+            Object uri = request.getAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE);
+            DistributionSummary.builder("http.server.requests.statements")
+                    .description("SQL statements executed per HTTP request")
+                    .tag("method", request.getMethod())
+                    .tag("uri", uri == null ? "UNKNOWN" : uri.toString())
+                    .register(meterRegistry)
+                    .record(statements);
+        }
+    }
+}
@@ -0,0 +1,35 @@
+package com.safa.loanapi.common.sql;
+
+import org.springframework.context.annotation.Profile;
+import org.springframework.core.MethodParameter;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.HttpMessageConverter;
+import org.springframework.http.server.ServerHttpRequest;
+import org.springframework.http.server.ServerHttpResponse;
+import org.springframework.web.bind.annotation.RestControllerAdvice;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyAdvice;
+
+/**
+ * Returns the number of SQL statements a request executed in the {@code X-Sql-Statement-Count} response header.
+ *
+ * <p>The header is written right before the response body is serialized, so it covers authentication, the controller
+ * and the transaction commit. It is left out in the {@code prod} profile.</p>
+ */
+@Profile("!prod")
+@RestControllerAdvice
+public class SqlStatementCountHeaderAdvice implements ResponseBodyAdvice<Object> {
+    public static final String STATEMENT_COUNT_HEADER = "X-Sql-Statement-Count";
+
+    @Override
+    public boolean supports(MethodParameter returnType, Class<? extends HttpMessageConverter<?>> converterType) {
+        return true;
+    }
+
+    @Override
+    public Object beforeBodyWrite(Object body, MethodParameter returnType, MediaType selectedContentType,
+                                  Class<? extends HttpMessageConverter<?>> selectedConverterType,
+                                  ServerHttpRequest request, ServerHttpResponse response) {
+        response.getHeaders().set(STATEMENT_COUNT_HEADER, String.valueOf(SqlStatementCounter.current()));
+        return body;
+    }
+}
@@ -0,0 +1,67 @@
+package com.safa.loanapi.common.sql;
+
+import net.ttddyy.dsproxy.ExecutionInfo;
+import net.ttddyy.dsproxy.QueryInfo;
+import net.ttddyy.dsproxy.listener.QueryExecutionListener;
+
+import java.util.List;
+
+/**
+ * Counts the SQL statements executed on the current thread.
+ *
+ * <p>Registered as a listener of the proxied {@link javax.sql.DataSource}, it counts every statement execution
+ * between {@link #start()} and {@link #stop()}. A JDBC batch is sent in one round trip and counts as one statement, no
+ * matter how many rows it writes. Statements executed on a thread that did not start counting are ignored.</p>
+ *
+ * <p>Fetching the next block of a pooled sequence is not counted: it happens once every {@code allocationSize} inserts,
+ * so whether a request hits it depends on the requests before it rather than on the request itself.</p>
+ */
+public final class SqlStatementCounter implements QueryExecutionListener {
+    private static final ThreadLocal<long[]> COUNT = new ThreadLocal<>();
+    private static final String NEXT_SEQUENCE_VALUE = "select next value for ";
+
+    /**
+     * Starts counting the statements of the current thread from zero.
+     */
+    public static void start() {
+        COUNT.set(new long[1]);
+    }
+
+    /**
+     * Returns the number of statements executed on the current thread since {@link #start()}.
+     *
+     * @return the statement count, {@code 0} if the thread is not counting
+     */
+    public static long current() {
+        long[] count = COUNT.get();
+        return count == null ? 0 : count[0];
+    }
+
+    /**
+     * Stops counting on the current thread.
+     *
+     * @return the number of statements executed since {@link #start()}
+     */
+    public static long stop() {
+        long count = current();
+        COUNT.remove();
+        return count;
+    }
+
+    @Override
+    public void beforeQuery(ExecutionInfo execInfo, List<QueryInfo> queryInfoList) {
+    }
+
+    @Override
+    public void afterQuery(ExecutionInfo execInfo, List<QueryInfo> queryInfoList) {
+        long[] count = COUNT.get();
+        if (count != null && !isSequenceFetch(queryInfoList)) {
+            count[0]++;
+        }
+    }
+
+    private static boolean isSequenceFetch(List<QueryInfo> queryInfoList) {
+        return queryInfoList.size() == 1
+                && queryInfoList.get(0).getQuery().regionMatches(true, 0, NEXT_SEQUENCE_VALUE, 0, NEXT_SEQUENCE_VALUE.length());
+    }
+}
@@ -0,0 +1,268 @@
+package com.safa.loanapi.customer;
+
+import com.safa.loanapi.common.LoanMetrics;
+import com.safa.loanapi.customer.dao.Customer;
+import com.safa.loanapi.exception.CustomerNotFoundException;
+import com.safa.loanapi.exception.NotEnoughLimitException;
+import jakarta.persistence.EntityManagerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Keeps the available credit limit of every customer in memory, in cents.
+ *
+ * <p>Reservations and releases are applied with a compare-and-set on the customer's counter, so concurrent
+ * originations and payments for the same customer never lose an update and never wait on the customer row.
+ * The changes are written through to {@code Customer.usedCreditLimit} as relative updates: inside a transaction the
+ * deltas of every customer are summed up and written with one JDBC batch right before the commit, and undone in memory
+ * if the transaction rolls back. Outside a transaction they are written immediately. As the updates bypass Hibernate,
+ * the changed customers are evicted from the second-level cache once they are written and again once the transaction
+ * commits, so a customer cached from the old row in between is not kept either.</p>
+ *
+ * <p>The counters are only as current as this instance's view of the customers. Another instance, or a credit limit
+ * changed in the table, can leave a counter with more than the row allows, so a reservation is only written if the
+ * row's credit limit still covers it. A customer whose row rejects the update fails its transaction with a
+ * {@link NotEnoughLimitException} and is dropped from the ledger, to be loaded from the row again on next use.</p>
+ *
+ * <p>The ledger is rebuilt from the {@code Customer} table on startup, customers it does not know yet are loaded on
+ * first use.</p>
+ */
+@Component
+public class CreditLimitLedger {
+    // Releases always apply, reservations only within the credit limit of the row
+    private static final String ADD_USED_CREDIT_LIMIT = "update customer set used_credit_limit = used_credit_limit + ? "
+            + "where id = ? and (? <= 0 or used_credit_limit + ? <= credit_limit)";
+
+    private final Map<Long, AtomicLong> availableCents = new ConcurrentHashMap<>();
+
+    @Autowired
+    private CustomerRepository customerRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private LoanMetrics loanMetrics;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    /**
+     * Loads the available credit limit of every existing customer.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void rebuild() {
+        for (Customer customer : customerRepository.findAll()) {
+            availableCents.putIfAbsent(customer.getId(), new AtomicLong(availableCents(customer)));
+        }
+    }
+
+    /**
+     * Registers a newly created customer with its full credit limit available.
+     *
+     * @param customer the saved customer
+     */
+    public void register(Customer customer) {
+        availableCents.put(customer.getId(), new AtomicLong(availableCents(customer)));
+    }
+
+    /**
+     * Reserves the given amount from the customer's available credit limit.
+     *
+     * @param customerID the ID of the customer
+     * @param amount     the amount to reserve
+     * @throws CustomerNotFoundException if the customer with the specified ID does not exist
+     * @throws NotEnoughLimitException   if the customer's available credit limit is less than the amount
+     */
+    public void reserve(long customerID, BigDecimal amount) {
+        long cents = toCents(amount);
+        AtomicLong available = counter(customerID);
+
+        long current;
+        do {
+            current = available.get();
+            if (current < cents) {
+                loanMetrics.limitRejected();
+                throw new NotEnoughLimitException(customerID);
+            }
+        } while (!available.compareAndSet(current, current - cents));
+
+        record(customerID, available, cents);
+    }
+
+    /**
+     * Gives the given amount back to the customer's available credit limit.
+     *
+     * @param customerID the ID of the customer
+     * @param amount     the amount to release
+     * @throws CustomerNotFoundException if the customer with the specified ID does not exist
+     */
+    public void release(long customerID, BigDecimal amount) {
+        long cents = toCents(amount);
+        if (cents == 0) {
+            return;
+        }
+
+        AtomicLong available = counter(customerID);
+        available.addAndGet(cents);
+        record(customerID, available, -cents);
+    }
+
+    /**
+     * Returns the customer's available credit limit.
+     *
+     * @param customerID the ID of the customer
+     * @return the available credit limit
+     * @throws CustomerNotFoundException if the customer with the specified ID does not exist
+     */
+    public BigDecimal getAvailableLimit(long customerID) {
+        return BigDecimal.valueOf(counter(customerID).get(), 2);
+    }
+
+    private AtomicLong counter(long customerID) {
+        AtomicLong available = availableCents.get(customerID);
+        if (available != null) {
+            return available;
+        }
+
+        Customer customer = customerRepository.findById(customerID).orElseThrow(() -> new CustomerNotFoundException(customerID));
+        return availableCents.computeIfAbsent(customerID, id -> new AtomicLong(availableCents(customer)));
+    }
+
+    /**
+     * Writes a change of the used credit limit through, or defers it to the end of the current transaction.
+     *
+     * @param available the counter the change was applied to, a rollback only reverts it while it is still in use
+     */
+    private void record(long customerID, AtomicLong available, long usedCentsDelta) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            List<Long> rejected = write(Map.of(customerID, usedCentsDelta));
+            if (!rejected.isEmpty()) {
+                reject(rejected);
+            }
+            return;
+        }
+
+        PendingChanges pending = (PendingChanges) TransactionSynchronizationManager.getResource(this);
+        if (pending == null) {
+            pending = new PendingChanges();
+            TransactionSynchronizationManager.bindResource(this, pending);
+            TransactionSynchronizationManager.registerSynchronization(pending);
+        }
+        pending.usedCentsDeltas.merge(customerID, usedCentsDelta, Long::sum);
+        pending.counters.putIfAbsent(customerID, available);
+    }
+
+    /**
+     * Writes the changes of the used credit limits.
+     *
+     * @return the IDs of the customers whose credit limit did not cover their change
+     */
+    private List<Long> write(Map<Long, Long> usedCentsDeltas) {
+        List<Long> customerIDs = new ArrayList<>(usedCentsDeltas.size());
+        List<Object[]> args = new ArrayList<>(usedCentsDeltas.size());
+        usedCentsDeltas.forEach((customerID, delta) -> {
+            if (delta != 0) {
+                BigDecimal usedDelta = BigDecimal.valueOf(delta, 2);
+                customerIDs.add(customerID);
+                args.add(new Object[]{usedDelta, customerID, usedDelta, usedDelta});
+            }
+        });
+        if (args.isEmpty()) {
+            return List.of();
+        }
+
+        int[] updated = jdbcTemplate.batchUpdate(ADD_USED_CREDIT_LIMIT, args);
+        evict(usedCentsDeltas);
+
+        List<Long> rejected = new ArrayList<>();
+        for (int i = 0; i < updated.length; i++) {
+            if (updated[i] == 0) {
+                rejected.add(customerIDs.get(i));
+            }
+        }
+        return rejected;
+    }
+
+    /**
+     * Drops the customers whose rows rejected a reservation, so their counters are loaded from the rows again, and
+     * fails the reservation.
+     */
+    private void reject(List<Long> rejected) {
+        rejected.forEach(availableCents::remove);
+        loanMetrics.limitRejected();
+        throw new NotEnoughLimitException(rejected.get(0));
+    }
+
+    private void evict(Map<Long, Long> usedCentsDeltas) {
+        usedCentsDeltas.forEach((customerID, delta) -> {
+            if (delta != 0) {
+                entityManagerFactory.getCache().evict(Customer.class, customerID);
+            }
+        });
+    }
+
+    private static long availableCents(Customer customer) {
+        BigDecimal creditLimit = customer.getCreditLimit() == null ? BigDecimal.ZERO : customer.getCreditLimit();
+        BigDecimal usedCreditLimit = customer.getUsedCreditLimit() == null ? BigDecimal.ZERO : customer.getUsedCreditLimit();
+        return toCents(creditLimit.subtract(usedCreditLimit));
+    }
+
+    private static long toCents(BigDecimal amount) {
+        return amount.movePointRight(2).setScale(0, RoundingMode.HALF_EVEN).longValueExact();
+    }
+
+    /**
+     * Flushes the summed up changes of a transaction before it commits and reverts them in memory if it rolls back.
+     */
+    private class PendingChanges implements TransactionSynchronization {
+        private final Map<Long, Long> usedCentsDeltas = new HashMap<>();
+        // The counters the changes were applied to, a counter reloaded in the meantime never included them
+        private final Map<Long, AtomicLong> counters = new HashMap<>();
+
+        @Override
+        public void beforeCommit(boolean readOnly) {
+            List<Long> rejected = write(usedCentsDeltas);
+            if (!rejected.isEmpty()) {
+                // The rejected customers are reloaded instead of reverted, failing the commit rolls the others back
+                rejected.forEach(usedCentsDeltas::remove);
+                reject(rejected);
+            }
+        }
+
+        @Override
+        public void afterCompletion(int status) {
+            TransactionSynchronizationManager.unbindResourceIfPossible(CreditLimitLedger.this);
+            if (status == STATUS_COMMITTED) {
+                evict(usedCentsDeltas);
+            } else {
+                usedCentsDeltas.forEach((customerID, delta) -> {
+                    AtomicLong available = availableCents.get(customerID);
+                    if (available == null) {
+                        return;
+                    }
+                    if (available == counters.get(customerID)) {
+                        available.addAndGet(delta);
+                    } else {
+                        // Reloaded during the transaction, read it from the row again rather than guess
+                        availableCents.remove(customerID, available);
+                    }
+                });
+            }
+        }
+    }
+}
@@ -1,9 +1,12 @@
 package com.safa.loanapi.customer;
 
 import com.safa.loanapi.customer.dto.CreateCustomer;
-import com.safa.loanapi.customer.dao.Customer;
+import com.safa.loanapi.customer.dto.CustomerSummaryView;
+import com.safa.loanapi.customer.dto.CustomerView;
 import jakarta.validation.Valid;
 import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RestController;
@@ -11,13 +14,20 @@ import org.springframework.web.bind.annotation.RestController;
 @RestController
 public class CustomerController {
     private final CustomerService customerService;
+    private final CustomerSummaryService customerSummaryService;
 
-    public CustomerController(CustomerService customerService) {
+    public CustomerController(CustomerService customerService, CustomerSummaryService customerSummaryService) {
         this.customerService = customerService;
+        this.customerSummaryService = customerSummaryService;
     }
 
     @PostMapping("/customers")
-    ResponseEntity<Customer> createCustomer(@Valid @RequestBody CreateCustomer req) {
-        return ResponseEntity.ok(this.customerService.createCustomer(req));
+    ResponseEntity<CustomerView> createCustomer(@Valid @RequestBody CreateCustomer req) {
+        return ResponseEntity.ok(CustomerView.of(this.customerService.createCustomer(req)));
+    }
+
+    @GetMapping("/customers/{customer_id}/summary")
+    ResponseEntity<CustomerSummaryView> getSummary(@PathVariable Long customer_id) {
+        return ResponseEntity.ok(this.customerSummaryService.getSummary(customer_id));
     }
 }
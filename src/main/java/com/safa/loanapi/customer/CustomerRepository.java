@@ -1,10 +1,16 @@
 package com.safa.loanapi.customer;
 
 import com.safa.loanapi.customer.dao.Customer;
+import jakarta.persistence.QueryHint;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.QueryHints;
 
 import java.util.Optional;
 
+import static org.hibernate.jpa.HibernateHints.HINT_CACHEABLE;
+
 public interface CustomerRepository extends JpaRepository<Customer, Long> {
+    // The result is kept in the query cache until a customer is inserted, updated or deleted through Hibernate
+    @QueryHints(@QueryHint(name = HINT_CACHEABLE, value = "true"))
     Optional<Customer> findByUsername(String username);
 }
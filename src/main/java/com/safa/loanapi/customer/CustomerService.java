@@ -2,7 +2,10 @@ package com.safa.loanapi.customer;
 
 import com.safa.loanapi.customer.dao.Customer;
 import com.safa.loanapi.customer.dto.CreateCustomer;
+import com.safa.loanapi.customer.security.CustomUserDetailsCache;
+import com.safa.loanapi.exception.UsernameAlreadyExistsException;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
 import org.springframework.stereotype.Service;
 
@@ -13,6 +16,15 @@ public class CustomerService {
     @Autowired
     private CustomerRepository customerRepository;
 
+    @Autowired
+    private CreditLimitLedger creditLimitLedger;
+
+    @Autowired
+    private CustomerSummaryService customerSummaryService;
+
+    @Autowired
+    private CustomUserDetailsCache userDetailsCache;
+
     /**
      * Creates a new customer and saves it to the repository.
      *
@@ -23,6 +35,7 @@ public class CustomerService {
      * @param req the {@link CreateCustomer} object containing the details of the customer to be created,
      *            including name, surname, username, password, role, and credit limit.
      * @return the newly created {@link Customer} entity after being saved in the database.
+     * @throws UsernameAlreadyExistsException if a customer with the same username already exists
      */
     public Customer createCustomer(CreateCustomer req) {
         // Encode the customer's plain text password using BCrypt for security
@@ -32,7 +45,20 @@ public class CustomerService {
         Customer customer = new Customer(req.getName(), req.getSurname(), req.getUsername(), encodedPassword,
                 req.getRole(), BigDecimal.valueOf(req.getCreditLimit()));
 
-        // Save the customer entity to the database and return the saved entity
-        return this.customerRepository.save(customer);
+        // Save the customer entity to the database, make its credit limit available to the ledger and start its
+        // summary empty; the unique index on the username rejects a taken username
+        try {
+            customer = this.customerRepository.save(customer);
+        } catch (DataIntegrityViolationException e) {
+            throw new UsernameAlreadyExistsException(req.getUsername());
+        }
+        this.creditLimitLedger.register(customer);
+        this.customerSummaryService.register(customer.getId());
+
+        // Drop any cached authentication details of the username so the new customer is picked up
+        this.userDetailsCache.invalidate(customer.getUsername());
+
+        // Return the saved entity
+        return customer;
     }
 }
@@ -0,0 +1,14 @@
+package com.safa.loanapi.customer;
+
+import com.safa.loanapi.customer.dao.CustomerSummary;
+import com.safa.loanapi.customer.dto.CustomerSummaryView;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+
+import java.util.Optional;
+
+public interface CustomerSummaryRepository extends JpaRepository<CustomerSummary, Long> {
+    @Query("select new com.safa.loanapi.customer.dto.CustomerSummaryView(s.customerId, s.outstandingPrincipal, s.openLoans, "
+            + "s.overdueInstallments, s.nextDueDate) from CustomerSummary s where s.customerId = :customerId")
+    Optional<CustomerSummaryView> findViewById(Long customerId);
+}
@@ -0,0 +1,279 @@
+package com.safa.loanapi.customer;
+
+import com.safa.loanapi.customer.dao.CustomerSummary;
+import com.safa.loanapi.customer.dto.CustomerSummaryView;
+import com.safa.loanapi.exception.CustomerNotFoundException;
+import com.safa.loanapi.installment.dao.Installment;
+import jakarta.persistence.EntityManager;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.sql.Date;
+import java.time.Clock;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Maintains the {@link CustomerSummary} of every customer: the outstanding principal, the number of open loans, the
+ * number of overdue installments and the next due date.
+ *
+ * <p>The summaries are maintained incrementally. Loan originations and payments report their changes here; inside a
+ * transaction the changes of every customer are summed up and written right before the commit, with one JDBC batch of
+ * relative updates. Outside a transaction they are written immediately. A change carries the principal and open loans
+ * to add, the overdue installments it paid and the earliest due date of its new installments. Only a payment of the
+ * installment due on the customer's next due date looks the next one up, from the customer's unpaid installments.
+ * New customers start with an empty summary, a customer created before the summaries gets one computed from its loans
+ * on its first change or read.</p>
+ *
+ * <p>Installments become overdue as days pass without anything being written, so the overdue counts of all customers
+ * are recounted by the nightly penalty accrual, in chunks of {@code customerSummary.refreshChunkSize} summaries that
+ * are each committed on their own, so a chunk only holds the locks of its own rows.</p>
+ */
+@Service
+public class CustomerSummaryService {
+    // The next due date is only looked up when the payment paid the installment due on it, otherwise it is moved to
+    // the first due date of the new installments if that is earlier
+    private static final String ADD_CHANGES = "update customer_summary set outstanding_principal = outstanding_principal + ?, "
+            + "open_loans = open_loans + ?, overdue_installments = greatest(overdue_installments - ?, 0), next_due_date = case "
+            + "when next_due_date >= cast(? as date) then (" + nextDueDate("customer_summary.customer_id") + ") "
+            + "when next_due_date is null or next_due_date > cast(? as date) then cast(? as date) "
+            + "else next_due_date end where customer_id = ?";
+    private static final String INSERT_EMPTY = "insert into customer_summary "
+            + "(customer_id, outstanding_principal, open_loans, overdue_installments) values (?, 0, 0, 0)";
+    private static final String INSERT_FROM_LOANS = "insert into customer_summary "
+            + "(customer_id, outstanding_principal, open_loans, overdue_installments, next_due_date) "
+            + "select c.id, (" + outstandingPrincipal("c.id") + "), (" + openLoans("c.id") + "), ("
+            + overdueInstallments("c.id") + "), (" + nextDueDate("c.id") + ") from customer c where c.id = ?";
+    private static final String SUMMARY_PAGE = "select customer_id from customer_summary where customer_id > ? order by customer_id limit ?";
+    private static final String REFRESH_OVERDUE = "update customer_summary set overdue_installments = ("
+            + overdueInstallments("customer_summary.customer_id") + ") where customer_id between ? and ?";
+
+    @Autowired
+    private CustomerSummaryRepository customerSummaryRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private EntityManager entityManager;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Autowired
+    private Clock clock;
+
+    @Value("${customerSummary.refreshChunkSize:1000}")
+    private int refreshChunkSize;
+
+    /**
+     * Returns the summary of a customer's loans.
+     *
+     * <p>Only the customer or users with the {@code ADMIN} role can read the summary.</p>
+     *
+     * @param customerId the ID of the customer
+     * @return the customer's summary
+     * @throws CustomerNotFoundException if the customer with the specified ID does not exist
+     */
+    @Transactional
+    @PreAuthorize("#customerId == authentication.principal.id or hasRole('ADMIN')")
+    public CustomerSummaryView getSummary(Long customerId) {
+        // The summary is read by its primary key, only a customer that has never been summarized is computed
+        return customerSummaryRepository.findViewById(customerId).orElseGet(() -> {
+            if (insertFromLoans(customerId, LocalDate.now(clock)) == 0) {
+                throw new CustomerNotFoundException(customerId);
+            }
+            return customerSummaryRepository.findViewById(customerId).orElseThrow();
+        });
+    }
+
+    /**
+     * Creates the empty summary of a newly created customer.
+     *
+     * @param customerId the ID of the saved customer
+     */
+    public void register(long customerId) {
+        jdbcTemplate.update(INSERT_EMPTY, customerId);
+    }
+
+    /**
+     * Records a new loan of the customer.
+     *
+     * @param customerId   the ID of the customer
+     * @param principal    the principal of the loan
+     * @param firstDueDate the due date of the loan's first installment
+     */
+    public void loanCreated(long customerId, BigDecimal principal, LocalDate firstDueDate) {
+        record(customerId, new Change(toCents(principal), 1, 0, null, firstDueDate));
+    }
+
+    /**
+     * Records a payment of the customer's installments.
+     *
+     * @param customerId       the ID of the customer
+     * @param paidInstallments the installments the payment paid, in due date order
+     * @param today            the business date of the payment, installments due before it were overdue
+     * @param loanClosed       whether the payment paid the last unpaid installment of the loan
+     */
+    public void installmentsPaid(long customerId, List<Installment> paidInstallments, LocalDate today, boolean loanClosed) {
+        long principalCents = 0;
+        int overdue = 0;
+        for (Installment installment : paidInstallments) {
+            principalCents += toCents(installment.getAmount());
+            if (installment.getDueDate().isBefore(today)) {
+                overdue++;
+            }
+        }
+        LocalDate firstPaidDueDate = paidInstallments.isEmpty() ? null : paidInstallments.get(0).getDueDate();
+        record(customerId, new Change(-principalCents, loanClosed ? -1 : 0, overdue, firstPaidDueDate, null));
+    }
+
+    /**
+     * Recounts the overdue installments of every customer, in keyset ordered chunks that are committed one by one.
+     *
+     * @param today the business date the installments are overdue on
+     * @return the number of summaries refreshed
+     */
+    public int refreshOverdue(LocalDate today) {
+        int refreshed = 0;
+        long lastId = 0;
+        List<Long> page;
+        do {
+            page = jdbcTemplate.queryForList(SUMMARY_PAGE, Long.class, lastId, refreshChunkSize);
+            if (page.isEmpty()) {
+                break;
+            }
+            long from = page.get(0);
+            long to = page.get(page.size() - 1);
+            Integer count = transactionTemplate.execute(status -> jdbcTemplate.update(REFRESH_OVERDUE, Date.valueOf(today), from, to));
+            refreshed += count == null ? 0 : count;
+            lastId = to;
+        } while (page.size() == refreshChunkSize);
+        return refreshed;
+    }
+
+    /**
+     * Writes a change through, or defers it to the end of the current transaction.
+     */
+    private void record(long customerId, Change change) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            write(Map.of(customerId, change));
+            return;
+        }
+
+        @SuppressWarnings("unchecked")
+        Map<Long, Change> pending = (Map<Long, Change>) TransactionSynchronizationManager.getResource(this);
+        if (pending == null) {
+            pending = new HashMap<>();
+            TransactionSynchronizationManager.bindResource(this, pending);
+            TransactionSynchronizationManager.registerSynchronization(new PendingChanges(pending));
+        }
+        pending.merge(customerId, change, Change::plus);
+    }
+
+    private void write(Map<Long, Change> changes) {
+        LocalDate today = LocalDate.now(clock);
+        List<Long> customerIds = new ArrayList<>(changes.keySet());
+        List<Object[]> args = new ArrayList<>(customerIds.size());
+        for (Long customerId : customerIds) {
+            Change change = changes.get(customerId);
+            args.add(new Object[]{BigDecimal.valueOf(change.principalCents(), 2), change.openLoans(), change.overduePaid(),
+                    toDate(change.firstPaidDueDate()), toDate(change.firstNewDueDate()), toDate(change.firstNewDueDate()), customerId});
+        }
+        int[] updated = jdbcTemplate.batchUpdate(ADD_CHANGES, args);
+
+        // Customers without a summary yet get one computed from their loans, which already include the changes
+        for (int i = 0; i < updated.length; i++) {
+            if (updated[i] == 0) {
+                try {
+                    insertFromLoans(customerIds.get(i), today);
+                } catch (DuplicateKeyException e) {
+                    // A concurrent transaction created the summary first, add the changes to it
+                    jdbcTemplate.update(ADD_CHANGES, args.get(i));
+                }
+            }
+        }
+    }
+
+    private int insertFromLoans(long customerId, LocalDate today) {
+        return jdbcTemplate.update(INSERT_FROM_LOANS, Date.valueOf(today), customerId);
+    }
+
+    private static String outstandingPrincipal(String customerId) {
+        return "select coalesce(sum(i.amount), 0) from installment i join loan l on l.id = i.loan_id "
+                + "where l.customer_id = " + customerId + " and i.is_paid = false";
+    }
+
+    private static String openLoans(String customerId) {
+        return "select count(*) from loan l where l.customer_id = " + customerId + " and l.is_paid = false";
+    }
+
+    private static String overdueInstallments(String customerId) {
+        return "select count(*) from installment i join loan l on l.id = i.loan_id "
+                + "where l.customer_id = " + customerId + " and i.is_paid = false and i.due_date < ?";
+    }
+
+    private static String nextDueDate(String customerId) {
+        return "select min(i.due_date) from installment i join loan l on l.id = i.loan_id "
+                + "where l.customer_id = " + customerId + " and i.is_paid = false";
+    }
+
+    private static long toCents(BigDecimal amount) {
+        return amount.movePointRight(2).setScale(0, RoundingMode.HALF_EVEN).longValueExact();
+    }
+
+    private static Date toDate(LocalDate date) {
+        return date == null ? null : Date.valueOf(date);
+    }
+
+    private static LocalDate earliest(LocalDate date, LocalDate other) {
+        return date == null || (other != null && other.isBefore(date)) ? other : date;
+    }
+
+    /**
+     * The changes of a customer's summary: the principal and open loans to add, the overdue installments paid, the
+     * earliest due date of the paid installments and the earliest due date of the new installments.
+     */
+    private record Change(long principalCents, int openLoans, int overduePaid, LocalDate firstPaidDueDate, LocalDate firstNewDueDate) {
+        Change plus(Change other) {
+            return new Change(principalCents + other.principalCents, openLoans + other.openLoans, overduePaid + other.overduePaid,
+                    earliest(firstPaidDueDate, other.firstPaidDueDate), earliest(firstNewDueDate, other.firstNewDueDate));
+        }
+    }
+
+    /**
+     * Writes the summed up changes of a transaction before it commits, after the transaction's own inserts and
+     * updates are flushed so the recomputed columns see them.
+     */
+    private class PendingChanges implements TransactionSynchronization {
+        private final Map<Long, Change> changes;
+
+        PendingChanges(Map<Long, Change> changes) {
+            this.changes = changes;
+        }
+
+        @Override
+        public void beforeCommit(boolean readOnly) {
+            entityManager.flush();
+            write(changes);
+        }
+
+        @Override
+        public void afterCompletion(int status) {
+            TransactionSynchronizationManager.unbindResourceIfPossible(CustomerSummaryService.this);
+        }
+    }
+}
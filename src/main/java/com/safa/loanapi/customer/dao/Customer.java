@@ -1,14 +1,20 @@
 package com.safa.loanapi.customer.dao;
 
+import com.safa.loanapi.common.cache.EntityCacheConfiguration;
 import jakarta.persistence.*;
 import lombok.Data;
 import lombok.NoArgsConstructor;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
 
 import java.math.BigDecimal;
 
 @Entity
 @Data
 @NoArgsConstructor
+@Table(indexes = @Index(name = "ux_customer_username", columnList = "username", unique = true))
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = EntityCacheConfiguration.CUSTOMER_REGION)
 public class Customer {
     @Id
     @GeneratedValue(strategy = GenerationType.IDENTITY)
@@ -19,6 +25,7 @@ public class Customer {
     private String password;
     @Column(precision = 10, scale = 2)
     private BigDecimal creditLimit;
+    // Written with JDBC by the CreditLimitLedger, which evicts the customer from the second-level cache
     @Column(precision = 10, scale = 2)
     private BigDecimal usedCreditLimit = BigDecimal.valueOf(0.0);
 
@@ -0,0 +1,33 @@
+package com.safa.loanapi.customer.dao;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.hibernate.annotations.Immutable;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+
+/**
+ * The exposure of a customer, kept up to date by {@link com.safa.loanapi.customer.CustomerSummaryService} as loans
+ * are created and paid, so it can be read without loading the customer's loans.
+ */
+@Entity
+@Data
+@NoArgsConstructor
+@Immutable
+public class CustomerSummary {
+    @Id
+    private Long customerId;
+    @Column(precision = 12, scale = 2)
+    private BigDecimal outstandingPrincipal = BigDecimal.valueOf(0.0);
+    private Integer openLoans = 0;
+    private Integer overdueInstallments = 0;
+    private LocalDate nextDueDate;
+
+    public CustomerSummary(Long customerId) {
+        this.customerId = customerId;
+    }
+}
@@ -0,0 +1,14 @@
+package com.safa.loanapi.customer.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class AccessToken {
+    private String accessToken;
+    private String tokenType;
+    private long expiresIn;
+}
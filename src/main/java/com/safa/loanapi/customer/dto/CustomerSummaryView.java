@@ -0,0 +1,23 @@
+package com.safa.loanapi.customer.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+
+/**
+ * The summary of a customer's loans as returned by the API, selected from the
+ * {@link com.safa.loanapi.customer.dao.CustomerSummary} row without loading the entity.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class CustomerSummaryView {
+    private Long customerId;
+    private BigDecimal outstandingPrincipal;
+    private Integer openLoans;
+    private Integer overdueInstallments;
+    private LocalDate nextDueDate;
+}
@@ -0,0 +1,29 @@
+package com.safa.loanapi.customer.dto;
+
+import com.safa.loanapi.customer.dao.Customer;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.math.BigDecimal;
+
+/**
+ * A customer as returned by the API, without the password hash of the {@link Customer} entity.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class CustomerView {
+    private Long id;
+    private String name;
+    private String surname;
+    private String username;
+    private Customer.Role role;
+    private BigDecimal creditLimit;
+    private BigDecimal usedCreditLimit;
+
+    public static CustomerView of(Customer customer) {
+        return new CustomerView(customer.getId(), customer.getName(), customer.getSurname(), customer.getUsername(),
+                customer.getRole(), customer.getCreditLimit(), customer.getUsedCreditLimit());
+    }
+}
@@ -0,0 +1,16 @@
+package com.safa.loanapi.customer.dto;
+
+import jakarta.validation.constraints.NotBlank;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class Login {
+    @NotBlank
+    private String username;
+    @NotBlank
+    private String password;
+}
@@ -0,0 +1,163 @@
+package com.safa.loanapi.customer.security;
+
+import com.safa.loanapi.customer.dto.AccessToken;
+import io.micrometer.core.annotation.Timed;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.security.authentication.BadCredentialsException;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.stereotype.Component;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.time.Clock;
+import java.time.Duration;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.concurrent.ArrayBlockingQueue;
+
+/**
+ * Issues and verifies self-contained access tokens signed with HMAC-SHA256.
+ *
+ * <p>A token is {@code base64url(payload) + "." + base64url(signature)} where the payload is
+ * {@code id:role:expiresAt:username}. Verifying a token only takes a MAC over the payload, so requests carrying a
+ * token neither run a BCrypt check nor look the customer up.</p>
+ *
+ * <p>The signing key is {@code security.token.secret}. When it is not configured a random key is generated on startup,
+ * which invalidates all issued tokens on restart and does not work with more than one instance.</p>
+ */
+@Component
+public class AccessTokenService {
+    private static final Logger log = LoggerFactory.getLogger(AccessTokenService.class);
+
+    static final String TOKEN_TYPE = "Bearer";
+    private static final String ALGORITHM = "HmacSHA256";
+    private static final Base64.Encoder ENCODER = Base64.getUrlEncoder().withoutPadding();
+    private static final Base64.Decoder DECODER = Base64.getUrlDecoder();
+
+    private final SecretKeySpec key;
+    private final Duration ttl;
+    private final Clock clock;
+
+    // Mac instances are not thread safe. Every request runs on a new virtual thread, so instead of an instance per
+    // thread the initialized instances are borrowed from a pool of one per core, cloned from the prototype when it is empty
+    private final Mac prototype;
+    private final ArrayBlockingQueue<Mac> macs = new ArrayBlockingQueue<>(Runtime.getRuntime().availableProcessors());
+
+    @Autowired
+    public AccessTokenService(@Value("${security.token.secret:}") String secret,
+                              @Value("${security.token.ttl:15m}") Duration ttl) {
+        this(secret, ttl, Clock.systemUTC());
+    }
+
+    AccessTokenService(String secret, Duration ttl, Clock clock) {
+        byte[] keyBytes;
+        if (secret == null || secret.isBlank()) {
+            log.warn("security.token.secret is not set, access tokens are signed with a random key and do not survive a restart");
+            keyBytes = new byte[32];
+            new SecureRandom().nextBytes(keyBytes);
+        } else {
+            keyBytes = secret.getBytes(StandardCharsets.UTF_8);
+        }
+        this.key = new SecretKeySpec(keyBytes, ALGORITHM);
+        this.prototype = initializedMac(key);
+        this.ttl = ttl;
+        this.clock = clock;
+    }
+
+    /**
+     * Issues an access token for an authenticated user.
+     *
+     * @param user the authenticated user
+     * @return the signed token with its type and lifetime in seconds
+     */
+    public AccessToken issue(CustomUserDetails user) {
+        long expiresAt = clock.instant().plus(ttl).getEpochSecond();
+        String role = user.getAuthorities().stream()
+                .map(GrantedAuthority::getAuthority)
+                .findFirst()
+                .orElse("");
+        String payload = user.getId() + ":" + role + ":" + expiresAt + ":" + user.getUsername();
+
+        String encodedPayload = ENCODER.encodeToString(payload.getBytes(StandardCharsets.UTF_8));
+        String token = encodedPayload + "." + ENCODER.encodeToString(sign(encodedPayload));
+        return new AccessToken(token, TOKEN_TYPE, ttl.toSeconds());
+    }
+
+    /**
+     * Verifies the signature and expiry of an access token and returns the user it was issued for.
+     *
+     * <p>The returned user carries no password, it is only meant to be the principal of the request.</p>
+     *
+     * @param token the access token without the {@code Bearer} prefix
+     * @return the user the token was issued for
+     * @throws BadCredentialsException if the token is malformed, its signature does not match or it is expired
+     */
+    @Timed(value = "auth.token.verify", description = "Time to verify an access token", histogram = true)
+    public CustomUserDetails verify(String token) {
+        int separator = token.indexOf('.');
+        if (separator <= 0 || separator != token.lastIndexOf('.')) {
+            throw new BadCredentialsException("Malformed access token");
+        }
+
+        String encodedPayload = token.substring(0, separator);
+        try {
+            byte[] signature = DECODER.decode(token.substring(separator + 1));
+            if (!MessageDigest.isEqual(sign(encodedPayload), signature)) {
+                throw new BadCredentialsException("Invalid access token signature");
+            }
+
+            // The username goes last, so it may contain the separator itself
+            String[] claims = new String(DECODER.decode(encodedPayload), StandardCharsets.UTF_8).split(":", 4);
+            if (claims.length != 4) {
+                throw new BadCredentialsException("Malformed access token");
+            }
+            if (Long.parseLong(claims[2]) <= clock.instant().getEpochSecond()) {
+                throw new BadCredentialsException("Access token is expired");
+            }
+
+            return new CustomUserDetails(Long.parseLong(claims[0]), claims[3], null,
+                    Collections.singleton(new SimpleGrantedAuthority(claims[1])));
+        } catch (IllegalArgumentException e) {
+            throw new BadCredentialsException("Malformed access token", e);
+        }
+    }
+
+    private byte[] sign(String encodedPayload) {
+        Mac mac = macs.poll();
+        if (mac == null) {
+            mac = newMac();
+        }
+        try {
+            return mac.doFinal(encodedPayload.getBytes(StandardCharsets.US_ASCII));
+        } finally {
+            // doFinal resets the instance, it is dropped when the pool is full
+            macs.offer(mac);
+        }
+    }
+
+    private Mac newMac() {
+        try {
+            return (Mac) prototype.clone();
+        } catch (CloneNotSupportedException e) {
+            return initializedMac(key);
+        }
+    }
+
+    private static Mac initializedMac(SecretKeySpec key) {
+        try {
+            Mac instance = Mac.getInstance(ALGORITHM);
+            instance.init(key);
+            return instance;
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("Could not initialize " + ALGORITHM, e);
+        }
+    }
+}
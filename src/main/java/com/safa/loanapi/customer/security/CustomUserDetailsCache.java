@@ -0,0 +1,67 @@
+package com.safa.loanapi.customer.security;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.function.Function;
+
+/**
+ * Bounded cache of {@link CustomUserDetails} by username, so authenticating a request does not have to query the
+ * customer table every time.
+ *
+ * <p>Entries expire {@code security.userCache.ttl} after they were loaded and at most
+ * {@code security.userCache.maxSize} users are kept. Hit and miss counts are exported as the {@code cache.*} metrics of
+ * the {@code userDetails} cache.</p>
+ */
+@Component
+public class CustomUserDetailsCache {
+    static final String CACHE_NAME = "userDetails";
+
+    private final Cache<String, CustomUserDetails> cache;
+
+    public CustomUserDetailsCache(@Value("${security.userCache.maxSize:10000}") long maxSize,
+                                  @Value("${security.userCache.ttl:5m}") Duration ttl,
+                                  MeterRegistry meterRegistry) {
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(ttl)
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, CACHE_NAME);
+    }
+
+    /**
+     * Returns the cached user details of the username, loading and caching them on a miss.
+     *
+     * @param username the username to look up
+     * @param loader   loads the user details on a miss; exceptions are passed on and nothing is cached
+     * @return the user details of the username
+     */
+    public CustomUserDetails get(String username, Function<String, CustomUserDetails> loader) {
+        return cache.get(username, loader);
+    }
+
+    /**
+     * Drops the cached user details of the username, so the next lookup reads the customer again.
+     *
+     * @param username the username whose details changed
+     */
+    public void invalidate(String username) {
+        cache.invalidate(username);
+    }
+
+    /**
+     * Returns the hit, miss and eviction counts of the cache.
+     *
+     * @return a snapshot of the cache statistics
+     */
+    public CacheStats stats() {
+        return cache.stats();
+    }
+}
@@ -16,6 +16,9 @@ public class CustomUserDetailsService implements UserDetailsService {
     @Autowired
     private CustomerRepository customerRepository;
 
+    @Autowired
+    private CustomUserDetailsCache userDetailsCache;
+
     /**
      * Custom implementation of {@link UserDetailsService} for loading user-specific data.
      *
@@ -23,6 +26,9 @@ public class CustomUserDetailsService implements UserDetailsService {
      * into a {@link CustomUserDetails} object, which implements {@link UserDetails}. The method is used
      * by Spring Security for authentication and authorization processes.</p>
      *
+     * <p>Loaded users are kept in the {@link CustomUserDetailsCache}, so only the first request of a user within the
+     * cache's time to live queries the database.</p>
+     *
      * @param username the username of the customer to be loaded.
      * @return a {@link CustomUserDetails} object containing the customer's authentication and
      *         authorization information.
@@ -32,6 +38,10 @@ public class CustomUserDetailsService implements UserDetailsService {
      */
     @Override
     public UserDetails loadUserByUsername(String username) throws UsernameNotFoundException {
+        return userDetailsCache.get(username, this::loadCustomer);
+    }
+
+    private CustomUserDetails loadCustomer(String username) {
         Customer customer = customerRepository.findByUsername(username)
                 .orElseThrow(() -> new UsernameNotFoundException("User not found"));
 
@@ -0,0 +1,60 @@
+package com.safa.loanapi.customer.security;
+
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.http.HttpHeaders;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.AuthenticationException;
+import org.springframework.security.core.context.SecurityContext;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.security.web.AuthenticationEntryPoint;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+
+/**
+ * Authenticates requests carrying an {@code Authorization: Bearer <token>} header issued by
+ * {@link AccessTokenService}.
+ *
+ * <p>The principal is the {@link CustomUserDetails} of the token, so method security expressions on
+ * {@code authentication.principal.id} work the same as with HTTP basic authentication. Requests without a bearer token
+ * are passed on untouched, requests with an invalid or expired token are answered by the authentication entry
+ * point.</p>
+ */
+public class TokenAuthenticationFilter extends OncePerRequestFilter {
+    private static final String PREFIX = AccessTokenService.TOKEN_TYPE + " ";
+
+    private final AccessTokenService accessTokenService;
+    private final AuthenticationEntryPoint authenticationEntryPoint;
+
+    public TokenAuthenticationFilter(AccessTokenService accessTokenService, AuthenticationEntryPoint authenticationEntryPoint) {
+        this.accessTokenService = accessTokenService;
+        this.authenticationEntryPoint = authenticationEntryPoint;
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+            throws ServletException, IOException {
+        String header = request.getHeader(HttpHeaders.AUTHORIZATION);
+        if (header == null || !header.regionMatches(true, 0, PREFIX, 0, PREFIX.length())) {
+            filterChain.doFilter(request, response);
+            return;
+        }
+
+        try {
+            CustomUserDetails user = accessTokenService.verify(header.substring(PREFIX.length()).strip());
+
+            SecurityContext context = SecurityContextHolder.createEmptyContext();
+            context.setAuthentication(UsernamePasswordAuthenticationToken.authenticated(user, null, user.getAuthorities()));
+            SecurityContextHolder.setContext(context);
+        } catch (AuthenticationException e) {
+            SecurityContextHolder.clearContext();
+            authenticationEntryPoint.commence(request, response, e);
+            return;
+        }
+
+        filterChain.doFilter(request, response);
+    }
+}
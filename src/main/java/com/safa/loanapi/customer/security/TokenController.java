@@ -0,0 +1,31 @@
+package com.safa.loanapi.customer.security;
+
+import com.safa.loanapi.customer.dto.AccessToken;
+import com.safa.loanapi.customer.dto.Login;
+import jakarta.validation.Valid;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.authentication.AuthenticationManager;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RestController;
+
+@RestController
+public class TokenController {
+    private final AuthenticationManager authenticationManager;
+    private final AccessTokenService accessTokenService;
+
+    public TokenController(AuthenticationManager authenticationManager, AccessTokenService accessTokenService) {
+        this.authenticationManager = authenticationManager;
+        this.accessTokenService = accessTokenService;
+    }
+
+    @PostMapping("/auth/token")
+    ResponseEntity<AccessToken> createToken(@Valid @RequestBody Login req) {
+        // The password is checked once here, the issued token is verified without BCrypt afterwards
+        Authentication authentication = authenticationManager.authenticate(
+                UsernamePasswordAuthenticationToken.unauthenticated(req.getUsername(), req.getPassword()));
+        return ResponseEntity.ok(accessTokenService.issue((CustomUserDetails) authentication.getPrincipal()));
+    }
+}
@@ -0,0 +1,7 @@
+package com.safa.loanapi.exception;
+
+public class ConcurrentUpdateException extends RuntimeException {
+    public ConcurrentUpdateException(String scope, long id) {
+        super(String.format("The %s %d is being changed by another request, please try again.", scope, id));
+    }
+}
@@ -0,0 +1,7 @@
+package com.safa.loanapi.exception;
+
+public class IdempotencyKeyReusedException extends RuntimeException {
+    public IdempotencyKeyReusedException(String idempotencyKey) {
+        super(String.format("Idempotency key %s was already used for a different request", idempotencyKey));
+    }
+}
@@ -0,0 +1,7 @@
+package com.safa.loanapi.exception;
+
+public class InvalidCursorException extends RuntimeException {
+    public InvalidCursorException(String cursor) {
+        super(String.format("Cursor %s is not valid", cursor));
+    }
+}
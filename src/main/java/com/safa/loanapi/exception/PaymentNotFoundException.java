@@ -0,0 +1,7 @@
+package com.safa.loanapi.exception;
+
+public class PaymentNotFoundException extends RuntimeException {
+    public PaymentNotFoundException(String id) {
+        super(String.format("Payment with id %s not found", id));
+    }
+}
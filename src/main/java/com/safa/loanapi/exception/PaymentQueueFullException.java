@@ -0,0 +1,7 @@
+package com.safa.loanapi.exception;
+
+public class PaymentQueueFullException extends RuntimeException {
+    public PaymentQueueFullException() {
+        super("Too many payments are waiting to be processed, please try again.");
+    }
+}
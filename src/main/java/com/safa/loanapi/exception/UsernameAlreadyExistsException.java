@@ -0,0 +1,7 @@
+package com.safa.loanapi.exception;
+
+public class UsernameAlreadyExistsException extends RuntimeException {
+    public UsernameAlreadyExistsException(String username) {
+        super(String.format("Username %s already exists", username));
+    }
+}
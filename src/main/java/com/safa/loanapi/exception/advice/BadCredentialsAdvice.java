@@ -0,0 +1,16 @@
+package com.safa.loanapi.exception.advice;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.security.authentication.BadCredentialsException;
+import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.bind.annotation.ResponseStatus;
+import org.springframework.web.bind.annotation.RestControllerAdvice;
+
+@RestControllerAdvice
+class BadCredentialsAdvice {
+    @ExceptionHandler(BadCredentialsException.class)
+    @ResponseStatus(HttpStatus.UNAUTHORIZED)
+    String badCredentialsHandler(BadCredentialsException ex) {
+        return ex.getMessage();
+    }
+}
@@ -0,0 +1,16 @@
+package com.safa.loanapi.exception.advice;
+
+import com.safa.loanapi.exception.ConcurrentUpdateException;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.bind.annotation.ResponseStatus;
+import org.springframework.web.bind.annotation.RestControllerAdvice;
+
+@RestControllerAdvice
+class ConcurrentUpdateAdvice {
+    @ExceptionHandler(ConcurrentUpdateException.class)
+    @ResponseStatus(HttpStatus.CONFLICT)
+    String concurrentUpdateHandler(ConcurrentUpdateException ex) {
+        return ex.getMessage();
+    }
+}
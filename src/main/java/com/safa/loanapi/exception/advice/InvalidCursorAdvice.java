@@ -0,0 +1,16 @@
+package com.safa.loanapi.exception.advice;
+
+import com.safa.loanapi.exception.InvalidCursorException;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.bind.annotation.ResponseStatus;
+import org.springframework.web.bind.annotation.RestControllerAdvice;
+
+@RestControllerAdvice
+class InvalidCursorAdvice {
+    @ExceptionHandler(InvalidCursorException.class)
+    @ResponseStatus(HttpStatus.BAD_REQUEST)
+    String invalidCursorHandler(InvalidCursorException ex) {
+        return ex.getMessage();
+    }
+}
@@ -0,0 +1,16 @@
+package com.safa.loanapi.exception.advice;
+
+import com.safa.loanapi.exception.PaymentNotFoundException;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.bind.annotation.ResponseStatus;
+import org.springframework.web.bind.annotation.RestControllerAdvice;
+
+@RestControllerAdvice
+class PaymentNotFoundAdvice {
+    @ExceptionHandler(PaymentNotFoundException.class)
+    @ResponseStatus(HttpStatus.NOT_FOUND)
+    String paymentNotFoundHandler(PaymentNotFoundException ex) {
+        return ex.getMessage();
+    }
+}
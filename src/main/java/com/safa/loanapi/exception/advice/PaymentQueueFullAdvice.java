@@ -0,0 +1,18 @@
+package com.safa.loanapi.exception.advice;
+
+import com.safa.loanapi.exception.PaymentQueueFullException;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.bind.annotation.RestControllerAdvice;
+
+@RestControllerAdvice
+class PaymentQueueFullAdvice {
+    @ExceptionHandler(PaymentQueueFullException.class)
+    ResponseEntity<String> paymentQueueFullHandler(PaymentQueueFullException ex) {
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                .header(HttpHeaders.RETRY_AFTER, "1")
+                .body(ex.getMessage());
+    }
+}
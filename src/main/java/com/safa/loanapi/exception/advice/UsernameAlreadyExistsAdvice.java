@@ -0,0 +1,16 @@
+package com.safa.loanapi.exception.advice;
+
+import com.safa.loanapi.exception.UsernameAlreadyExistsException;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.bind.annotation.ResponseStatus;
+import org.springframework.web.bind.annotation.RestControllerAdvice;
+
+@RestControllerAdvice
+class UsernameAlreadyExistsAdvice {
+    @ExceptionHandler(UsernameAlreadyExistsException.class)
+    @ResponseStatus(HttpStatus.CONFLICT)
+    String usernameAlreadyExistsHandler(UsernameAlreadyExistsException ex) {
+        return ex.getMessage();
+    }
+}
@@ -0,0 +1,16 @@
+package com.safa.loanapi.installment;
+
+import com.safa.loanapi.installment.dao.AsyncPayment;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+
+public interface AsyncPaymentRepository extends JpaRepository<AsyncPayment, String> {
+    @Transactional
+    @Modifying
+    @Query("delete from AsyncPayment p where p.submittedAt < :submittedBefore")
+    int deleteSubmittedBefore(LocalDateTime submittedBefore);
+}
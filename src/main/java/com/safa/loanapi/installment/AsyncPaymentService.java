@@ -0,0 +1,272 @@
+package com.safa.loanapi.installment;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.safa.loanapi.exception.PaymentNotFoundException;
+import com.safa.loanapi.exception.PaymentQueueFullException;
+import com.safa.loanapi.installment.dao.AsyncPayment;
+import com.safa.loanapi.installment.dto.PaymentStatus;
+import com.safa.loanapi.loan.dto.LoanPaymentInfo;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.security.concurrent.DelegatingSecurityContextRunnable;
+import org.springframework.stereotype.Service;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.*;
+
+/**
+ * Processes installment payments in the background, so a large prepayment does not hold the request thread.
+ *
+ * <p>Payments are spread over {@code payment.async.workers} lanes by loan ID. Every lane is a single worker thread with
+ * a bounded queue of {@code payment.async.queueCapacity / workers} payments, so the payments of one loan are applied
+ * one after the other in submission order while different loans are paid in parallel. When the lane of a loan is
+ * full, the payment is rejected right away instead of queueing without bound.</p>
+ *
+ * <p>The payment runs through {@link InstallmentService#payInstallment} with the security context of the submitter.
+ * It is stored as a {@code PENDING} {@link AsyncPayment} before it is queued, and updated with its result once it is
+ * processed, so its status can be looked up after a restart or on another instance. Payments are kept for
+ * {@code payment.async.retention} after submission. This process remembers up to {@code payment.async.maxSize} of
+ * them in memory to wait on, the ones it has forgotten are looked up in the table.</p>
+ *
+ * <p>On shutdown the lanes stop taking payments and get {@code payment.async.shutdownTimeout} to work off their
+ * queues. Payments still queued after that are not processed and are stored as {@code FAILED}.</p>
+ */
+@Service
+public class AsyncPaymentService {
+    private static final Logger log = LoggerFactory.getLogger(AsyncPaymentService.class);
+
+    static final String NOT_PROCESSED = "The payment was not processed before the service stopped";
+
+    private final InstallmentService installmentService;
+    private final AsyncPaymentRepository asyncPaymentRepository;
+    private final ObjectMapper objectMapper;
+    private final ThreadPoolExecutor[] lanes;
+    private final Cache<String, Payment> payments;
+    private final Duration retention;
+    private final Duration shutdownTimeout;
+    private final Clock clock;
+
+    public AsyncPaymentService(InstallmentService installmentService,
+                               AsyncPaymentRepository asyncPaymentRepository,
+                               ObjectMapper objectMapper,
+                               @Value("${payment.async.workers:8}") int workers,
+                               @Value("${payment.async.queueCapacity:10000}") int queueCapacity,
+                               @Value("${payment.async.retention:1h}") Duration retention,
+                               @Value("${payment.async.maxSize:100000}") long maxSize,
+                               @Value("${payment.async.shutdownTimeout:30s}") Duration shutdownTimeout,
+                               Clock clock,
+                               MeterRegistry meterRegistry) {
+        this.installmentService = installmentService;
+        this.asyncPaymentRepository = asyncPaymentRepository;
+        this.objectMapper = objectMapper;
+        this.retention = retention;
+        this.shutdownTimeout = shutdownTimeout;
+        this.clock = clock;
+        this.lanes = new ThreadPoolExecutor[workers];
+        for (int i = 0; i < workers; i++) {
+            lanes[i] = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS,
+                    new ArrayBlockingQueue<>(Math.max(1, queueCapacity / workers)),
+                    Thread.ofVirtual().name("payment-lane-" + i).factory());
+        }
+        this.payments = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(retention)
+                .build();
+
+        Gauge.builder("payments.async.queued", this, AsyncPaymentService::queued)
+                .description("Payments waiting to be processed")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Queues a payment of the loan's installments and returns right away.
+     *
+     * <p>The same authorization rules as for {@link InstallmentService#payInstallment} apply, they are checked both
+     * when the payment is submitted and when it is processed.</p>
+     *
+     * @param customerId the ID of the customer making the payment
+     * @param loanId     the ID of the loan for which the payment is being made
+     * @param amount     the amount to be applied toward the payment of installments
+     * @return the {@code PENDING} status of the payment with its ID
+     * @throws PaymentQueueFullException if the loan's lane has no room for another payment
+     */
+    @PreAuthorize("#customerId == authentication.principal.id or hasRole('ADMIN')")
+    public PaymentStatus submit(Long customerId, Long loanId, double amount) {
+        Payment payment = new Payment(UUID.randomUUID().toString(), customerId, loanId, amount, LocalDateTime.now(clock), new CompletableFuture<>());
+
+        // Stored before it is queued, so the returned ID is known even if the process stops before the payment is run
+        asyncPaymentRepository.save(payment.toEntity(payment.pending(), null));
+        payments.put(payment.id(), payment);
+
+        try {
+            lanes[Math.floorMod(Long.hashCode(loanId), lanes.length)]
+                    .execute(new QueuedPayment(payment, new DelegatingSecurityContextRunnable(() -> process(payment))));
+        } catch (RejectedExecutionException e) {
+            payments.invalidate(payment.id());
+            asyncPaymentRepository.deleteById(payment.id());
+            throw new PaymentQueueFullException();
+        }
+        return payment.pending();
+    }
+
+    /**
+     * Returns the status of a submitted payment, waiting up to {@code wait} for it to complete.
+     *
+     * <p>The returned future completes as soon as the payment is processed or the wait is over, no thread is blocked
+     * while waiting.</p>
+     *
+     * @param customerId the ID of the customer who submitted the payment
+     * @param loanId     the ID of the loan the payment was submitted for
+     * @param paymentId  the ID returned by {@link #submit}
+     * @param wait       how long to wait for a pending payment, {@link Duration#ZERO} to return right away
+     * @return the status of the payment, {@code PENDING} if it was not processed within the wait
+     * @throws PaymentNotFoundException if there is no such payment of the customer's loan, or it has expired
+     */
+    @PreAuthorize("#customerId == authentication.principal.id or hasRole('ADMIN')")
+    public CompletableFuture<PaymentStatus> getStatus(Long customerId, Long loanId, String paymentId, Duration wait) {
+        Payment payment = payments.getIfPresent(paymentId);
+        if (payment == null) {
+            // Submitted before a restart or to another instance, only the stored status is known
+            return CompletableFuture.completedFuture(asyncPaymentRepository.findById(paymentId)
+                    .filter(stored -> stored.getCustomerId().equals(customerId) && stored.getLoanId().equals(loanId))
+                    .map(this::toStatus)
+                    .orElseThrow(() -> new PaymentNotFoundException(paymentId)));
+        }
+        if (!payment.customerId().equals(customerId) || !payment.loanId().equals(loanId)) {
+            throw new PaymentNotFoundException(paymentId);
+        }
+
+        if (payment.result().isDone() || wait.isZero()) {
+            return CompletableFuture.completedFuture(payment.result().getNow(payment.pending()));
+        }
+        return payment.result().copy().completeOnTimeout(payment.pending(), wait.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    private void process(Payment payment) {
+        PaymentStatus status;
+        try {
+            LoanPaymentInfo info = installmentService.payInstallment(payment.customerId(), payment.loanId(), payment.amount());
+            status = payment.completed(PaymentStatus.State.COMPLETED, LocalDateTime.now(clock), info, null);
+        } catch (RuntimeException e) {
+            log.warn("Payment {} of loan {} failed: {}", payment.id(), payment.loanId(), e.getMessage());
+            status = payment.completed(PaymentStatus.State.FAILED, LocalDateTime.now(clock), null, e.getMessage());
+        }
+        complete(payment, status);
+    }
+
+    private void complete(Payment payment, PaymentStatus status) {
+        try {
+            String result = status.getResult() == null ? null : objectMapper.writeValueAsString(status.getResult());
+            asyncPaymentRepository.save(payment.toEntity(status, result));
+        } catch (JsonProcessingException | RuntimeException e) {
+            log.error("Could not store the status of payment {} of loan {}", payment.id(), payment.loanId(), e);
+        }
+        payment.result().complete(status);
+    }
+
+    private PaymentStatus toStatus(AsyncPayment stored) {
+        LoanPaymentInfo info = null;
+        if (stored.getResult() != null) {
+            try {
+                info = objectMapper.readValue(stored.getResult(), LoanPaymentInfo.class);
+            } catch (JsonProcessingException e) {
+                log.warn("Could not read the result of payment {}", stored.getId(), e);
+            }
+        }
+        return new PaymentStatus(stored.getId(), stored.getLoanId(), stored.getStatus(), stored.getSubmittedAt(),
+                stored.getCompletedAt(), info, stored.getError());
+    }
+
+    /**
+     * Deletes the stored payments submitted longer than {@code payment.async.retention} ago.
+     */
+    @Scheduled(fixedDelayString = "${payment.async.retention:1h}")
+    public void purge() {
+        int purged = asyncPaymentRepository.deleteSubmittedBefore(LocalDateTime.now(clock).minus(retention));
+        if (purged > 0) {
+            log.info("Purged {} async payments older than {}", purged, retention);
+        }
+    }
+
+    private int queued() {
+        int queued = 0;
+        for (ThreadPoolExecutor lane : lanes) {
+            queued += lane.getQueue().size();
+        }
+        return queued;
+    }
+
+    /**
+     * Stops taking payments and waits up to {@code payment.async.shutdownTimeout} for the queued ones. Payments still
+     * queued after that are dropped and stored as {@code FAILED}, the running ones are left to finish.
+     */
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        for (ThreadPoolExecutor lane : lanes) {
+            lane.shutdown();
+        }
+
+        long deadline = System.nanoTime() + shutdownTimeout.toNanos();
+        List<Runnable> dropped = new ArrayList<>();
+        for (ThreadPoolExecutor lane : lanes) {
+            if (!lane.awaitTermination(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS)) {
+                lane.getQueue().drainTo(dropped);
+            }
+        }
+
+        if (!dropped.isEmpty()) {
+            log.warn("{} payments were still queued on shutdown, they are stored as failed", dropped.size());
+            for (Runnable task : dropped) {
+                Payment payment = ((QueuedPayment) task).payment();
+                complete(payment, payment.completed(PaymentStatus.State.FAILED, LocalDateTime.now(clock), null, NOT_PROCESSED));
+            }
+        }
+    }
+
+    /**
+     * A queued payment, so the payments dropped on shutdown can be told apart.
+     */
+    private record QueuedPayment(Payment payment, Runnable task) implements Runnable {
+        @Override
+        public void run() {
+            task.run();
+        }
+    }
+
+    private record Payment(String id, Long customerId, Long loanId, double amount, LocalDateTime submittedAt,
+                           CompletableFuture<PaymentStatus> result) {
+
+        PaymentStatus pending() {
+            return new PaymentStatus(id, loanId, PaymentStatus.State.PENDING, submittedAt, null, null, null);
+        }
+
+        PaymentStatus completed(PaymentStatus.State state, LocalDateTime completedAt, LoanPaymentInfo info, String error) {
+            return new PaymentStatus(id, loanId, state, submittedAt, completedAt, info, error);
+        }
+
+        AsyncPayment toEntity(PaymentStatus status, String result) {
+            return new AsyncPayment(id, customerId, loanId, BigDecimal.valueOf(amount).setScale(2, RoundingMode.HALF_EVEN),
+                    status.getStatus(), submittedAt, status.getCompletedAt(), result, abbreviate(status.getError()));
+        }
+
+        private static String abbreviate(String error) {
+            return error == null || error.length() <= 1000 ? error : error.substring(0, 1000);
+        }
+    }
+}
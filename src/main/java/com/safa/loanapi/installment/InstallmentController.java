@@ -1,30 +1,73 @@
 package com.safa.loanapi.installment;
 
-import com.safa.loanapi.installment.dao.Installment;
+import com.safa.loanapi.common.idempotency.IdempotencyStore;
+import com.safa.loanapi.installment.dto.InstallmentView;
 import com.safa.loanapi.installment.dto.PayInstallment;
+import com.safa.loanapi.installment.dto.PaymentQuote;
+import com.safa.loanapi.installment.dto.PaymentStatus;
 import com.safa.loanapi.loan.dto.LoanPaymentInfo;
 import jakarta.validation.Valid;
+import jakarta.validation.constraints.Max;
+import jakarta.validation.constraints.Min;
+import jakarta.validation.constraints.Positive;
+import jakarta.validation.constraints.Size;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
+import java.net.URI;
+import java.time.Duration;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 @RestController
 @RequestMapping("/customers/{customer_id}/loans")
 public class InstallmentController {
     private final InstallmentService installmentService;
+    private final AsyncPaymentService asyncPaymentService;
+    private final PaymentQuoteService paymentQuoteService;
+    private final IdempotencyStore idempotencyStore;
 
-    public InstallmentController(InstallmentService installmentService) {
+    public InstallmentController(InstallmentService installmentService, AsyncPaymentService asyncPaymentService,
+                                 PaymentQuoteService paymentQuoteService, IdempotencyStore idempotencyStore) {
         this.installmentService = installmentService;
+        this.asyncPaymentService = asyncPaymentService;
+        this.paymentQuoteService = paymentQuoteService;
+        this.idempotencyStore = idempotencyStore;
     }
 
     @GetMapping("/{loan_id}/installments")
-    ResponseEntity<List<Installment>> listInstallments(@PathVariable Long customer_id, @PathVariable Long loan_id) {
+    ResponseEntity<List<InstallmentView>> listInstallments(@PathVariable Long customer_id, @PathVariable Long loan_id) {
         return ResponseEntity.ok(this.installmentService.listInstallments(customer_id, loan_id));
     }
 
     @PostMapping("/{loan_id}/payment")
-    ResponseEntity<LoanPaymentInfo> payInstallment(@PathVariable Long customer_id, @PathVariable Long loan_id, @Valid @RequestBody PayInstallment req) {
-        return ResponseEntity.ok(this.installmentService.payInstallment(customer_id, loan_id, req.getAmount()));
+    ResponseEntity<LoanPaymentInfo> payInstallment(@PathVariable Long customer_id, @PathVariable Long loan_id, @Valid @RequestBody PayInstallment req,
+                                                   @RequestHeader(name = IdempotencyStore.HEADER, required = false) @Size(min = 1, max = 255) String idempotencyKey) {
+        return this.idempotencyStore.execute(idempotencyKey, "POST /customers/" + customer_id + "/loans/" + loan_id + "/payment", req,
+                () -> ResponseEntity.ok(this.installmentService.payInstallment(customer_id, loan_id, req.getAmount())));
+    }
+
+    @GetMapping("/{loan_id}/payment/quote")
+    ResponseEntity<PaymentQuote> quotePayment(@PathVariable Long customer_id, @PathVariable Long loan_id, @RequestParam @Positive double amount) {
+        return ResponseEntity.ok(this.paymentQuoteService.quote(customer_id, loan_id, amount));
+    }
+
+    @PostMapping(value = "/{loan_id}/payment", params = "async=true")
+    ResponseEntity<PaymentStatus> submitPayment(@PathVariable Long customer_id, @PathVariable Long loan_id, @Valid @RequestBody PayInstallment req,
+                                                @RequestHeader(name = IdempotencyStore.HEADER, required = false) @Size(min = 1, max = 255) String idempotencyKey) {
+        return this.idempotencyStore.execute(idempotencyKey, "POST /customers/" + customer_id + "/loans/" + loan_id + "/payment?async=true", req, () -> {
+            PaymentStatus payment = this.asyncPaymentService.submit(customer_id, loan_id, req.getAmount());
+            return ResponseEntity.accepted()
+                    .location(URI.create("/customers/" + customer_id + "/loans/" + loan_id + "/payments/" + payment.getPaymentId()))
+                    .body(payment);
+        });
+    }
+
+    @GetMapping("/{loan_id}/payments/{payment_id}")
+    CompletableFuture<ResponseEntity<PaymentStatus>> getPayment(@PathVariable Long customer_id, @PathVariable Long loan_id, @PathVariable String payment_id,
+                                                                @RequestParam(defaultValue = "0") @Min(0) @Max(30) int wait) {
+        // The request thread is released while a long poll waits for the payment
+        return this.asyncPaymentService.getStatus(customer_id, loan_id, payment_id, Duration.ofSeconds(wait))
+                .thenApply(ResponseEntity::ok);
     }
 }
@@ -1,11 +1,41 @@
 package com.safa.loanapi.installment;
 
 import com.safa.loanapi.installment.dao.Installment;
+import com.safa.loanapi.installment.dto.InstallmentView;
+import jakarta.persistence.QueryHint;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 
+import java.time.LocalDate;
+import java.util.Collection;
 import java.util.List;
+import java.util.stream.Stream;
+
+import static org.hibernate.jpa.HibernateHints.HINT_FETCH_SIZE;
+import static org.hibernate.jpa.HibernateHints.HINT_READ_ONLY;
 
 public interface InstallmentRepository extends JpaRepository<Installment, Long> {
+    String SELECT_VIEW = "select new com.safa.loanapi.installment.dto.InstallmentView(i.id, i.loanId, i.amount, i.totalAmount, "
+            + "i.paidAmount, i.dueDate, i.paymentDate, i.isPaid, i.accruedPenalty, i.overdueDays) from Installment i ";
+
     List<Installment> findAllByLoanIdAndIsPaidOrderByDueDateAsc(Long loanId, boolean isPaid);
     List<Installment> findAllByLoanId(Long loanId);
+    List<Installment> findAllByLoanIdInAndIsPaidOrderByDueDateAsc(Collection<Long> loanIds, boolean isPaid);
+
+    @Query(SELECT_VIEW + "where i.loanId = :loanId order by i.dueDate")
+    List<InstallmentView> findViewsByLoanId(Long loanId);
+
+    @Query(SELECT_VIEW + "where i.loanId in :loanIds order by i.loanId, i.dueDate")
+    List<InstallmentView> findViewsByLoanIdIn(Collection<Long> loanIds);
+
+    @Query("select i from Installment i where i.loanId = :loanId and i.isPaid = false and i.dueDate <= :until order by i.dueDate")
+    List<Installment> findPayableByLoanId(Long loanId, LocalDate until);
+
+    @QueryHints({@QueryHint(name = HINT_FETCH_SIZE, value = "500"), @QueryHint(name = HINT_READ_ONLY, value = "true")})
+    Stream<Installment> streamAllByOrderByLoanIdAscDueDateAsc();
+
+    @QueryHints({@QueryHint(name = HINT_FETCH_SIZE, value = "500"), @QueryHint(name = HINT_READ_ONLY, value = "true")})
+    @Query("select i from Installment i where i.loanId in (select l.id from Loan l where l.customerId = :customerId) order by i.loanId, i.dueDate")
+    Stream<Installment> streamAllByCustomerId(Long customerId);
 }
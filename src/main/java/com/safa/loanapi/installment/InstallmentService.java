@@ -1,28 +1,32 @@
 package com.safa.loanapi.installment;
 
-import com.safa.loanapi.customer.CustomerRepository;
-import com.safa.loanapi.customer.dao.Customer;
+import com.safa.loanapi.common.LoanMetrics;
+import com.safa.loanapi.common.concurrency.StripedLock;
+import com.safa.loanapi.customer.CreditLimitLedger;
+import com.safa.loanapi.customer.CustomerSummaryService;
+import com.safa.loanapi.exception.ConcurrentUpdateException;
 import com.safa.loanapi.exception.CustomerNotFoundException;
 import com.safa.loanapi.exception.LoanNotFoundException;
 import com.safa.loanapi.installment.dao.Installment;
+import com.safa.loanapi.installment.dto.InstallmentView;
 import com.safa.loanapi.loan.LoanRepository;
 import com.safa.loanapi.loan.dao.Loan;
 import com.safa.loanapi.loan.dto.LoanPaymentInfo;
+import io.micrometer.core.annotation.Timed;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.security.access.AccessDeniedException;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
 import java.math.BigDecimal;
 import java.math.RoundingMode;
+import java.time.Clock;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.time.temporal.ChronoUnit;
-import java.util.Comparator;
 import java.util.List;
 
-import static com.safa.loanapi.common.Common.roundTwoDecimal;
-
 @Service
 public class InstallmentService {
     @Autowired
@@ -32,7 +36,16 @@ public class InstallmentService {
     private InstallmentRepository installmentRepository;
 
     @Autowired
-    private CustomerRepository customerRepository;
+    private CreditLimitLedger creditLimitLedger;
+
+    @Autowired
+    private CustomerSummaryService customerSummaryService;
+
+    @Autowired
+    private LoanMetrics loanMetrics;
+
+    @Autowired
+    private Clock clock;
 
     /**
      * Retrieves the list of installments associated with a given loan ID.
@@ -41,16 +54,21 @@ public class InstallmentService {
      * the authenticated user's ID (from {@code authentication.principal.id}) must match the provided
      * {@code customerId}, or the user must have the {@code ADMIN} role to access the resource.</p>
      *
+     * <p>The installments are selected straight into {@link InstallmentView}s by a read-only query, no
+     * {@link Installment} entity is loaded into the persistence context.</p>
+     *
      * @param customerId the ID of the customer requesting the installments. This must match the
      *                   authenticated user's ID unless the user has the {@code ADMIN} role.
      * @param loanID     the ID of the loan for which the installments are requested.
-     * @return a list of installments associated with the specified loan ID.
+     * @return a list of installments associated with the specified loan ID, in due date order.
      * @throws org.springframework.security.access.AccessDeniedException if the security condition
      *                                                                   specified in the {@code @PreAuthorize} annotation is not met.
      */
+    @Timed(value = "installments.list", description = "Time to list the installments of a loan", histogram = true)
+    @Transactional(readOnly = true)
     @PreAuthorize("#customerId == authentication.principal.id or hasRole('ADMIN')")
-    public List<Installment> listInstallments(Long customerId, Long loanID) {
-        return installmentRepository.findAllByLoanId(loanID);
+    public List<InstallmentView> listInstallments(Long customerId, Long loanID) {
+        return installmentRepository.findViewsByLoanId(loanID);
     }
 
 
@@ -58,8 +76,16 @@ public class InstallmentService {
      * Processes the payment of installments for a specified loan.
      * <p>
      * This method allows a user to pay off one or more installments of a loan, considering discounts for early payments
-     * and penalties for late payments. It updates the installment status, recalculates the customer's used credit limit,
-     * and checks if the loan is fully paid. Only the loan owner or users with the {@code ADMIN} role can make payments.
+     * and penalties for late payments, as allocated by {@link PaymentAllocation}. Only the payable installments are read, and whether the loan is paid completely
+     * is derived from the loan's count of unpaid installments. It updates the installment status, gives the paid principal back to the loan
+     * owner's credit limit through the {@link CreditLimitLedger}, checks if the loan is fully paid and updates the owner's
+     * {@link com.safa.loanapi.customer.dao.CustomerSummary} in the same transaction. Only the loan
+     * owner or users with the {@code ADMIN} role can make payments.
+     * </p>
+     * <p>
+     * Payments of the same loan are applied one after the other in this process, so an installment cannot be paid
+     * twice. A payment of another instance is detected by the loan's {@code @Version}, and the payment is retried on
+     * the fresh installments, see {@link StripedLock}.
      * </p>
      *
      * @param customerId the user id of the user making the payment
@@ -69,85 +95,124 @@ public class InstallmentService {
      * @throws LoanNotFoundException     if the loan with the specified ID does not exist
      * @throws CustomerNotFoundException if the customer associated with the loan does not exist
      * @throws AccessDeniedException     if the user is not authorized to make payments for the specified loan
+     * @throws ConcurrentUpdateException if the loan kept being paid by other requests
      */
+    @Timed(value = "installments.pay", description = "Time to pay the installments of a loan", histogram = true)
+    @StripedLock(scope = "loan", key = "#loanId")
+    @Transactional
     @PreAuthorize("#customerId == authentication.principal.id or hasRole('ADMIN')")
     public LoanPaymentInfo payInstallment(Long customerId, Long loanId, double amount) {
         // Retrieve the loan by ID, throw an exception if it doesn't exist
         Loan loan = loanRepository.findById(loanId).orElseThrow(() -> new LoanNotFoundException(loanId));
 
-        // Retrieve the customer by ID, throw an exception if it doesn't exist
-        Customer customer = customerRepository.findById(customerId).orElseThrow(() -> new CustomerNotFoundException(loan.getCustomerId()));
-
         // Get the current date and time
-        LocalDateTime now = LocalDateTime.now();
+        LocalDateTime now = LocalDateTime.now(clock);
+
+        // Fetch only the unpaid installments due within the next 3 months, in due date order, from the index
+        List<Installment> payableInstallment = installmentRepository.findPayableByLoanId(loanId, payableUntil(now.toLocalDate()));
 
-        // Filter the loan's installments to include only unpaid ones that are not older than 3 months,
-        // and sort them by due date
-        List<Installment> payableInstallment = loan.getInstallments().stream().
-                filter(installment -> !installment.getIsPaid() && !installment.getDueDate().minusMonths(3).isAfter(LocalDate.now())).
-                sorted(Comparator.comparing(Installment::getDueDate)).toList();
+        // Pay the installments in due date order while the amount covers them, with their discount or penalty
+        PaymentAllocation<Installment> allocation = PaymentAllocation.pay(payableInstallment, amount, now);
+        List<Installment> paidInstallments = allocation.getPaid();
 
-        // Initialize the object to store payment information
+        // Initialize the object to store payment information, it only returns the views of the paid installments
         LoanPaymentInfo loanPaymentInfo = new LoanPaymentInfo();
+        loanPaymentInfo.setPaidInstallments(InstallmentView.of(paidInstallments));
+        loanPaymentInfo.setTotalAmountSpent(allocation.getTotalAmountSpent());
 
         // Variable to track the credit limit adjustment
         double addedCreditLimit = 0;
-
-        // Process each payable installment
-        for (Installment installment : payableInstallment) {
-            BigDecimal amountToPay = installment.getTotalAmount();
-
-            // Apply a discount if the installment is not yet due
-            if (installment.getDueDate().isAfter(now.toLocalDate())) {
-                long numOfDays = ChronoUnit.DAYS.between(now.toLocalDate(), installment.getDueDate());
-                BigDecimal discount = BigDecimal.valueOf(installment.getTotalAmount().doubleValue() * 0.001 * numOfDays).setScale(2, RoundingMode.HALF_EVEN);
-                amountToPay = amountToPay.subtract(discount);
-            }
-
-            // Apply a penalty if the installment is overdue
-            if (installment.getDueDate().isBefore(now.toLocalDate())) {
-                long numOfDays = ChronoUnit.DAYS.between(installment.getDueDate(), now.toLocalDate());
-                BigDecimal penalty = BigDecimal.valueOf(installment.getTotalAmount().doubleValue() * 0.001 * numOfDays).setScale(2, RoundingMode.HALF_EVEN);
-                ;
-                amountToPay = amountToPay.add(penalty);
-            }
-
-            // If the remaining payment amount is less than the amount due for this installment, stop processing
-            if (amount < amountToPay.doubleValue()) {
-                break;
-            }
-
-            // Mark the installment as paid, record the paid amount and payment date
-            installment.setIsPaid(true);
-            installment.setPaidAmount(amountToPay);
-            installment.setPaymentDate(now);
-            this.installmentRepository.save(installment);
-
-            // Update the credit limit adjustment for the customer
+        for (Installment installment : paidInstallments) {
+            this.loanMetrics.installmentPaid(installment.getTotalAmount(), installment.getPaidAmount());
             addedCreditLimit += installment.getAmount().doubleValue();
+        }
 
-            // Deduct the paid amount from the total payment
-            amount -= amountToPay.doubleValue();
+        // Save the paid installments together, their updates are flushed as one JDBC batch
+        this.installmentRepository.saveAll(paidInstallments);
 
-            // Add the installment to the payment information
-            loanPaymentInfo.getPaidInstallments().add(installment);
-            loanPaymentInfo.setTotalAmountSpent(roundTwoDecimal(loanPaymentInfo.getTotalAmountSpent() + amountToPay.doubleValue()));
+        // Count the paid installments off the loan, it is paid completely once none are left
+        loan.setUnpaidInstallments(loan.getUnpaidInstallments() - paidInstallments.size());
+        boolean loanClosed = loan.getUnpaidInstallments() == 0 && !loan.getIsPaid();
+        if (loan.getUnpaidInstallments() == 0) {
+            loan.setIsPaid(true);
+            loanPaymentInfo.setLoanPaidCompletely(true);
         }
 
-        // Check if there are no unpaid installments remaining
-        List<Installment> unpaidInstallments = this.installmentRepository.findAllByLoanIdAndIsPaidOrderByDueDateAsc(loanId, false);
-        if (unpaidInstallments.isEmpty()) {
-            // If all installments are paid, mark the loan as fully paid
-            loan.setIsPaid(true);
+        // Updating the loan increments its version, which invalidates the payment quotes of the loan
+        if (!paidInstallments.isEmpty() || loanClosed) {
             this.loanRepository.save(loan);
-            loanPaymentInfo.setLoanPaidCompletely(true);
         }
 
-        // Update the customer's used credit limit by subtracting the paid amount
-        customer.setUsedCreditLimit(customer.getUsedCreditLimit().subtract(BigDecimal.valueOf(addedCreditLimit)));
-        this.customerRepository.save(customer);
+        // Give the paid principal back to the loan owner's available credit limit
+        this.creditLimitLedger.release(loan.getCustomerId(), BigDecimal.valueOf(addedCreditLimit));
+
+        // Take the paid principal, and the loan once it is closed, off the loan owner's summary
+        if (!paidInstallments.isEmpty() || loanClosed) {
+            this.customerSummaryService.installmentsPaid(loan.getCustomerId(), paidInstallments, now.toLocalDate(), loanClosed);
+        }
 
         // Return the payment summary
         return loanPaymentInfo;
     }
+
+    /**
+     * Checks whether an installment can be paid on the given date: it must be unpaid and due within the next 3 months.
+     *
+     * @param installment the installment to check
+     * @param today       the business date of the payment
+     * @return {@code true} if the installment can be paid
+     */
+    public static boolean isPayable(Installment installment, LocalDate today) {
+        return !installment.getIsPaid() && !installment.getDueDate().isAfter(payableUntil(today));
+    }
+
+    /**
+     * Returns the last due date an installment can have to be paid on the given date.
+     *
+     * @param today the business date of the payment
+     * @return the date 3 months from {@code today}
+     */
+    public static LocalDate payableUntil(LocalDate today) {
+        return today.plusMonths(3);
+    }
+
+    /**
+     * Calculates the amount to pay for an installment on the given date.
+     *
+     * <p>An installment paid before its due date gets a discount of {@code totalAmount * 0.001} per day left,
+     * an overdue installment gets a penalty of {@code totalAmount * 0.001} per day passed.</p>
+     *
+     * @param installment the installment to be paid
+     * @param today       the business date of the payment
+     * @return the total amount of the installment adjusted by the discount or penalty
+     */
+    public static BigDecimal amountToPay(Installment installment, LocalDate today) {
+        BigDecimal amountToPay = installment.getTotalAmount();
+
+        // Apply a discount if the installment is not yet due
+        if (installment.getDueDate().isAfter(today)) {
+            long numOfDays = ChronoUnit.DAYS.between(today, installment.getDueDate());
+            amountToPay = amountToPay.subtract(dailyAdjustment(installment.getTotalAmount(), numOfDays));
+        }
+
+        // Apply a penalty if the installment is overdue
+        if (installment.getDueDate().isBefore(today)) {
+            long numOfDays = ChronoUnit.DAYS.between(installment.getDueDate(), today);
+            amountToPay = amountToPay.add(dailyAdjustment(installment.getTotalAmount(), numOfDays));
+        }
+
+        return amountToPay;
+    }
+
+    /**
+     * Calculates the early payment discount or late payment penalty of an installment: {@code totalAmount * 0.001}
+     * per day, rounded to cents.
+     *
+     * @param totalAmount the total amount of the installment
+     * @param numOfDays   the days left until the due date, or passed since it
+     * @return the discount or penalty
+     */
+    public static BigDecimal dailyAdjustment(BigDecimal totalAmount, long numOfDays) {
+        return BigDecimal.valueOf(totalAmount.doubleValue() * 0.001 * numOfDays).setScale(2, RoundingMode.HALF_EVEN);
+    }
 }
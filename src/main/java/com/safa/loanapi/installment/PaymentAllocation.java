@@ -0,0 +1,131 @@
+package com.safa.loanapi.installment;
+
+import com.safa.loanapi.installment.dao.Installment;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Function;
+
+import static com.safa.loanapi.common.Common.roundTwoDecimal;
+import static com.safa.loanapi.installment.InstallmentService.amountToPay;
+import static com.safa.loanapi.installment.InstallmentService.isPayable;
+
+/**
+ * Splits a payment over the installments of a loan: the payable installments are paid in due date order, each for its
+ * amount after the early payment discount or late payment penalty, while the remaining amount covers the next one.
+ *
+ * <p>This is the only implementation of the rule. {@link InstallmentService#payInstallment}, the payment quotes and the
+ * settlement of collection files all allocate through it, so a quote spends exactly what the payment will.</p>
+ *
+ * @param <T> the type of the allocated installments
+ */
+public final class PaymentAllocation<T> {
+    private final double amount;
+    private final List<T> paid = new ArrayList<>();
+    private final List<BigDecimal> amountsToPay = new ArrayList<>();
+    private double remaining;
+    private double totalAmountSpent;
+
+    private PaymentAllocation(double amount) {
+        this.amount = amount;
+        this.remaining = amount;
+    }
+
+    /**
+     * Allocates a payment over already priced installments.
+     *
+     * @param payable     the payable installments in due date order
+     * @param amountToPay the amount to pay of an installment
+     * @param amount      the amount of the payment
+     * @return the installments the payment pays
+     */
+    public static <T> PaymentAllocation<T> allocate(List<T> payable, Function<? super T, BigDecimal> amountToPay, double amount) {
+        PaymentAllocation<T> allocation = new PaymentAllocation<>(amount);
+        for (T installment : payable) {
+            if (!allocation.pay(installment, amountToPay.apply(installment))) {
+                break;
+            }
+        }
+        return allocation;
+    }
+
+    /**
+     * Allocates a payment made on the given date over the installments of a loan, without changing them. Installments
+     * that are paid or not due within the next 3 months are skipped.
+     *
+     * @param installments the installments of the loan in due date order
+     * @param amount       the amount of the payment
+     * @param today        the business date of the payment
+     * @return the installments the payment pays
+     */
+    public static PaymentAllocation<Installment> allocate(List<Installment> installments, double amount, LocalDate today) {
+        PaymentAllocation<Installment> allocation = new PaymentAllocation<>(amount);
+        for (Installment installment : installments) {
+            if (isPayable(installment, today) && !allocation.pay(installment, amountToPay(installment, today))) {
+                break;
+            }
+        }
+        return allocation;
+    }
+
+    /**
+     * Allocates a payment made at the given time over the installments of a loan and marks the allocated installments
+     * paid with their amount to pay and the payment date.
+     *
+     * @param installments the installments of the loan in due date order
+     * @param amount       the amount of the payment
+     * @param now          the time of the payment
+     * @return the installments the payment paid
+     */
+    public static PaymentAllocation<Installment> pay(List<Installment> installments, double amount, LocalDateTime now) {
+        PaymentAllocation<Installment> allocation = allocate(installments, amount, now.toLocalDate());
+        for (int i = 0; i < allocation.paid.size(); i++) {
+            Installment installment = allocation.paid.get(i);
+            installment.setIsPaid(true);
+            installment.setPaidAmount(allocation.amountsToPay.get(i));
+            installment.setPaymentDate(now);
+        }
+        return allocation;
+    }
+
+    /**
+     * Pays the next installment if the remaining amount covers it.
+     *
+     * @return {@code false} if the remaining amount does not cover the installment, which ends the allocation
+     */
+    private boolean pay(T installment, BigDecimal amountToPay) {
+        if (remaining < amountToPay.doubleValue()) {
+            return false;
+        }
+        remaining -= amountToPay.doubleValue();
+        totalAmountSpent = roundTwoDecimal(totalAmountSpent + amountToPay.doubleValue());
+        paid.add(installment);
+        amountsToPay.add(amountToPay);
+        return true;
+    }
+
+    /**
+     * Returns the paid installments in due date order.
+     */
+    public List<T> getPaid() {
+        return Collections.unmodifiableList(paid);
+    }
+
+    /**
+     * Returns the sum of the amounts to pay of the paid installments.
+     */
+    public double getTotalAmountSpent() {
+        return totalAmountSpent;
+    }
+
+    /**
+     * Returns the part of the payment no installment was paid with.
+     */
+    public double getRemainingAmount() {
+        return roundTwoDecimal(amount - totalAmountSpent);
+    }
+}
@@ -0,0 +1,113 @@
+package com.safa.loanapi.installment;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.safa.loanapi.exception.LoanNotFoundException;
+import com.safa.loanapi.installment.dao.Installment;
+import com.safa.loanapi.installment.dto.PaymentQuote;
+import com.safa.loanapi.installment.dto.QuotedInstallment;
+import com.safa.loanapi.loan.LoanRepository;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.List;
+
+import static com.safa.loanapi.installment.InstallmentService.amountToPay;
+import static com.safa.loanapi.installment.InstallmentService.isPayable;
+
+/**
+ * Quotes what a payment would settle, allocated by the same {@link PaymentAllocation} as
+ * {@link InstallmentService#payInstallment} but without writing anything.
+ *
+ * <p>The amounts to pay of a loan's payable installments only change with the business date and with payments of the
+ * loan, which increment the loan's version. They are priced once per (loan, date, version) and kept in a cache of up
+ * to {@code payment.quote.cacheSize} loans, so a repeated quote only reads the loan's version. A payment changes the
+ * version, so the next quote prices the loan again. Hit and miss counts are exported as the {@code cache.*} metrics of
+ * the {@code paymentQuotes} cache.</p>
+ */
+@Service
+public class PaymentQuoteService {
+    static final String CACHE_NAME = "paymentQuotes";
+
+    private final LoanRepository loanRepository;
+    private final InstallmentRepository installmentRepository;
+    private final Cache<PricingKey, Pricing> pricings;
+    private final Clock clock;
+
+    public PaymentQuoteService(LoanRepository loanRepository,
+                               InstallmentRepository installmentRepository,
+                               @Value("${payment.quote.cacheSize:10000}") long cacheSize,
+                               @Value("${payment.quote.ttl:1h}") Duration ttl,
+                               MeterRegistry meterRegistry,
+                               Clock clock) {
+        this.loanRepository = loanRepository;
+        this.installmentRepository = installmentRepository;
+        this.clock = clock;
+        this.pricings = Caffeine.newBuilder()
+                .maximumSize(cacheSize)
+                .expireAfterWrite(ttl)
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, pricings, CACHE_NAME);
+    }
+
+    /**
+     * Quotes a payment of the loan's installments made today.
+     *
+     * <p>Only the loan owner or users with the {@code ADMIN} role can get a quote.</p>
+     *
+     * @param customerId the ID of the customer who would make the payment
+     * @param loanId     the ID of the loan to be paid
+     * @param amount     the amount that would be paid
+     * @return the installments the payment would pay and the amount it would spend
+     * @throws LoanNotFoundException if the loan with the specified ID does not exist
+     */
+    @Transactional(readOnly = true)
+    @PreAuthorize("#customerId == authentication.principal.id or hasRole('ADMIN')")
+    public PaymentQuote quote(Long customerId, Long loanId, double amount) {
+        LocalDate today = LocalDate.now(clock);
+
+        // Read only the version of the loan, the pricing of an unchanged loan is taken from the cache
+        Long version = loanRepository.findVersionById(loanId).orElseThrow(() -> new LoanNotFoundException(loanId));
+        Pricing pricing = pricings.get(new PricingKey(loanId, today, version), key -> price(key.loanId(), key.date()));
+
+        PaymentQuote quote = new PaymentQuote();
+        quote.setLoanId(loanId);
+        quote.setDate(today);
+        quote.setAmount(amount);
+
+        // Pay the priced installments in due date order while the remaining amount covers them
+        PaymentAllocation<QuotedInstallment> allocation = PaymentAllocation.allocate(pricing.payable(), QuotedInstallment::getAmountToPay, amount);
+        quote.getInstallments().addAll(allocation.getPaid());
+        quote.setTotalAmountSpent(allocation.getTotalAmountSpent());
+        quote.setRemainingAmount(allocation.getRemainingAmount());
+        quote.setLoanPaidCompletely(quote.getInstallments().size() == pricing.unpaid());
+        return quote;
+    }
+
+    private Pricing price(Long loanId, LocalDate today) {
+        List<Installment> unpaid = installmentRepository.findAllByLoanIdAndIsPaidOrderByDueDateAsc(loanId, false);
+        List<QuotedInstallment> payable = unpaid.stream()
+                .filter(installment -> isPayable(installment, today))
+                .map(installment -> new QuotedInstallment(installment.getId(), installment.getDueDate(),
+                        installment.getTotalAmount(), amountToPay(installment, today)))
+                .toList();
+        return new Pricing(payable, unpaid.size());
+    }
+
+    private record PricingKey(Long loanId, LocalDate date, Long version) {
+    }
+
+    /**
+     * The payable installments of a loan in due date order, and the number of unpaid installments of the loan.
+     */
+    private record Pricing(List<QuotedInstallment> payable, int unpaid) {
+    }
+}
@@ -0,0 +1,37 @@
+package com.safa.loanapi.installment.dao;
+
+import com.safa.loanapi.installment.dto.PaymentStatus;
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+
+/**
+ * A payment submitted for asynchronous processing. It is stored before the payment is queued and updated once it is
+ * processed, so its status is still known after a restart or on another instance.
+ */
+@Entity
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Table(indexes = @Index(name = "idx_async_payment_submitted_at", columnList = "submitted_at"))
+public class AsyncPayment {
+    @Id
+    private String id;
+    private Long customerId;
+    private Long loanId;
+    @Column(precision = 10, scale = 2)
+    private BigDecimal amount;
+    @Enumerated(EnumType.STRING)
+    private PaymentStatus.State status;
+    private LocalDateTime submittedAt;
+    private LocalDateTime completedAt;
+    // The LoanPaymentInfo of a completed payment, as JSON
+    @Lob
+    private String result;
+    @Column(length = 1000)
+    private String error;
+}
@@ -12,9 +12,11 @@ import java.time.LocalDateTime;
 @Entity
 @Data
 @NoArgsConstructor
+@Table(indexes = @Index(name = "idx_installment_loan_paid_due_date", columnList = "loan_id, is_paid, due_date"))
 public class Installment {
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "installment_seq")
+    @SequenceGenerator(name = "installment_seq", sequenceName = "installment_seq", allocationSize = 50)
     private Long id;
     private Long loanId;
     @Column(precision = 10, scale = 2)
@@ -26,6 +28,10 @@ public class Installment {
     private LocalDate dueDate;
     private LocalDateTime paymentDate;
     private Boolean isPaid = false;
+    // Maintained by the nightly penalty accrual while the installment is unpaid and overdue
+    @Column(precision = 10, scale = 2)
+    private BigDecimal accruedPenalty = BigDecimal.valueOf(0.0);
+    private Integer overdueDays = 0;
 
     public Installment(Long loanId, BigDecimal amount, BigDecimal totalAmount, LocalDate dueDate) {
         this.loanId = loanId;
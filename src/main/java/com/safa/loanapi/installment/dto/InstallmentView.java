@@ -0,0 +1,42 @@
+package com.safa.loanapi.installment.dto;
+
+import com.safa.loanapi.installment.dao.Installment;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * An installment as returned by the API. Listings select it straight from the table with a constructor expression,
+ * so no {@link Installment} entity is instantiated or tracked for it.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class InstallmentView {
+    private Long id;
+    private Long loanId;
+    private BigDecimal amount;
+    private BigDecimal totalAmount;
+    private BigDecimal paidAmount;
+    private LocalDate dueDate;
+    private LocalDateTime paymentDate;
+    private Boolean isPaid;
+    private BigDecimal accruedPenalty;
+    private Integer overdueDays;
+
+    public static InstallmentView of(Installment installment) {
+        return new InstallmentView(installment.getId(), installment.getLoanId(), installment.getAmount(),
+                installment.getTotalAmount(), installment.getPaidAmount(), installment.getDueDate(),
+                installment.getPaymentDate(), installment.getIsPaid(), installment.getAccruedPenalty(),
+                installment.getOverdueDays());
+    }
+
+    public static List<InstallmentView> of(List<Installment> installments) {
+        return installments == null ? null : installments.stream().map(InstallmentView::of).toList();
+    }
+}
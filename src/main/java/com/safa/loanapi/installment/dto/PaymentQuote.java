@@ -0,0 +1,21 @@
+package com.safa.loanapi.installment.dto;
+
+import lombok.Data;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * What a payment of {@code amount} on {@code date} would settle, without paying anything.
+ */
+@Data
+public class PaymentQuote {
+    private Long loanId;
+    private LocalDate date;
+    private double amount;
+    private List<QuotedInstallment> installments = new ArrayList<>();
+    private double totalAmountSpent;
+    private double remainingAmount;
+    private boolean loanPaidCompletely;
+}
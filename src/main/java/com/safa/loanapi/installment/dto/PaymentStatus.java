@@ -0,0 +1,33 @@
+package com.safa.loanapi.installment.dto;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.safa.loanapi.loan.dto.LoanPaymentInfo;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * The state of a payment submitted for asynchronous processing. The result is set once the payment is
+ * {@code COMPLETED}, the error once it {@code FAILED}.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class PaymentStatus {
+    public enum State {
+        PENDING,
+        COMPLETED,
+        FAILED
+    }
+
+    private String paymentId;
+    private Long loanId;
+    private State status;
+    private LocalDateTime submittedAt;
+    private LocalDateTime completedAt;
+    private LoanPaymentInfo result;
+    private String error;
+}
@@ -0,0 +1,22 @@
+package com.safa.loanapi.installment.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+
+/**
+ * An installment that a quoted payment would pay, with the amount due after the early payment discount or late
+ * payment penalty of the quote's date.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class QuotedInstallment {
+    private Long id;
+    private LocalDate dueDate;
+    private BigDecimal totalAmount;
+    private BigDecimal amountToPay;
+}
@@ -0,0 +1,32 @@
+package com.safa.loanapi.loan;
+
+import jakarta.servlet.http.HttpServletRequest;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+@RestController
+@RequestMapping("/loans")
+public class BulkLoanController {
+    static final String APPLICATION_NDJSON_VALUE = "application/x-ndjson";
+
+    private final BulkLoanService bulkLoanService;
+
+    public BulkLoanController(BulkLoanService bulkLoanService) {
+        this.bulkLoanService = bulkLoanService;
+    }
+
+    @PostMapping(value = "/bulk", consumes = {MediaType.APPLICATION_JSON_VALUE, APPLICATION_NDJSON_VALUE}, produces = APPLICATION_NDJSON_VALUE)
+    ResponseEntity<StreamingResponseBody> createLoans(HttpServletRequest request) throws IOException {
+        InputStream in = request.getInputStream();
+        return ResponseEntity.ok()
+                .contentType(MediaType.parseMediaType(APPLICATION_NDJSON_VALUE))
+                .body(out -> this.bulkLoanService.createLoans(in, out));
+    }
+}
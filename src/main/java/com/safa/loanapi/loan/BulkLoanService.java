@@ -0,0 +1,243 @@
+package com.safa.loanapi.loan;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.safa.loanapi.common.Common;
+import com.safa.loanapi.common.LoanMetrics;
+import com.safa.loanapi.common.concurrency.StripedLockManager;
+import com.safa.loanapi.customer.CreditLimitLedger;
+import com.safa.loanapi.customer.CustomerSummaryService;
+import com.safa.loanapi.exception.ConcurrentUpdateException;
+import com.safa.loanapi.exception.CustomerNotFoundException;
+import com.safa.loanapi.exception.NotEnoughLimitException;
+import com.safa.loanapi.installment.InstallmentRepository;
+import com.safa.loanapi.installment.dao.Installment;
+import com.safa.loanapi.loan.dao.Loan;
+import com.safa.loanapi.loan.dto.BulkCreateLoan;
+import com.safa.loanapi.loan.dto.BulkLoanResult;
+import jakarta.persistence.EntityManager;
+import jakarta.validation.ConstraintViolation;
+import jakarta.validation.Validator;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.util.*;
+import java.util.stream.Collectors;
+
+@Service
+public class BulkLoanService {
+    private static final Logger log = LoggerFactory.getLogger(BulkLoanService.class);
+
+    @Autowired
+    private LoanRepository loanRepository;
+
+    @Autowired
+    private InstallmentRepository installmentRepository;
+
+    @Autowired
+    private CreditLimitLedger creditLimitLedger;
+
+    @Autowired
+    private CustomerSummaryService customerSummaryService;
+
+    @Autowired
+    private LoanMetrics loanMetrics;
+
+    @Autowired
+    private EntityManager entityManager;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Autowired
+    private StripedLockManager stripedLockManager;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private Validator validator;
+
+    @Value("${bulkLoan.chunkSize:500}")
+    private int chunkSize;
+
+    /**
+     * Creates loans from a stream of {@link BulkCreateLoan} requests and streams one {@link BulkLoanResult} per request
+     * back as newline delimited JSON.
+     *
+     * <p>The input can either be a JSON array or newline delimited JSON. Requests are read and processed in chunks of
+     * {@code bulkLoan.chunkSize}, so only one chunk is held in memory at a time. Within a chunk the requests are
+     * grouped by customer and each customer's available credit limit is consumed from the {@link CreditLimitLedger}
+     * in input order, rejecting the requests that no longer fit. Each chunk is persisted in its own transaction with
+     * batched inserts for loans and installments and a single batched update for the customers, while holding the
+     * locks of its customers in the {@link StripedLockManager} like {@link LoanService#createLoan}. If a customer's row
+     * does not cover its loans when the chunk commits, or a customer stays locked, the chunk is rolled back and its
+     * requests are created one by one, rejecting only the ones that fail. The results of a chunk are flushed to the
+     * output before the next chunk is read.</p>
+     *
+     * <p>Only users with the {@code ADMIN} role can create loans in bulk.</p>
+     *
+     * @param in  the request body containing the loan requests
+     * @param out the response body the results are written to, in input order
+     * @throws IOException if reading the input or writing the results fails
+     */
+    @PreAuthorize("hasRole('ADMIN')")
+    public void createLoans(InputStream in, OutputStream out) throws IOException {
+        List<Item> chunk = new ArrayList<>(chunkSize);
+        long index = 0;
+
+        try (MappingIterator<BulkCreateLoan> requests = objectMapper.readerFor(BulkCreateLoan.class).readValues(in)) {
+            while (true) {
+                BulkCreateLoan request;
+                try {
+                    if (!requests.hasNextValue()) {
+                        break;
+                    }
+                    request = requests.nextValue();
+                } catch (JsonProcessingException e) {
+                    // The rest of the input cannot be parsed reliably; report it and stop reading
+                    processChunk(chunk, out);
+                    chunk.clear();
+                    write(out, BulkLoanResult.rejected(index, null, "Malformed request: " + e.getOriginalMessage()));
+                    break;
+                }
+
+                chunk.add(new Item(index++, request));
+                if (chunk.size() == chunkSize) {
+                    processChunk(chunk, out);
+                    chunk.clear();
+                }
+            }
+        }
+
+        processChunk(chunk, out);
+        out.flush();
+    }
+
+    /**
+     * Validates, persists and reports a chunk of loan requests.
+     */
+    private void processChunk(List<Item> chunk, OutputStream out) throws IOException {
+        if (chunk.isEmpty()) {
+            return;
+        }
+
+        // Indexes are consecutive inside a chunk, so a result's slot is its offset from the first index
+        long firstIndex = chunk.get(0).index();
+        BulkLoanResult[] results = new BulkLoanResult[chunk.size()];
+
+        // Validate the requests and group the valid ones by customer, keeping the input order inside each group
+        Map<Long, List<Item>> itemsByCustomer = new LinkedHashMap<>();
+        for (int i = 0; i < chunk.size(); i++) {
+            Item item = chunk.get(i);
+            Set<ConstraintViolation<BulkCreateLoan>> violations = validator.validate(item.request());
+            if (!violations.isEmpty()) {
+                results[i] = BulkLoanResult.rejected(item.index(), item.request().getCustomerId(), violations.stream()
+                        .map(violation -> violation.getPropertyPath() + ": " + violation.getMessage())
+                        .sorted().collect(Collectors.joining(", ")));
+                continue;
+            }
+            itemsByCustomer.computeIfAbsent(item.request().getCustomerId(), customerID -> new ArrayList<>()).add(item);
+        }
+
+        int created;
+        try {
+            created = persist(itemsByCustomer, results, firstIndex);
+        } catch (NotEnoughLimitException | ConcurrentUpdateException e) {
+            // The chunk was rolled back; create its loans one by one so only the failing requests are rejected
+            log.warn("Creating the chunk of {} loans failed ({}), creating them one by one", chunk.size(), e.getMessage());
+            created = 0;
+            for (Map.Entry<Long, List<Item>> entry : itemsByCustomer.entrySet()) {
+                for (Item item : entry.getValue()) {
+                    try {
+                        created += persist(Map.of(entry.getKey(), List.of(item)), results, firstIndex);
+                    } catch (NotEnoughLimitException | ConcurrentUpdateException itemException) {
+                        results[(int) (item.index() - firstIndex)] = BulkLoanResult.rejected(item.index(), entry.getKey(), itemException.getMessage());
+                    }
+                }
+            }
+        }
+        loanMetrics.loansCreated(created);
+
+        for (BulkLoanResult result : results) {
+            write(out, result);
+        }
+        out.flush();
+    }
+
+    /**
+     * Persists the valid requests of a chunk in one transaction while holding the locks of their customers and fills
+     * in their results.
+     *
+     * @return the number of loans created
+     * @throws NotEnoughLimitException   if a customer's row does not cover its loans, nothing is created then
+     * @throws ConcurrentUpdateException if a customer's lock could not be acquired in time
+     */
+    private int persist(Map<Long, List<Item>> itemsByCustomer, BulkLoanResult[] results, long firstIndex) {
+        return Objects.requireNonNull(stripedLockManager.executeAll("customer", itemsByCustomer.keySet(),
+                () -> transactionTemplate.execute(status -> create(itemsByCustomer, results, firstIndex))));
+    }
+
+    /**
+     * Creates the loans of the requests in the current transaction and fills in their results.
+     */
+    private int create(Map<Long, List<Item>> itemsByCustomer, BulkLoanResult[] results, long firstIndex) {
+        List<Loan> loans = new ArrayList<>();
+        List<Item> accepted = new ArrayList<>();
+
+        itemsByCustomer.forEach((customerID, items) -> {
+            // Consume the customer's available limit request by request; the ledger sums up the changes
+            // and writes one update per customer when the chunk commits
+            for (Item item : items) {
+                BulkCreateLoan request = item.request();
+                double amount = Common.roundTwoDecimal(request.getAmount());
+                try {
+                    creditLimitLedger.reserve(customerID, BigDecimal.valueOf(amount));
+                } catch (CustomerNotFoundException | NotEnoughLimitException e) {
+                    results[(int) (item.index() - firstIndex)] = BulkLoanResult.rejected(item.index(), customerID, e.getMessage());
+                    continue;
+                }
+
+                loans.add(LoanService.newLoan(customerID, amount, request.getRate(), request.getNumberOfInstallments()));
+                accepted.add(item);
+            }
+        });
+
+        // Save the loans first so the sequence assigns their ids, then the whole chunk's schedule at once
+        List<Loan> savedLoans = loanRepository.saveAll(loans);
+        List<Installment> installments = new ArrayList<>();
+        for (int i = 0; i < savedLoans.size(); i++) {
+            Loan loan = savedLoans.get(i);
+            Item item = accepted.get(i);
+            List<Installment> schedule = LoanService.buildInstallments(loan.getId(), loan.getAmount().doubleValue(),
+                    item.request().getRate(), loan.getNumberOfInstallments());
+            installments.addAll(schedule);
+            results[(int) (item.index() - firstIndex)] = BulkLoanResult.created(item.index(), loan.getCustomerId(), loan.getId());
+            customerSummaryService.loanCreated(loan.getCustomerId(), loan.getAmount(), schedule.get(0).getDueDate());
+        }
+        installmentRepository.saveAll(installments);
+
+        // Write the chunk out and drop it from the persistence context to keep memory flat
+        entityManager.flush();
+        entityManager.clear();
+        return savedLoans.size();
+    }
+
+    private void write(OutputStream out, BulkLoanResult result) throws IOException {
+        out.write(objectMapper.writeValueAsBytes(result));
+        out.write('\n');
+    }
+
+    private record Item(long index, BulkCreateLoan request) {
+    }
+}
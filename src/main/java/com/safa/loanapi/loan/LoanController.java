@@ -1,30 +1,64 @@
 package com.safa.loanapi.loan;
 
+import com.safa.loanapi.common.idempotency.IdempotencyStore;
+import com.safa.loanapi.installment.dto.InstallmentView;
 import com.safa.loanapi.loan.dao.Loan;
 import com.safa.loanapi.loan.dto.CreateLoan;
+import com.safa.loanapi.loan.dto.LoanPage;
+import com.safa.loanapi.loan.dto.LoanQuery;
+import com.safa.loanapi.loan.dto.LoanView;
 import jakarta.validation.Valid;
+import jakarta.validation.constraints.Max;
+import jakarta.validation.constraints.Min;
+import jakarta.validation.constraints.Size;
+import org.springframework.format.annotation.DateTimeFormat;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
+import java.time.LocalDate;
 import java.util.List;
 
 @RestController
 @RequestMapping("/customers")
 public class LoanController {
+    static final String NEXT_CURSOR_HEADER = "X-Next-Cursor";
+
     private final LoanService loanService;
+    private final IdempotencyStore idempotencyStore;
 
-    public LoanController(LoanService loanService) {
+    public LoanController(LoanService loanService, IdempotencyStore idempotencyStore) {
         this.loanService = loanService;
+        this.idempotencyStore = idempotencyStore;
     }
 
     @PostMapping("/{customer_id}/loans")
-    ResponseEntity<Loan> createLoan(@Valid @RequestBody CreateLoan req, @PathVariable Long customer_id) {
-        return ResponseEntity.ok(this.loanService.createLoan(customer_id, req.getAmount(), req.getRate(), req.getNumberOfInstallments()));
+    ResponseEntity<LoanView> createLoan(@Valid @RequestBody CreateLoan req, @PathVariable Long customer_id,
+                                    @RequestHeader(name = IdempotencyStore.HEADER, required = false) @Size(min = 1, max = 255) String idempotencyKey) {
+        // A retried request with the same key gets the loan created by the first one
+        return this.idempotencyStore.execute(idempotencyKey, "POST /customers/" + customer_id + "/loans", req,
+                () -> {
+                    Loan loan = this.loanService.createLoan(customer_id, req.getAmount(), req.getRate(), req.getNumberOfInstallments());
+                    return ResponseEntity.ok(LoanView.of(loan, InstallmentView.of(loan.getInstallments())));
+                });
     }
 
     @GetMapping("/{customer_id}/loans")
-    ResponseEntity<List<Loan>> listLoans(@PathVariable Long customer_id) {
-        return ResponseEntity.ok(this.loanService.listLoans(customer_id));
+    ResponseEntity<List<LoanView>> listLoans(@PathVariable Long customer_id,
+                                         @RequestParam(defaultValue = "50") @Min(1) @Max(500) int limit,
+                                         @RequestParam(required = false) String cursor,
+                                         @RequestParam(name = "is_paid", required = false) Boolean isPaid,
+                                         @RequestParam(name = "created_from", required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate createdFrom,
+                                         @RequestParam(name = "created_to", required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate createdTo,
+                                         @RequestParam(name = "include_installments", defaultValue = "true") boolean includeInstallments) {
+        LoanQuery query = new LoanQuery(limit, cursor, isPaid, createdFrom, createdTo, includeInstallments);
+        LoanPage page = this.loanService.listLoans(customer_id, query);
+
+        // The body stays a plain list, the position of the next page is passed in a header
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok();
+        if (page.getNextCursor() != null) {
+            response.header(NEXT_CURSOR_HEADER, page.getNextCursor());
+        }
+        return response.body(page.getLoans());
     }
 
 }
@@ -0,0 +1,37 @@
+package com.safa.loanapi.loan;
+
+import com.safa.loanapi.exception.InvalidCursorException;
+import com.safa.loanapi.loan.dto.LoanView;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.Base64;
+
+/**
+ * Position of a loan in the {@code (createdAt, id)} order of a loan listing, handed to clients as an opaque string.
+ */
+record LoanCursor(LocalDateTime createdAt, long id) {
+
+    static LoanCursor of(LoanView loan) {
+        return new LoanCursor(loan.getCreatedAt(), loan.getId());
+    }
+
+    String encode() {
+        String value = createdAt + "|" + id;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(value.getBytes(StandardCharsets.UTF_8));
+    }
+
+    static LoanCursor decode(String cursor) {
+        try {
+            String value = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            int separator = value.indexOf('|');
+            if (separator < 0) {
+                throw new InvalidCursorException(cursor);
+            }
+            return new LoanCursor(LocalDateTime.parse(value.substring(0, separator)), Long.parseLong(value.substring(separator + 1)));
+        } catch (IllegalArgumentException | DateTimeParseException e) {
+            throw new InvalidCursorException(cursor);
+        }
+    }
+}
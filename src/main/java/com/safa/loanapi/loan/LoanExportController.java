@@ -0,0 +1,44 @@
+package com.safa.loanapi.loan;
+
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.io.BufferedOutputStream;
+import java.io.OutputStream;
+import java.util.zip.GZIPOutputStream;
+
+@RestController
+@RequestMapping("/loans")
+public class LoanExportController {
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final LoanExportService loanExportService;
+
+    public LoanExportController(LoanExportService loanExportService) {
+        this.loanExportService = loanExportService;
+    }
+
+    @GetMapping(value = "/export", produces = BulkLoanController.APPLICATION_NDJSON_VALUE)
+    ResponseEntity<StreamingResponseBody> exportLoans(@RequestParam(name = "customer_id", required = false) Long customerId,
+                                                      @RequestHeader(name = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding) {
+        boolean gzip = acceptEncoding != null && acceptEncoding.contains("gzip");
+
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok()
+                .contentType(MediaType.parseMediaType(BulkLoanController.APPLICATION_NDJSON_VALUE))
+                .header(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+        if (gzip) {
+            response.header(HttpHeaders.CONTENT_ENCODING, "gzip");
+        }
+
+        // Lines are compressed as they are written, the export is never held in memory as a whole
+        return response.body(out -> {
+            // Closing the body also releases the native deflater of the gzip stream when the export fails
+            try (OutputStream body = gzip ? new GZIPOutputStream(out, BUFFER_SIZE) : new BufferedOutputStream(out, BUFFER_SIZE)) {
+                this.loanExportService.export(customerId, body);
+            }
+        });
+    }
+}
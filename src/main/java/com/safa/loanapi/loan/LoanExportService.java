@@ -0,0 +1,102 @@
+package com.safa.loanapi.loan;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.safa.loanapi.installment.InstallmentRepository;
+import com.safa.loanapi.installment.dao.Installment;
+import com.safa.loanapi.installment.dto.InstallmentView;
+import com.safa.loanapi.loan.dao.Loan;
+import com.safa.loanapi.loan.dto.LoanView;
+import jakarta.persistence.EntityManager;
+import org.hibernate.CacheMode;
+import org.hibernate.Session;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.stream.Stream;
+
+@Service
+public class LoanExportService {
+    @Autowired
+    private LoanRepository loanRepository;
+
+    @Autowired
+    private InstallmentRepository installmentRepository;
+
+    @Autowired
+    private EntityManager entityManager;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    /**
+     * Writes the loans of a customer, or of all customers, with their installments as newline delimited JSON.
+     *
+     * <p>Loans ordered by id and installments ordered by loan id are read through two forward-only cursors at the same
+     * time and merged, so every line is a {@link LoanView} with its installments and neither the loans nor the
+     * installments are ever collected into a list. Every entity is detached from the persistence context once it is
+     * written, which keeps memory use constant no matter how many loans are exported. The session ignores the
+     * second-level cache while it exports, so the loans read once do not evict the ones payments and quotes read.</p>
+     *
+     * <p>Only users with the {@code ADMIN} role can export loans.</p>
+     *
+     * @param customerID the ID of the customer whose loans are exported, {@code null} to export all customers
+     * @param out        the stream the lines are written to
+     * @return the number of exported loans
+     */
+    @PreAuthorize("hasRole('ADMIN')")
+    public long export(Long customerID, OutputStream out) {
+        TransactionTemplate readOnly = new TransactionTemplate(transactionManager);
+        readOnly.setReadOnly(true);
+
+        return readOnly.execute(status -> {
+            // Set on the session, the rows of a stream are loaded after the query restored its own cache mode
+            entityManager.unwrap(Session.class).setCacheMode(CacheMode.IGNORE);
+            try (Stream<Loan> loans = customerID == null ? loanRepository.streamAllByOrderByIdAsc() : loanRepository.streamAllByCustomerIdOrderByIdAsc(customerID);
+                 Stream<Installment> installments = customerID == null ? installmentRepository.streamAllByOrderByLoanIdAscDueDateAsc() : installmentRepository.streamAllByCustomerId(customerID)) {
+                return write(loans.iterator(), installments.iterator(), out);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+    }
+
+    private long write(Iterator<Loan> loans, Iterator<Installment> installments, OutputStream out) throws IOException {
+        long count = 0;
+        Installment next = installments.hasNext() ? installments.next() : null;
+
+        while (loans.hasNext()) {
+            Loan loan = loans.next();
+
+            // Skip installments of loans that are not exported, then take the ones of this loan
+            while (next != null && next.getLoanId() < loan.getId()) {
+                entityManager.detach(next);
+                next = installments.hasNext() ? installments.next() : null;
+            }
+            List<Installment> loanInstallments = new ArrayList<>(loan.getNumberOfInstallments() == null ? 0 : loan.getNumberOfInstallments());
+            while (next != null && next.getLoanId().equals(loan.getId())) {
+                loanInstallments.add(next);
+                next = installments.hasNext() ? installments.next() : null;
+            }
+
+            out.write(objectMapper.writeValueAsBytes(LoanView.of(loan, InstallmentView.of(loanInstallments))));
+            out.write('\n');
+            count++;
+
+            entityManager.detach(loan);
+            loanInstallments.forEach(entityManager::detach);
+        }
+        return count;
+    }
+}
@@ -0,0 +1,19 @@
+package com.safa.loanapi.loan;
+
+import com.safa.loanapi.loan.dao.Loan;
+import com.safa.loanapi.loan.dto.LoanView;
+import org.springframework.data.jpa.domain.Specification;
+
+import java.util.List;
+
+public interface LoanRepositoryCustom {
+    /**
+     * Selects the columns of the loans matching a specification straight into {@link LoanView}s, ordered by
+     * {@code createdAt} and {@code id}. The views are left without their installments.
+     *
+     * @param spec  the loans to select
+     * @param limit the maximum number of loans to select
+     * @return the views of the loans
+     */
+    List<LoanView> findViews(Specification<Loan> spec, int limit);
+}
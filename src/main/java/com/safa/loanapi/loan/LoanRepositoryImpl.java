@@ -0,0 +1,36 @@
+package com.safa.loanapi.loan;
+
+import com.safa.loanapi.loan.dao.Loan;
+import com.safa.loanapi.loan.dto.LoanView;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import jakarta.persistence.criteria.CriteriaBuilder;
+import jakarta.persistence.criteria.CriteriaQuery;
+import jakarta.persistence.criteria.Root;
+import org.springframework.data.jpa.domain.Specification;
+
+import java.util.List;
+
+/**
+ * Implements the queries of {@link LoanRepository} that Spring Data cannot derive. A constructor expression selects
+ * only the columns of the view, so no {@link Loan} entity is instantiated, put in the persistence context or dirty
+ * checked at flush.
+ */
+class LoanRepositoryImpl implements LoanRepositoryCustom {
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Override
+    public List<LoanView> findViews(Specification<Loan> spec, int limit) {
+        CriteriaBuilder cb = entityManager.getCriteriaBuilder();
+        CriteriaQuery<LoanView> query = cb.createQuery(LoanView.class);
+        Root<Loan> root = query.from(Loan.class);
+
+        query.select(cb.construct(LoanView.class, root.get("id"), root.get("customerId"), root.get("amount"),
+                        root.get("totalAmount"), root.get("numberOfInstallments"), root.get("createdAt"), root.get("isPaid")))
+                .where(spec.toPredicate(root, query, cb))
+                .orderBy(cb.asc(root.get("createdAt")), cb.asc(root.get("id")));
+
+        return entityManager.createQuery(query).setMaxResults(limit).getResultList();
+    }
+}
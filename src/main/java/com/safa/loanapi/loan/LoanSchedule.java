@@ -0,0 +1,161 @@
+package com.safa.loanapi.loan;
+
+/**
+ * Computes installment schedules in whole cents.
+ *
+ * <p>All amounts are {@code long} cents and every method writes its result into the primitive arrays held by the
+ * schedule, which only grow when a schedule with more installments than ever before is computed. A schedule can be
+ * reused for any number of loans, so computing a schedule does not allocate. Instances are not thread safe.</p>
+ *
+ * <p>Every method is exact: the principal parts always add up to the principal and the total parts to the principal
+ * plus the interest, any rounding difference is settled in cents on the last installments.</p>
+ *
+ * <ul>
+ *   <li>{@link #flat}: the principal and the total are each split into equal parts. This is how loans are created,
+ *   with the interest of the loan fixed up front.</li>
+ *   <li>{@link #equalPrincipal}: the principal is split into equal parts and every installment pays the interest of
+ *   the outstanding balance, so installments decrease over time.</li>
+ *   <li>{@link #annuity}: French amortization, every installment is the same and the interest part decreases while the
+ *   principal part grows.</li>
+ * </ul>
+ */
+public final class LoanSchedule {
+    private long[] principalCents;
+    private long[] totalCents;
+    private int size;
+
+    public LoanSchedule(int capacity) {
+        this.principalCents = new long[capacity];
+        this.totalCents = new long[capacity];
+    }
+
+    /**
+     * Splits the principal and the total amount of the loan each into equal parts.
+     *
+     * @param principal the principal in cents
+     * @param total     the principal plus interest in cents
+     * @param n         the number of installments
+     * @return this schedule
+     * @throws ArithmeticException if the number of installments is not positive
+     */
+    public LoanSchedule flat(long principal, long total, int n) {
+        resize(n);
+        splitEvenly(principal, n, principalCents);
+        splitEvenly(total, n, totalCents);
+        return this;
+    }
+
+    /**
+     * Splits the principal into equal parts, each installment adds the interest of the outstanding balance.
+     *
+     * @param principal    the principal in cents
+     * @param periodicRate the interest rate per installment period, e.g. {@code 0.01} for 1% per month
+     * @param n            the number of installments
+     * @return this schedule
+     * @throws ArithmeticException if the number of installments is not positive
+     */
+    public LoanSchedule equalPrincipal(long principal, double periodicRate, int n) {
+        resize(n);
+        splitEvenly(principal, n, principalCents);
+
+        long balance = principal;
+        for (int i = 0; i < n; i++) {
+            totalCents[i] = principalCents[i] + interest(balance, periodicRate);
+            balance -= principalCents[i];
+        }
+        return this;
+    }
+
+    /**
+     * Computes a French amortization schedule: every installment pays the same amount, the interest of the
+     * outstanding balance first and the principal with the rest. The last installment pays off the remaining balance.
+     *
+     * @param principal    the principal in cents
+     * @param periodicRate the interest rate per installment period, e.g. {@code 0.01} for 1% per month
+     * @param n            the number of installments
+     * @return this schedule
+     * @throws ArithmeticException if the number of installments is not positive
+     */
+    public LoanSchedule annuity(long principal, double periodicRate, int n) {
+        if (periodicRate == 0) {
+            return flat(principal, principal, n);
+        }
+        resize(n);
+
+        long payment = Math.round(principal * periodicRate / (1 - Math.pow(1 + periodicRate, -n)));
+        long balance = principal;
+        for (int i = 0; i < n; i++) {
+            long interest = interest(balance, periodicRate);
+            long principalPart = i == n - 1 ? balance : Math.min(payment - interest, balance);
+            principalCents[i] = principalPart;
+            totalCents[i] = principalPart + interest;
+            balance -= principalPart;
+        }
+        return this;
+    }
+
+    /**
+     * Returns the number of installments of the last computed schedule.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns the principal part of an installment in cents.
+     */
+    public long principalCents(int installment) {
+        return principalCents[checkIndex(installment)];
+    }
+
+    /**
+     * Returns the amount of an installment, principal and interest, in cents.
+     */
+    public long totalCents(int installment) {
+        return totalCents[checkIndex(installment)];
+    }
+
+    /**
+     * Splits an amount into {@code n} parts that differ by at most one cent, the larger parts last.
+     *
+     * @param amount the amount in cents, may be negative
+     * @param n      the number of parts
+     * @param parts  receives the parts, at least {@code n} long
+     * @throws ArithmeticException if the number of parts is not positive
+     */
+    public static void splitEvenly(long amount, int n, long[] parts) {
+        if (n <= 0) throw new ArithmeticException("Number of parts must be positive");
+
+        // Floor division keeps the remainder non-negative for negative amounts too
+        long low = Math.floorDiv(amount, n);
+        int highs = (int) Math.floorMod(amount, n);
+        int lows = n - highs;
+
+        for (int i = 0; i < lows; i++) {
+            parts[i] = low;
+        }
+        for (int i = lows; i < n; i++) {
+            parts[i] = low + 1;
+        }
+    }
+
+    private static long interest(long balance, double periodicRate) {
+        return Math.round(balance * periodicRate);
+    }
+
+    private void resize(int n) {
+        if (n <= 0) throw new ArithmeticException("Number of installments must be positive");
+        if (n > principalCents.length) {
+            principalCents = new long[n];
+            totalCents = new long[n];
+        }
+        size = n;
+    }
+
+    private int checkIndex(int installment) {
+        if (installment < 0 || installment >= size) {
+            throw new IndexOutOfBoundsException(installment);
+        }
+        return installment;
+    }
+}
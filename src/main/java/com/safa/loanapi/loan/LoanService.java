@@ -1,24 +1,36 @@
 package com.safa.loanapi.loan;
 
 import com.safa.loanapi.common.Common;
-import com.safa.loanapi.customer.CustomerRepository;
-import com.safa.loanapi.customer.dao.Customer;
+import com.safa.loanapi.common.LoanMetrics;
+import com.safa.loanapi.common.concurrency.StripedLock;
+import com.safa.loanapi.customer.CreditLimitLedger;
+import com.safa.loanapi.customer.CustomerSummaryService;
 import com.safa.loanapi.exception.CustomerNotFoundException;
+import com.safa.loanapi.exception.InvalidCursorException;
 import com.safa.loanapi.exception.NotEnoughLimitException;
 import com.safa.loanapi.installment.InstallmentRepository;
 import com.safa.loanapi.installment.dao.Installment;
+import com.safa.loanapi.installment.dto.InstallmentView;
 import com.safa.loanapi.loan.dao.Loan;
+import com.safa.loanapi.loan.dto.LoanPage;
+import com.safa.loanapi.loan.dto.LoanQuery;
+import com.safa.loanapi.loan.dto.LoanView;
+import io.micrometer.core.annotation.Timed;
+import jakarta.persistence.criteria.Predicate;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.data.domain.Example;
+import org.springframework.data.jpa.domain.Specification;
 import org.springframework.security.access.AccessDeniedException;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
 import java.math.BigDecimal;
 import java.math.RoundingMode;
 import java.time.LocalDate;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
 
 @Service
 public class LoanService {
@@ -29,7 +41,13 @@ public class LoanService {
     private InstallmentRepository installmentRepository;
 
     @Autowired
-    private CustomerRepository customerRepository;
+    private CreditLimitLedger creditLimitLedger;
+
+    @Autowired
+    private CustomerSummaryService customerSummaryService;
+
+    @Autowired
+    private LoanMetrics loanMetrics;
 
     /**
      * Creates a loan for the specified customer with the given details.
@@ -40,7 +58,15 @@ public class LoanService {
      *   <li>The customer has sufficient credit limit to take out the loan.</li>
      * </ul>
      * The loan details, including installment amounts and schedule, are calculated and stored.
-     * Additionally, the customer's used credit limit is updated to reflect the new loan.
+     * Additionally, the customer's used credit limit is updated to reflect the new loan. The credit check and the
+     * limit update go through the {@link CreditLimitLedger}, so concurrent loans of the same customer can neither
+     * exceed the limit nor overwrite each other's update.
+     * </p>
+     * <p>
+     * The loan, its whole installment schedule and the credit limit update are written in a single transaction,
+     * so Hibernate can flush the installment inserts as one JDBC batch instead of one round trip per installment.
+     * The customer's {@link com.safa.loanapi.customer.dao.CustomerSummary} is updated in the same transaction.
+     * Loans of the same customer are created one after the other in this process, see {@link StripedLock}.
      * </p>
      * <p>
      * Authorization rules:
@@ -58,64 +84,91 @@ public class LoanService {
      * @throws CustomerNotFoundException if the customer with the specified ID does not exist
      * @throws NotEnoughLimitException   if the customer does not have enough available credit limit to take the loan
      */
+    @Timed(value = "loans.create", description = "Time to create a loan with its schedule", histogram = true)
+    @StripedLock(scope = "customer", key = "#customerID")
+    @Transactional
     @PreAuthorize("#customerID == authentication.principal.id or hasRole('ADMIN')")
     public Loan createLoan(long customerID, double amount, double rate, int numOfInstallments) {
-        // Fetch the customer by ID; throw an exception if the customer does not exist
-        Customer customer = customerRepository.findById(customerID).orElseThrow(() -> new CustomerNotFoundException(customerID));
-
-        // Retrieve the customer's credit limit and used credit limit
-        BigDecimal customerLimit = customer.getCreditLimit();
-        BigDecimal usedCustomerCreditLimit = customer.getUsedCreditLimit();
-
-        // Check if the customer has enough available credit to take out the loan
-        if (customerLimit.subtract(usedCustomerCreditLimit).doubleValue() < amount) {
-            throw new NotEnoughLimitException(customerID);
-        }
-
         // Round the loan amount to two decimal places for accuracy
         amount = Common.roundTwoDecimal(amount);
 
-        // Calculate the total loan amount with interest
-        double totalLoanAmount = amount * (1 + rate);
+        // Reserve the loan amount from the customer's available credit limit; this fails if the customer
+        // does not exist or does not have enough available credit to take out the loan
+        creditLimitLedger.reserve(customerID, BigDecimal.valueOf(amount));
 
-        // Divide the principal amount and total loan amount into equal installments
-        List<Double> installmentAmounts = divideEvenly(amount, numOfInstallments);
-        List<Double> totalInstallmentAmounts = divideEvenly(totalLoanAmount, numOfInstallments);
+        // Create a new loan object with the specified details and save it to the database
+        Loan loan = loanRepository.save(newLoan(customerID, amount, rate, numOfInstallments));
 
-        // Create a new loan object with the specified details
-        Loan loan = new Loan(customerID, BigDecimal.valueOf(amount).setScale(2, RoundingMode.HALF_EVEN),
-                BigDecimal.valueOf(totalLoanAmount).setScale(2, RoundingMode.HALF_EVEN), numOfInstallments, false);
+        // Build the whole installment schedule and save it in one call so the inserts are batched on flush
+        List<Installment> installments = buildInstallments(loan.getId(), amount, rate, numOfInstallments);
+        installmentRepository.saveAll(installments);
+        loan.setInstallments(installments);
+        customerSummaryService.loanCreated(customerID, loan.getAmount(), installments.get(0).getDueDate());
+        loanMetrics.loansCreated(1);
 
-        // Save the loan to the database
-        loan = loanRepository.save(loan);
+        // Return the created loan object
+        return loan;
+    }
 
-        // Initialize the loan's installment list
-        loan.setInstallments(new ArrayList<>());
+    /**
+     * Creates a new, not yet persisted {@link Loan} whose total amount includes the interest.
+     *
+     * @param customerID        the ID of the customer taking the loan
+     * @param amount            the loan amount, already rounded to two decimal places
+     * @param rate              the interest rate for the loan as a decimal (e.g., 0.1 for 10%)
+     * @param numOfInstallments the number of installments in which the loan will be repaid
+     * @return the unsaved {@link Loan}
+     */
+    static Loan newLoan(long customerID, double amount, double rate, int numOfInstallments) {
+        // Calculate the total loan amount with interest, in the same cents the installments are split from
+        return new Loan(customerID, BigDecimal.valueOf(toCents(amount), 2),
+                BigDecimal.valueOf(totalCents(amount, rate), 2), numOfInstallments, false);
+    }
 
-        // Create and save each installment
-        for (int i = 0; i < totalInstallmentAmounts.size(); i++) {
-            Double installmentAmount = installmentAmounts.get(i);
-            Double totalInstallmentAmount = totalInstallmentAmounts.get(i);
+    /**
+     * Builds the monthly installment schedule of a loan. The first installment is due on the first day of next month.
+     *
+     * @param loanID            the ID of the saved loan the installments belong to
+     * @param amount            the loan amount, already rounded to two decimal places
+     * @param rate              the interest rate for the loan as a decimal (e.g., 0.1 for 10%)
+     * @param numOfInstallments the number of installments in which the loan will be repaid
+     * @return the unsaved installments ordered by due date
+     */
+    static List<Installment> buildInstallments(Long loanID, double amount, double rate, int numOfInstallments) {
+        // Divide the principal amount and total loan amount into equal installments, in cents
+        LoanSchedule schedule = new LoanSchedule(numOfInstallments).flat(toCents(amount), totalCents(amount, rate), numOfInstallments);
 
+        LocalDate firstOfMonth = LocalDate.now().withDayOfMonth(1);
+        List<Installment> installments = new ArrayList<>(numOfInstallments);
+        for (int i = 0; i < schedule.size(); i++) {
             // Create an installment with the specified due date, amount, and total amount
-            Installment installment = new Installment(loan.getId(), BigDecimal.valueOf(installmentAmount), BigDecimal.valueOf(totalInstallmentAmount),
-                    LocalDate.now().plusMonths(i + 1).withDayOfMonth(1));
-
-            // Save the installment to the database and add it to the loan
-            installmentRepository.save(installment);
-            loan.getInstallments().add(installment);
+            installments.add(new Installment(loanID, BigDecimal.valueOf(schedule.principalCents(i), 2),
+                    BigDecimal.valueOf(schedule.totalCents(i), 2), firstOfMonth.plusMonths(i + 1)));
         }
+        return installments;
+    }
 
-        // Update the customer's used credit limit by adding the loan amount
-        customer.setUsedCreditLimit(customer.getUsedCreditLimit().add(BigDecimal.valueOf(amount)));
-        customerRepository.save(customer);
+    /**
+     * Converts an amount with at most two decimal places to cents.
+     */
+    static long toCents(double amount) {
+        return Math.round(amount * 100);
+    }
 
-        // Return the created loan object
-        return loan;
+    /**
+     * Calculates the total amount of a loan with interest in cents. The multiplication is done in decimal, so the
+     * result does not depend on how the amount and the rate are represented as doubles.
+     */
+    static long totalCents(double amount, double rate) {
+        return BigDecimal.valueOf(amount)
+                .multiply(BigDecimal.ONE.add(BigDecimal.valueOf(rate)))
+                .movePointRight(2)
+                .setScale(0, RoundingMode.HALF_EVEN)
+                .longValueExact();
     }
 
     /**
-     * Retrieves a list of loans associated with the specified customer ID.
+     * Retrieves a page of loans associated with the specified customer ID.
      * <p>
      * This method enforces authorization rules:
      * <ul>
@@ -123,17 +176,81 @@ public class LoanService {
      *   <li>A user with the {@code ADMIN} role can retrieve loans for any customer.</li>
      * </ul>
      * </p>
+     * <p>
+     * Loans are ordered by {@code createdAt} and {@code id} and paged with a keyset cursor: the next page starts right
+     * after the last loan of the previous one instead of skipping an offset, so every page is a range scan of the
+     * {@code (customer_id, created_at, id)} index and costs the same no matter how deep it is. One loan more than the
+     * limit is fetched to find out whether another page follows. The installments of the page are loaded with a single
+     * query, or not at all when {@code includeInstallments} is off. Both queries select only the columns of the
+     * returned {@link LoanView}s and {@link InstallmentView}s, no entity is loaded into the persistence context.
+     * </p>
      *
      * @param customerID the ID of the customer whose loans are to be retrieved
-     * @return a list of {@link Loan} objects belonging to the specified customer
-     * @throws AccessDeniedException if the authenticated user does not have permission
-     *                               to access the specified customer's loans
+     * @param query      the page size, the cursor of the page and the optional {@code isPaid} and creation date filters
+     * @return the loans of the page and the cursor of the next page, {@code null} if this is the last page
+     * @throws AccessDeniedException  if the authenticated user does not have permission
+     *                                to access the specified customer's loans
+     * @throws InvalidCursorException if the cursor was not issued by this method
      */
+    @Transactional(readOnly = true)
     @PreAuthorize("#customerID == authentication.principal.id or hasRole('ADMIN')")
-    public List<Loan> listLoans(Long customerID) {
-        Loan queryObject = new Loan();
-        queryObject.setCustomerId(customerID);
-        return loanRepository.findAll(Example.of(queryObject));
+    public LoanPage listLoans(Long customerID, LoanQuery query) {
+        LoanCursor after = query.getCursor() == null ? null : LoanCursor.decode(query.getCursor());
+
+        List<LoanView> loans = loanRepository.findViews(loansOf(customerID, query, after), query.getLimit() + 1);
+
+        String nextCursor = null;
+        if (loans.size() > query.getLimit()) {
+            loans = loans.subList(0, query.getLimit());
+            nextCursor = LoanCursor.of(loans.get(loans.size() - 1)).encode();
+        }
+
+        if (query.isIncludeInstallments()) {
+            addInstallments(loans);
+        }
+        return new LoanPage(loans, nextCursor);
+    }
+
+    /**
+     * Adds the installments to a page of loans. The installments of all loans are fetched with one query instead of
+     * initializing the lazy collection of every loan one by one.
+     */
+    private void addInstallments(List<LoanView> loans) {
+        if (loans.isEmpty()) {
+            return;
+        }
+
+        List<Long> loanIDs = loans.stream().map(LoanView::getId).toList();
+        Map<Long, List<InstallmentView>> installments = installmentRepository.findViewsByLoanIdIn(loanIDs).stream()
+                .collect(Collectors.groupingBy(InstallmentView::getLoanId));
+
+        loans.forEach(loan -> loan.setInstallments(installments.getOrDefault(loan.getId(), List.of())));
+    }
+
+    private static Specification<Loan> loansOf(Long customerID, LoanQuery query, LoanCursor after) {
+        return (root, criteriaQuery, cb) -> {
+            List<Predicate> predicates = new ArrayList<>();
+            predicates.add(cb.equal(root.get("customerId"), customerID));
+
+            if (query.getIsPaid() != null) {
+                predicates.add(cb.equal(root.get("isPaid"), query.getIsPaid()));
+            }
+            if (query.getCreatedFrom() != null) {
+                predicates.add(cb.greaterThanOrEqualTo(root.get("createdAt"), query.getCreatedFrom().atStartOfDay()));
+            }
+            if (query.getCreatedTo() != null) {
+                // The end date is inclusive
+                predicates.add(cb.lessThan(root.get("createdAt"), query.getCreatedTo().plusDays(1).atStartOfDay()));
+            }
+
+            // Continue right after the last loan of the previous page
+            if (after != null) {
+                predicates.add(cb.or(
+                        cb.greaterThan(root.get("createdAt"), after.createdAt()),
+                        cb.and(cb.equal(root.get("createdAt"), after.createdAt()), cb.greaterThan(root.get("id"), after.id()))));
+            }
+            return cb.and(predicates.toArray(new Predicate[0]));
+        };
     }
 
     /**
@@ -148,45 +265,28 @@ public class LoanService {
      * <br>
      * <p>Implementation Details:</p>
      * <ul>
-     *   <li>The amount is scaled to an integer (multiplied by 100) to ensure precision during division.</li>
-     *   <li>Each part is calculated either as the lower or higher value (in cents) to minimize rounding discrepancies.</li>
+     *   <li>The amount is rounded to whole cents as a {@code long}, so large amounts neither overflow nor lose a cent.</li>
+     *   <li>The cents are split with {@link LoanSchedule#splitEvenly}, each part is either the lower or the higher value.</li>
      *   <li>The method ensures the sum of the returned parts equals the original amount.</li>
      * </ul>
+     * <p>Schedules are built with {@link LoanSchedule} directly, this method boxes every part and is kept for callers
+     * that need the parts as amounts.</p>
      * @throws ArithmeticException if the divider is less than or equal to zero.
      */
     public static List<Double> divideEvenly(double amount, double divider) {
         // Throw an exception if the divider is zero to prevent division by zero
-        if (divider == 0) throw new ArithmeticException();
-
-        // List to store the resulting parts
-        List<Double> nums = new ArrayList<>();
+        if (divider <= 0) throw new ArithmeticException();
 
-        // Convert the amount to an integer value representing the smallest unit of currency (multiplied by 100)
-        int a = (int) (100 * amount);
+        // Split the amount in cents
+        int n = (int) divider;
+        long[] parts = new long[n];
+        LoanSchedule.splitEvenly(toCents(amount), n, parts);
 
-        // Calculate the base low value for each part
-        int low_value = (int) (a / divider);
-
-        // Calculate the base high value, which is one cent higher than the low value
-        int high_value = low_value + 1;
-
-        // Calculate how many parts need to have the high value
-        int num_highs = (int) (a % divider);
-
-        // Calculate how many parts need to have the low value
-        int num_lows = (int) (divider - num_highs);
-
-        // Add the low value parts to the list
-        for (int i = 0; i < num_lows; i++) {
-            nums.add((double) low_value / 100);
+        // Convert the parts back to amounts
+        List<Double> nums = new ArrayList<>(n);
+        for (long part : parts) {
+            nums.add(part / 100.0);
         }
-
-        // Add the high value parts to the list
-        for (int i = 0; i < num_highs; i++) {
-            nums.add((double) high_value / 100);
-        }
-
-        // Return the list of divided parts
         return nums;
     }
 }
@@ -1,11 +1,14 @@
 package com.safa.loanapi.loan.dao;
 
+import com.safa.loanapi.common.cache.EntityCacheConfiguration;
 import com.safa.loanapi.installment.dao.Installment;
 import jakarta.persistence.*;
 import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Data;
 import lombok.NoArgsConstructor;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
 import org.hibernate.annotations.CreationTimestamp;
 
 import java.math.BigDecimal;
@@ -17,9 +20,13 @@ import java.util.List;
 @AllArgsConstructor
 @NoArgsConstructor
 @Builder
+@Table(indexes = @Index(name = "idx_loan_customer_created_at", columnList = "customer_id, created_at, id"))
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = EntityCacheConfiguration.LOAN_REGION)
 public class Loan {
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "loan_seq")
+    @SequenceGenerator(name = "loan_seq", sequenceName = "loan_seq", allocationSize = 50)
     private Long id;
     private Long customerId;
     @Column(precision = 10, scale = 2)
@@ -31,6 +38,11 @@ public class Loan {
     @CreationTimestamp
     private LocalDateTime createdAt;
     private Boolean isPaid;
+    // Counted down as installments are paid, the loan is paid completely when it reaches zero
+    private Integer unpaidInstallments;
+    // Incremented by every update of the loan, so whenever installments of the loan are paid
+    @Version
+    private Long version;
 
     @OneToMany(mappedBy = "loanId", cascade = CascadeType.ALL, orphanRemoval = true)
     private List<Installment> installments;
@@ -41,5 +53,6 @@ public class Loan {
         this.totalAmount = totalAmount;
         this.numberOfInstallments = numberOfInstallments;
         this.isPaid = isPaid;
+        this.unpaidInstallments = Boolean.TRUE.equals(isPaid) ? 0 : numberOfInstallments;
     }
 }
@@ -0,0 +1,30 @@
+package com.safa.loanapi.loan.dto;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class BulkLoanResult {
+    private long index;
+    private Long customerId;
+    private Status status;
+    private Long loanId;
+    private String error;
+
+    public static BulkLoanResult created(long index, Long customerId, Long loanId) {
+        return new BulkLoanResult(index, customerId, Status.CREATED, loanId, null);
+    }
+
+    public static BulkLoanResult rejected(long index, Long customerId, String error) {
+        return new BulkLoanResult(index, customerId, Status.REJECTED, null, error);
+    }
+
+    public enum Status {
+        CREATED, REJECTED
+    }
+}
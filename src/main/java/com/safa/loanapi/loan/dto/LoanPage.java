@@ -0,0 +1,16 @@
+package com.safa.loanapi.loan.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+import java.util.List;
+
+/**
+ * A page of loans and the cursor of the page after it, {@code null} on the last page.
+ */
+@Data
+@AllArgsConstructor
+public class LoanPage {
+    private List<LoanView> loans;
+    private String nextCursor;
+}
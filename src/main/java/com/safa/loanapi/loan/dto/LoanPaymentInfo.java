@@ -1,6 +1,6 @@
 package com.safa.loanapi.loan.dto;
 
-import com.safa.loanapi.installment.dao.Installment;
+import com.safa.loanapi.installment.dto.InstallmentView;
 import lombok.Data;
 
 import java.util.ArrayList;
@@ -8,7 +8,7 @@ import java.util.List;
 
 @Data
 public class LoanPaymentInfo {
-    private List<Installment> paidInstallments = new ArrayList<>();
+    private List<InstallmentView> paidInstallments = new ArrayList<>();
     double totalAmountSpent;
     boolean loanPaidCompletely;
 }
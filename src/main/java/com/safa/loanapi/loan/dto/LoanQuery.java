@@ -0,0 +1,25 @@
+package com.safa.loanapi.loan.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDate;
+
+/**
+ * Filters and page position of a loan listing. Every filter is optional.
+ */
+@Data
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+public class LoanQuery {
+    private int limit;
+    private String cursor;
+    private Boolean isPaid;
+    private LocalDate createdFrom;
+    private LocalDate createdTo;
+    @Builder.Default
+    private boolean includeInstallments = true;
+}
@@ -0,0 +1,42 @@
+package com.safa.loanapi.loan.dto;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.safa.loanapi.installment.dto.InstallmentView;
+import com.safa.loanapi.loan.dao.Loan;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * A loan as returned by the API. Unlike the {@link Loan} entity it does not load its installments lazily, they are
+ * assembled up front or left out ({@code null}) when they were not asked for. Listings select it straight from the
+ * table with a constructor expression, so no {@link Loan} entity is instantiated or tracked for it.
+ */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class LoanView {
+    private Long id;
+    private Long customerId;
+    private BigDecimal amount;
+    private BigDecimal totalAmount;
+    private Integer numberOfInstallments;
+    private LocalDateTime createdAt;
+    private Boolean isPaid;
+    private List<InstallmentView> installments;
+
+    public LoanView(Long id, Long customerId, BigDecimal amount, BigDecimal totalAmount, Integer numberOfInstallments,
+                    LocalDateTime createdAt, Boolean isPaid) {
+        this(id, customerId, amount, totalAmount, numberOfInstallments, createdAt, isPaid, null);
+    }
+
+    public static LoanView of(Loan loan, List<InstallmentView> installments) {
+        return new LoanView(loan.getId(), loan.getCustomerId(), loan.getAmount(), loan.getTotalAmount(),
+                loan.getNumberOfInstallments(), loan.getCreatedAt(), loan.getIsPaid(), installments);
+    }
+}
@@ -0,0 +1,28 @@
+package com.safa.loanapi.penalty;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.Clock;
+import java.time.LocalDate;
+
+/**
+ * Runs the penalty accrual every night at {@code penalty.accrual.cron} (default 00:30), unless
+ * {@code penalty.accrual.enabled} is {@code false}.
+ */
+@Component
+@ConditionalOnProperty(value = "penalty.accrual.enabled", matchIfMissing = true)
+public class PenaltyAccrualJob {
+    @Autowired
+    private PenaltyAccrualService penaltyAccrualService;
+
+    @Autowired
+    private Clock clock;
+
+    @Scheduled(cron = "${penalty.accrual.cron:0 30 0 * * *}")
+    public void run() {
+        penaltyAccrualService.accrue(LocalDate.now(clock));
+    }
+}
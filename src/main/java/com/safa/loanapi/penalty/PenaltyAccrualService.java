@@ -0,0 +1,199 @@
+package com.safa.loanapi.penalty;
+
+import com.safa.loanapi.customer.CustomerSummaryService;
+import com.safa.loanapi.penalty.dto.PenaltyAccrualReport;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.sql.Date;
+import java.time.LocalDate;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+
+import static com.safa.loanapi.installment.InstallmentService.dailyAdjustment;
+
+/**
+ * Accrues the late payment penalty of every unpaid overdue installment, so accrued penalties and overdue exposure can
+ * be reported without loading the loans.
+ *
+ * <p>The penalty is the one {@link com.safa.loanapi.installment.InstallmentService#amountToPay} would add on the given
+ * date, {@code totalAmount * 0.001} per day passed since the due date. It is stored in the installment's
+ * {@code accruedPenalty} together with its {@code overdueDays}.</p>
+ *
+ * <p>The overdue installments are read in ID order in pages of {@code penalty.accrual.chunkSize}, each starting after
+ * the last ID of the previous one, so every page costs the same however sparse the IDs are. The pages are handed to a
+ * pool of {@code penalty.accrual.parallelism} workers, which write every page back with one JDBC batch in its own
+ * transaction, at most two pages per worker are read ahead. The overdue installment counts of the customer summaries
+ * are refreshed at the end of the run. The following metrics are published:</p>
+ * <ul>
+ *   <li>{@code penalty.accrual.installments}: installments accrued, its rate is the throughput of a run.</li>
+ *   <li>{@code penalty.accrual.progress}: the share of the overdue installments accrued by the current or last run.</li>
+ *   <li>{@code penalty.accrual.duration}: the duration of the runs.</li>
+ *   <li>{@code installments.overdue} and {@code installments.penalties.accrued}: the number of overdue installments and
+ *   the sum of their accrued penalties as of the last run.</li>
+ * </ul>
+ */
+@Service
+public class PenaltyAccrualService {
+    private static final Logger log = LoggerFactory.getLogger(PenaltyAccrualService.class);
+
+    private static final String OVERDUE_COUNT = "select count(*) from installment where is_paid = false and due_date < ?";
+    private static final String OVERDUE_PAGE = "select id, total_amount, due_date from installment where is_paid = false and due_date < ? and id > ? order by id limit ?";
+    private static final String ACCRUE = "update installment set accrued_penalty = ?, overdue_days = ? where id = ? and is_paid = false";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final CustomerSummaryService customerSummaryService;
+    private final int chunkSize;
+    private final int parallelism;
+
+    private final Counter accrued;
+    private final Timer duration;
+    private final AtomicLong total = new AtomicLong();
+    private final AtomicLong processed = new AtomicLong();
+    private final AtomicLong overdue = new AtomicLong();
+    private final AtomicReference<BigDecimal> accruedPenalty = new AtomicReference<>(BigDecimal.ZERO);
+
+    public PenaltyAccrualService(JdbcTemplate jdbcTemplate,
+                                 TransactionTemplate transactionTemplate,
+                                 CustomerSummaryService customerSummaryService,
+                                 @Value("${penalty.accrual.chunkSize:1000}") int chunkSize,
+                                 @Value("${penalty.accrual.parallelism:4}") int parallelism,
+                                 MeterRegistry meterRegistry) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = transactionTemplate;
+        this.customerSummaryService = customerSummaryService;
+        this.chunkSize = chunkSize;
+        this.parallelism = parallelism;
+
+        this.accrued = Counter.builder("penalty.accrual.installments")
+                .description("Overdue installments whose penalty was accrued")
+                .register(meterRegistry);
+        this.duration = Timer.builder("penalty.accrual.duration")
+                .description("Time to accrue the penalties of all overdue installments")
+                .register(meterRegistry);
+        Gauge.builder("penalty.accrual.progress", this, PenaltyAccrualService::progress)
+                .description("Share of the overdue installments accrued by the current or last run")
+                .register(meterRegistry);
+        Gauge.builder("installments.overdue", overdue, AtomicLong::get)
+                .description("Unpaid overdue installments as of the last penalty accrual")
+                .register(meterRegistry);
+        Gauge.builder("installments.penalties.accrued", accruedPenalty, penalty -> penalty.get().doubleValue())
+                .description("Sum of the penalties accrued on unpaid overdue installments as of the last penalty accrual")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Accrues the penalties of the installments that are unpaid and overdue on the given date.
+     *
+     * @param today the business date to accrue the penalties for
+     * @return the number of installments accrued, the sum of their penalties and the duration of the run
+     */
+    public PenaltyAccrualReport accrue(LocalDate today) {
+        long startedAt = System.nanoTime();
+        PenaltyAccrualReport report = new PenaltyAccrualReport();
+        report.setDate(today);
+
+        // Count the overdue installments to report the progress
+        total.set(jdbcTemplate.queryForObject(OVERDUE_COUNT, Long.class, Date.valueOf(today)));
+        processed.set(0);
+
+        LongAdder penaltyCents = new LongAdder();
+        try (ExecutorService pool = Executors.newFixedThreadPool(parallelism)) {
+            Semaphore readAhead = new Semaphore(2 * parallelism);
+            List<Future<?>> chunks = new ArrayList<>();
+
+            // Page through the overdue installments by ID, a short page is the last one
+            List<OverdueInstallment> page;
+            long lastId = 0;
+            do {
+                page = jdbcTemplate.query(OVERDUE_PAGE, (rs, rowNum) -> new OverdueInstallment(rs.getLong("id"),
+                        rs.getBigDecimal("total_amount"), rs.getDate("due_date").toLocalDate()), Date.valueOf(today), lastId, chunkSize);
+                if (page.isEmpty()) {
+                    break;
+                }
+                lastId = page.get(page.size() - 1).id();
+
+                List<OverdueInstallment> chunk = page;
+                readAhead.acquire();
+                chunks.add(pool.submit(() -> {
+                    try {
+                        accrueChunk(today, chunk, penaltyCents);
+                    } finally {
+                        readAhead.release();
+                    }
+                }));
+            } while (page.size() == chunkSize);
+
+            for (Future<?> chunk : chunks) {
+                chunk.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Penalty accrual for " + today + " was interrupted", e);
+        } catch (ExecutionException e) {
+            throw e.getCause() instanceof RuntimeException cause ? cause : new IllegalStateException(e.getCause());
+        }
+
+        // Installments that became overdue since the last run are counted in the customer summaries as well
+        customerSummaryService.refreshOverdue(today);
+
+        report.setInstallments(processed.get());
+        report.setAccruedPenalty(BigDecimal.valueOf(penaltyCents.sum(), 2));
+        report.setElapsedNanos(System.nanoTime() - startedAt);
+        overdue.set(report.getInstallments());
+        accruedPenalty.set(report.getAccruedPenalty());
+        duration.record(report.getElapsedNanos(), TimeUnit.NANOSECONDS);
+
+        log.info("Penalty accrual for {} finished: {} installments, {} accrued, {} installments/sec", today,
+                report.getInstallments(), report.getAccruedPenalty(), report.installmentsPerSecond());
+        return report;
+    }
+
+    private double progress() {
+        long expected = total.get();
+        return expected == 0 ? 1 : (double) processed.get() / expected;
+    }
+
+    /**
+     * Accrues the penalties of a page of overdue installments. An installment paid since the page was read keeps the
+     * penalty it was paid with.
+     */
+    private void accrueChunk(LocalDate today, List<OverdueInstallment> chunk, LongAdder penaltyCents) {
+        List<Object[]> updates = new ArrayList<>(chunk.size());
+        for (OverdueInstallment installment : chunk) {
+            long overdueDays = ChronoUnit.DAYS.between(installment.dueDate(), today);
+            BigDecimal penalty = dailyAdjustment(installment.totalAmount(), overdueDays);
+            updates.add(new Object[]{penalty, overdueDays, installment.id()});
+            penaltyCents.add(penalty.movePointRight(2).longValueExact());
+        }
+
+        // Write the whole chunk back with one batch
+        transactionTemplate.executeWithoutResult(status -> jdbcTemplate.batchUpdate(ACCRUE, updates));
+
+        processed.addAndGet(chunk.size());
+        accrued.increment(chunk.size());
+    }
+
+    private record OverdueInstallment(long id, BigDecimal totalAmount, LocalDate dueDate) {
+    }
+}
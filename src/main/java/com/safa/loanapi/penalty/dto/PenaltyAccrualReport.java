@@ -0,0 +1,19 @@
+package com.safa.loanapi.penalty.dto;
+
+import lombok.Data;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.concurrent.TimeUnit;
+
+@Data
+public class PenaltyAccrualReport {
+    private LocalDate date;
+    private long installments;
+    private BigDecimal accruedPenalty = BigDecimal.ZERO;
+    private long elapsedNanos;
+
+    public long installmentsPerSecond() {
+        return elapsedNanos == 0 ? installments : installments * TimeUnit.SECONDS.toNanos(1) / elapsedNanos;
+    }
+}
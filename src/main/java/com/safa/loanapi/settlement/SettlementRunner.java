@@ -0,0 +1,33 @@
+package com.safa.loanapi.settlement;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.nio.file.Path;
+
+/**
+ * Runs the settlement stage of the nightly reconciliation when the application is started with
+ * {@code --settlement.input=<payment file>}. The results are written to {@code settlement.output}, which defaults to
+ * the input path with a {@code .results.csv} suffix.
+ */
+@Component
+@ConditionalOnProperty("settlement.input")
+public class SettlementRunner implements ApplicationRunner {
+    @Autowired
+    private SettlementService settlementService;
+
+    @Value("${settlement.input}")
+    private Path input;
+
+    @Value("${settlement.output:${settlement.input}.results.csv}")
+    private Path output;
+
+    @Override
+    public void run(ApplicationArguments args) throws Exception {
+        settlementService.settle(input, output);
+    }
+}
@@ -0,0 +1,343 @@
+package com.safa.loanapi.settlement;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.safa.loanapi.common.LoanMetrics;
+import com.safa.loanapi.common.concurrency.StripedLockManager;
+import com.safa.loanapi.customer.CreditLimitLedger;
+import com.safa.loanapi.customer.CustomerSummaryService;
+import com.safa.loanapi.exception.ConcurrentUpdateException;
+import com.safa.loanapi.exception.CustomerNotFoundException;
+import com.safa.loanapi.exception.LoanNotFoundException;
+import com.safa.loanapi.installment.InstallmentRepository;
+import com.safa.loanapi.installment.PaymentAllocation;
+import com.safa.loanapi.installment.dao.Installment;
+import com.safa.loanapi.loan.LoanRepository;
+import com.safa.loanapi.loan.dao.Loan;
+import com.safa.loanapi.settlement.dto.SettlementReport;
+import jakarta.persistence.EntityManager;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Clock;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+@Service
+public class SettlementService {
+    private static final Logger log = LoggerFactory.getLogger(SettlementService.class);
+
+    static final String RESULT_HEADER = "line,loan_id,status,paid_installments,total_amount_spent,loan_paid_completely,error";
+
+    @Autowired
+    private LoanRepository loanRepository;
+
+    @Autowired
+    private InstallmentRepository installmentRepository;
+
+    @Autowired
+    private CreditLimitLedger creditLimitLedger;
+
+    @Autowired
+    private CustomerSummaryService customerSummaryService;
+
+    @Autowired
+    private LoanMetrics loanMetrics;
+
+    @Autowired
+    private EntityManager entityManager;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Autowired
+    private StripedLockManager stripedLockManager;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private Clock clock;
+
+    @Value("${settlement.chunkSize:1000}")
+    private int chunkSize;
+
+    @Value("${settlement.lockBatchSize:50}")
+    private int lockBatchSize;
+
+    /**
+     * Settles a bank collection file and writes one result line per payment to the output file.
+     *
+     * <p>Every record of the input is a payment of {@code amount} for the loan {@code loan_id}, either as a CSV line
+     * ({@code loan_id,amount}, an optional header line is skipped) or as a JSON object per line. Payments are applied
+     * by the same {@link PaymentAllocation} as {@link com.safa.loanapi.installment.InstallmentService#payInstallment}:
+     * unpaid installments due within 3 months are paid in due date order with the early payment discount or late
+     * payment penalty, as long as the remaining amount covers them.</p>
+     *
+     * <p>The input is read line by line through a buffered reader and processed in chunks of
+     * {@code settlement.chunkSize} payments. A chunk is settled in batches of the payments of at most
+     * {@code settlement.lockBatchSize} loans, each in its own short transaction while holding the locks of its loans in
+     * the {@link StripedLockManager}. So the settlement does not conflict with payments made through the API, and only
+     * holds a few of the stripes that API payments and loan originations wait on. A batch that still fails on payments
+     * of another instance is settled payment by payment, rejecting only the payments whose loan keeps changing. Loans
+     * and their unpaid installments are fetched with one query per batch each, the paid principal is released through
+     * the {@link CreditLimitLedger}, and the changes are written back with batched updates. The results of a chunk are
+     * written before the next one is read, so memory use does not depend on the size of the file.</p>
+     *
+     * @param input  the payment file, CSV or newline delimited JSON
+     * @param output the result file, written as CSV
+     * @return a summary of the run including its throughput
+     * @throws IOException if reading the input or writing the output fails
+     */
+    public SettlementReport settle(Path input, Path output) throws IOException {
+        long startedAt = System.nanoTime();
+        LocalDateTime now = LocalDateTime.now(clock);
+        SettlementReport report = new SettlementReport();
+
+        try (BufferedReader reader = Files.newBufferedReader(input, StandardCharsets.UTF_8);
+             BufferedWriter writer = Files.newBufferedWriter(output, StandardCharsets.UTF_8)) {
+            writer.write(RESULT_HEADER);
+            writer.newLine();
+
+            List<Payment> chunk = new ArrayList<>(chunkSize);
+            String line;
+            long lineNumber = 0;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                if (line.isBlank() || (lineNumber == 1 && line.startsWith("loan_id"))) {
+                    continue;
+                }
+
+                chunk.add(parse(lineNumber, line.strip()));
+                if (chunk.size() == chunkSize) {
+                    settleChunk(chunk, now, writer, report);
+                    chunk.clear();
+                    log.info("Settled {} payments ({} records/sec)", report.getRecords(), report.recordsPerSecond(System.nanoTime() - startedAt));
+                }
+            }
+            settleChunk(chunk, now, writer, report);
+        }
+
+        report.setElapsedNanos(System.nanoTime() - startedAt);
+        log.info("Settlement of {} finished: {} records, {} settled, {} rejected, {} records/sec", input,
+                report.getRecords(), report.getSettled(), report.getRejected(), report.recordsPerSecond(report.getElapsedNanos()));
+        return report;
+    }
+
+    /**
+     * Parses a CSV or JSON payment record. Records that cannot be parsed or do not pay a positive amount are kept with
+     * their error, so they are reported in the output in file order.
+     */
+    private Payment parse(long lineNumber, String line) {
+        long loanId;
+        double amount;
+        try {
+            if (line.startsWith("{")) {
+                JsonNode node = objectMapper.readTree(line);
+                JsonNode amountNode = node.required("amount");
+                loanId = node.required("loan_id").asLong();
+                // NaN and Infinity are only read from strings, a non numeric amount is not silently read as zero
+                amount = amountNode.isNumber() ? amountNode.asDouble() : Double.parseDouble(amountNode.asText());
+            } else {
+                String[] fields = line.split(",");
+                if (fields.length != 2) {
+                    return new Payment(lineNumber, null, 0, "Expected loan_id,amount");
+                }
+                loanId = Long.parseLong(fields[0].strip());
+                amount = Double.parseDouble(fields[1].strip());
+            }
+        } catch (IOException | IllegalArgumentException e) {
+            return new Payment(lineNumber, null, 0, "Malformed record: " + e.getMessage());
+        }
+
+        // A NaN amount would cover every installment, as no comparison with it is ever true
+        if (!Double.isFinite(amount) || amount <= 0) {
+            return new Payment(lineNumber, loanId, 0, "Amount must be a positive number");
+        }
+        return new Payment(lineNumber, loanId, amount, null);
+    }
+
+    /**
+     * Applies a chunk of payments batch by batch and writes their results.
+     */
+    private void settleChunk(List<Payment> chunk, LocalDateTime now, BufferedWriter writer, SettlementReport report) throws IOException {
+        if (chunk.isEmpty()) {
+            return;
+        }
+
+        List<Result> results = new ArrayList<>(chunk.size());
+        for (List<Payment> batch : lockBatches(chunk)) {
+            results.addAll(settleBatch(batch, now));
+        }
+
+        for (Result result : results) {
+            writer.write(result.line());
+            writer.newLine();
+            if (result.settled()) {
+                report.setSettled(report.getSettled() + 1);
+            } else {
+                report.setRejected(report.getRejected() + 1);
+            }
+        }
+        report.setRecords(report.getRecords() + chunk.size());
+        writer.flush();
+    }
+
+    /**
+     * Splits a chunk in file order into batches of the payments of at most {@code settlement.lockBatchSize} loans.
+     */
+    private List<List<Payment>> lockBatches(List<Payment> chunk) {
+        List<List<Payment>> batches = new ArrayList<>();
+        List<Payment> batch = new ArrayList<>();
+        Set<Long> loanIds = new HashSet<>();
+        for (Payment payment : chunk) {
+            if (payment.error() == null && !loanIds.contains(payment.loanId())) {
+                if (loanIds.size() == lockBatchSize) {
+                    batches.add(batch);
+                    batch = new ArrayList<>();
+                    loanIds = new HashSet<>();
+                }
+                loanIds.add(payment.loanId());
+            }
+            batch.add(payment);
+        }
+        batches.add(batch);
+        return batches;
+    }
+
+    /**
+     * Applies a batch of payments in one transaction while holding the locks of its loans. If the batch keeps
+     * conflicting with payments of another instance, its payments are settled one by one instead, so only the ones
+     * whose loan could not be changed are rejected.
+     */
+    private List<Result> settleBatch(List<Payment> batch, LocalDateTime now) {
+        Set<Long> loanIds = batch.stream().filter(payment -> payment.error() == null).map(Payment::loanId).collect(Collectors.toSet());
+        try {
+            return Objects.requireNonNull(stripedLockManager.executeAll("loan", loanIds,
+                    () -> transactionTemplate.execute(status -> apply(batch, loanIds, now))));
+        } catch (ConcurrentUpdateException e) {
+            log.warn("Settling a batch of {} payments failed ({}), settling them one by one", batch.size(), e.getMessage());
+            List<Result> results = new ArrayList<>(batch.size());
+            for (Payment payment : batch) {
+                results.add(settleOne(payment, now));
+            }
+            return results;
+        }
+    }
+
+    private Result settleOne(Payment payment, LocalDateTime now) {
+        if (payment.error() != null) {
+            return rejected(payment, payment.error());
+        }
+
+        try {
+            return stripedLockManager.execute("loan", payment.loanId(), () ->
+                    transactionTemplate.execute(status -> apply(List.of(payment), Set.of(payment.loanId()), now))).get(0);
+        } catch (ConcurrentUpdateException e) {
+            return rejected(payment, e.getMessage());
+        }
+    }
+
+    /**
+     * Applies payments of the given loans in the current transaction and returns their results in order.
+     */
+    private List<Result> apply(List<Payment> chunk, Set<Long> loanIds, LocalDateTime now) {
+        // Fetch the loans and their unpaid installments with one query each
+        Map<Long, Loan> loans = loanRepository.findAllById(loanIds).stream()
+                .collect(Collectors.toMap(Loan::getId, Function.identity()));
+        Map<Long, List<Installment>> unpaidInstallments = installmentRepository.findAllByLoanIdInAndIsPaidOrderByDueDateAsc(loanIds, false).stream()
+                .collect(Collectors.groupingBy(Installment::getLoanId));
+
+        // Entities are tracked by id, their Lombok generated hash codes change while they are being updated
+        List<Installment> paidInstallments = new ArrayList<>();
+        Map<Long, Loan> changedLoans = new LinkedHashMap<>();
+        List<Result> chunkResults = new ArrayList<>(chunk.size());
+
+        for (Payment payment : chunk) {
+            if (payment.error() != null) {
+                chunkResults.add(rejected(payment, payment.error()));
+                continue;
+            }
+
+            Loan loan = loans.get(payment.loanId());
+            if (loan == null) {
+                chunkResults.add(rejected(payment, new LoanNotFoundException(payment.loanId()).getMessage()));
+                continue;
+            }
+            try {
+                // Make sure the loan owner is known before anything of the loan is changed
+                creditLimitLedger.getAvailableLimit(loan.getCustomerId());
+            } catch (CustomerNotFoundException e) {
+                chunkResults.add(rejected(payment, e.getMessage()));
+                continue;
+            }
+
+            // Pay the installments in due date order while the remaining amount covers them
+            List<Installment> installments = unpaidInstallments.getOrDefault(loan.getId(), List.of());
+            PaymentAllocation<Installment> allocation = PaymentAllocation.pay(installments, payment.amount(), now);
+            double totalAmountSpent = allocation.getTotalAmountSpent();
+            double addedCreditLimit = 0;
+            int paidCount = allocation.getPaid().size();
+            for (Installment installment : allocation.getPaid()) {
+                paidInstallments.add(installment);
+                loanMetrics.installmentPaid(installment.getTotalAmount(), installment.getPaidAmount());
+                addedCreditLimit += installment.getAmount().doubleValue();
+            }
+
+            // Updating the loan increments its version, which invalidates the payment quotes of the loan
+            if (paidCount > 0) {
+                loan.setUnpaidInstallments((int) installments.stream().filter(installment -> !installment.getIsPaid()).count());
+                changedLoans.put(loan.getId(), loan);
+            }
+
+            // The loan is complete once none of its installments are left unpaid
+            boolean loanPaidCompletely = installments.stream().allMatch(Installment::getIsPaid);
+            boolean loanClosed = loanPaidCompletely && !loan.getIsPaid();
+            if (loanClosed) {
+                loan.setIsPaid(true);
+                changedLoans.put(loan.getId(), loan);
+            }
+
+            // The ledger and the summaries sum up the changes and write one update per customer when the chunk commits
+            creditLimitLedger.release(loan.getCustomerId(), BigDecimal.valueOf(addedCreditLimit));
+            if (paidCount > 0 || loanClosed) {
+                customerSummaryService.installmentsPaid(loan.getCustomerId(), allocation.getPaid(), now.toLocalDate(), loanClosed);
+            }
+
+            chunkResults.add(new Result(true, String.join(",", String.valueOf(payment.lineNumber()), String.valueOf(payment.loanId()),
+                    "SETTLED", String.valueOf(paidCount), String.valueOf(totalAmountSpent), String.valueOf(loanPaidCompletely), "")));
+        }
+
+        // Write all changes of the chunk back as batched updates and release the chunk's entities
+        installmentRepository.saveAll(paidInstallments);
+        loanRepository.saveAll(changedLoans.values());
+        entityManager.flush();
+        entityManager.clear();
+
+        return chunkResults;
+    }
+
+    private Result rejected(Payment payment, String error) {
+        return new Result(false, String.join(",", String.valueOf(payment.lineNumber()), payment.loanId() == null ? "" : String.valueOf(payment.loanId()),
+                "REJECTED", "0", "0.0", "false", "\"" + error.replace("\"", "\"\"") + "\""));
+    }
+
+    private record Payment(long lineNumber, Long loanId, double amount, String error) {
+    }
+
+    private record Result(boolean settled, String line) {
+    }
+}
@@ -0,0 +1,17 @@
+package com.safa.loanapi.settlement.dto;
+
+import lombok.Data;
+
+import java.util.concurrent.TimeUnit;
+
+@Data
+public class SettlementReport {
+    private long records;
+    private long settled;
+    private long rejected;
+    private long elapsedNanos;
+
+    public long recordsPerSecond(long elapsedNanos) {
+        return elapsedNanos == 0 ? records : records * TimeUnit.SECONDS.toNanos(1) / elapsedNanos;
+    }
+}
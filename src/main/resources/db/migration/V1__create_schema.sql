@@ -0,0 +1,51 @@
+create sequence loan_seq start with 1 increment by 50;
+
+create sequence installment_seq start with 1 increment by 50;
+
+create table customer (
+    id                bigint generated by default as identity,
+    name              varchar(255),
+    surname           varchar(255),
+    username          varchar(255),
+    password          varchar(255),
+    credit_limit      numeric(10, 2),
+    used_credit_limit numeric(10, 2),
+    role              enum ('ADMIN', 'CUSTOMER'),
+    primary key (id)
+);
+
+create table loan (
+    id                     bigint not null,
+    customer_id            bigint,
+    amount                 numeric(10, 2),
+    total_amount           numeric(10, 2),
+    number_of_installments integer,
+    created_at             timestamp(6),
+    is_paid                boolean,
+    unpaid_installments    integer,
+    version                bigint,
+    primary key (id)
+);
+
+create table installment (
+    id              bigint not null,
+    loan_id         bigint,
+    amount          numeric(10, 2),
+    total_amount    numeric(10, 2),
+    paid_amount     numeric(10, 2),
+    due_date        date,
+    payment_date    timestamp(6),
+    is_paid         boolean,
+    accrued_penalty numeric(10, 2),
+    overdue_days    integer,
+    primary key (id)
+);
+
+create table customer_summary (
+    customer_id           bigint not null,
+    outstanding_principal numeric(12, 2),
+    open_loans            integer,
+    overdue_installments  integer,
+    next_due_date         date,
+    primary key (customer_id)
+);
@@ -0,0 +1,8 @@
+-- Payments read the unpaid installments of a loan in due date order, listings read all installments of a loan
+create index idx_installment_loan_paid_due_date on installment (loan_id, is_paid, due_date);
+
+-- Loan listings page through a customer's loans in (created_at, id) order
+create index idx_loan_customer_created_at on loan (customer_id, created_at, id);
+
+-- Authentication looks customers up by username
+create unique index ux_customer_username on customer (username);
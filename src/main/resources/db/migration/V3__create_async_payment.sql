@@ -0,0 +1,16 @@
+-- Payments submitted for asynchronous processing, stored before they are queued so their status survives a restart
+create table async_payment (
+    id           varchar(36) not null,
+    customer_id  bigint,
+    loan_id      bigint,
+    amount       numeric(10, 2),
+    status       enum ('PENDING', 'COMPLETED', 'FAILED'),
+    submitted_at timestamp(6),
+    completed_at timestamp(6),
+    result       clob,
+    error        varchar(1000),
+    primary key (id)
+);
+
+-- The retention purge deletes payments in submission order
+create index idx_async_payment_submitted_at on async_payment (submitted_at);
@@ -0,0 +1,36 @@
+package com.safa.loanapi.common;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LoanMetricsTests {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    private final LoanMetrics loanMetrics = new LoanMetrics(meterRegistry);
+
+    @Test
+    void InstallmentPaid_WhenPaidLateThenPenaltyShouldBeCounted() {
+        loanMetrics.installmentPaid(new BigDecimal("100.00"), new BigDecimal("99.50"));
+        loanMetrics.installmentPaid(new BigDecimal("100.00"), new BigDecimal("100.00"));
+        loanMetrics.installmentPaid(new BigDecimal("100.00"), new BigDecimal("101.25"));
+
+        assertEquals(3, meterRegistry.counter("installments.paid").count());
+        assertEquals(1, meterRegistry.counter("installments.penalties").count());
+        assertEquals(1.25, meterRegistry.counter("installments.penalties.amount").count(), 1e-9);
+    }
+
+    @Test
+    void LoansCreatedAndLimitRejected_WhenCalledThenCountersShouldBeIncremented() {
+        loanMetrics.loansCreated(1);
+        loanMetrics.loansCreated(5);
+        loanMetrics.limitRejected();
+
+        assertEquals(6, meterRegistry.counter("loans.originated").count());
+        assertEquals(1, meterRegistry.counter("credit.limit.rejections").count());
+    }
+}
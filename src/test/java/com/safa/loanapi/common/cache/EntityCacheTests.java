@@ -0,0 +1,125 @@
+package com.safa.loanapi.common.cache;
+
+import com.safa.loanapi.WithMockCustomUser;
+import com.safa.loanapi.customer.CustomerRepository;
+import com.safa.loanapi.customer.CustomerService;
+import com.safa.loanapi.customer.dao.Customer;
+import com.safa.loanapi.customer.dto.CreateCustomer;
+import com.safa.loanapi.installment.InstallmentService;
+import com.safa.loanapi.loan.LoanExportService;
+import com.safa.loanapi.loan.LoanRepository;
+import com.safa.loanapi.loan.LoanService;
+import com.safa.loanapi.loan.dao.Loan;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.CacheRegionStatistics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Checks that the second-level cache serves repeated reads and never serves a customer or loan older than its row.
+ */
+@SpringBootTest(properties = {"penalty.accrual.enabled=false", "spring.jpa.show-sql=false", "hibernateStatistics.enabled=true"})
+@WithMockCustomUser(id = 1L, role = "ROLE_ADMIN")
+class EntityCacheTests {
+
+    @Autowired
+    private CustomerService customerService;
+
+    @Autowired
+    private CustomerRepository customerRepository;
+
+    @Autowired
+    private LoanService loanService;
+
+    @Autowired
+    private LoanRepository loanRepository;
+
+    @Autowired
+    private InstallmentService installmentService;
+
+    @Autowired
+    private LoanExportService loanExportService;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    private long customerID;
+
+    @BeforeEach
+    void setUp() {
+        CreateCustomer req = new CreateCustomer();
+        req.setName("Cache");
+        req.setSurname("Test");
+        req.setUsername("cache-" + UUID.randomUUID());
+        req.setPassword("secret");
+        req.setRole(Customer.Role.CUSTOMER);
+        req.setCreditLimit(100000.0);
+        customerID = customerService.createCustomer(req).getId();
+    }
+
+    @Test
+    void FindById_WhenLoanWasReadBeforeThenShouldBeServedFromTheCache() {
+        Loan loan = loanService.createLoan(customerID, 1000, 0.1, 6);
+        CacheRegionStatistics statistics = regionStatistics(EntityCacheConfiguration.LOAN_REGION);
+        long hits = statistics.getHitCount();
+
+        loanRepository.findById(loan.getId()).orElseThrow();
+        loanRepository.findById(loan.getId()).orElseThrow();
+
+        assertEquals(hits + 2, statistics.getHitCount());
+        assertTrue(meterRegistry.get("hibernate.second.level.cache.requests")
+                .tag("region", EntityCacheConfiguration.LOAN_REGION).tag("result", "hit").functionCounter().count() >= hits + 2);
+    }
+
+    @Test
+    void FindById_WhenLoanIsPaidThenShouldReturnTheUpdatedLoan() {
+        Loan loan = loanService.createLoan(customerID, 1000, 0.1, 3);
+        loanRepository.findById(loan.getId()).orElseThrow();
+
+        installmentService.payInstallment(customerID, loan.getId(), 10000);
+
+        Loan paid = loanRepository.findById(loan.getId()).orElseThrow();
+        assertTrue(paid.getIsPaid());
+        assertEquals(0, paid.getUnpaidInstallments());
+        assertEquals(loan.getVersion() + 1, paid.getVersion());
+    }
+
+    @Test
+    void FindById_WhenUsedCreditLimitIsWrittenWithJdbcThenShouldNotReturnTheCachedCustomer() {
+        assertEquals(0, customerRepository.findById(customerID).orElseThrow().getUsedCreditLimit().compareTo(BigDecimal.ZERO));
+
+        loanService.createLoan(customerID, 1000, 0.1, 6);
+
+        assertEquals(new BigDecimal("1000.00"), customerRepository.findById(customerID).orElseThrow().getUsedCreditLimit());
+    }
+
+    @Test
+    void Export_WhenLoansAreStreamedThenShouldNotPutThemIntoTheCache() {
+        Loan loan = loanService.createLoan(customerID, 1000, 0.1, 6);
+        entityManagerFactory.getCache().evict(Loan.class);
+        CacheRegionStatistics statistics = regionStatistics(EntityCacheConfiguration.LOAN_REGION);
+        long puts = statistics.getPutCount();
+
+        assertEquals(1, loanExportService.export(customerID, OutputStream.nullOutputStream()));
+
+        assertEquals(puts, statistics.getPutCount());
+        assertFalse(entityManagerFactory.getCache().contains(Loan.class, loan.getId()));
+    }
+
+    private CacheRegionStatistics regionStatistics(String region) {
+        return entityManagerFactory.unwrap(SessionFactory.class).getStatistics().getDomainDataRegionStatistics(region);
+    }
+}
@@ -0,0 +1,70 @@
+package com.safa.loanapi.common.concurrency;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import java.time.Duration;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ConcurrencyLimitFilterTests {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    private final ConcurrencyLimitFilter filter = new ConcurrencyLimitFilter(1, Duration.ofMillis(50), meterRegistry);
+
+    @Test
+    void DoFilter_WhenLimitIsExhaustedThenRequestShouldBeRejectedAfterQueueTimeout() throws Exception {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            // The first request holds the only permit until it is released
+            Future<MockHttpServletResponse> first = executor.submit(() -> {
+                MockHttpServletResponse response = new MockHttpServletResponse();
+                filter.doFilter(request("/customers/1/loans"), response, (req, res) -> {
+                    started.countDown();
+                    try {
+                        release.await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                });
+                return response;
+            });
+            assertTrue(started.await(5, TimeUnit.SECONDS));
+
+            MockHttpServletResponse rejected = new MockHttpServletResponse();
+            filter.doFilter(request("/customers/1/loans"), rejected, (req, res) -> fail("The request should not pass"));
+
+            assertEquals(503, rejected.getStatus());
+            assertEquals("1", rejected.getHeader(HttpHeaders.RETRY_AFTER));
+            assertEquals(1, meterRegistry.counter("http.server.requests.rejected").count());
+
+            // Actuator endpoints are never limited
+            MockHttpServletResponse health = new MockHttpServletResponse();
+            filter.doFilter(request("/actuator/health"), health, (req, res) -> ((MockHttpServletResponse) res).setStatus(200));
+            assertEquals(200, health.getStatus());
+
+            release.countDown();
+            assertEquals(200, first.get(5, TimeUnit.SECONDS).getStatus());
+        }
+
+        // The permit is given back once the first request completes
+        MockHttpServletResponse admitted = new MockHttpServletResponse();
+        filter.doFilter(request("/customers/1/loans"), admitted, (req, res) -> ((MockHttpServletResponse) res).setStatus(201));
+        assertEquals(201, admitted.getStatus());
+    }
+
+    private MockHttpServletRequest request(String uri) {
+        return new MockHttpServletRequest("GET", uri);
+    }
+}
@@ -0,0 +1,129 @@
+package com.safa.loanapi.common.concurrency;
+
+import com.safa.loanapi.exception.ConcurrentUpdateException;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.persistence.OptimisticLockException;
+import org.junit.jupiter.api.Test;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class StripedLockManagerTests {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    private final StripedLockManager lockManager = new StripedLockManager(16, Duration.ofMillis(50), 2, meterRegistry);
+
+    @Test
+    void Execute_WhenCalledConcurrentlyForTheSameIdThenNoUpdateShouldBeLost() throws Exception {
+        StripedLockManager patientLockManager = new StripedLockManager(16, Duration.ofSeconds(30), 2, meterRegistry);
+        int[] counter = new int[1];
+
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int i = 0; i < 10000; i++) {
+                // A plain read-modify-write, only the lock keeps the increments from overwriting each other
+                executor.submit(() -> patientLockManager.execute("loan", 7L, () -> counter[0] = counter[0] + 1));
+            }
+        }
+
+        assertEquals(10000, counter[0]);
+    }
+
+    @Test
+    void Execute_WhenOptimisticLockingFailsThenShouldRetry() {
+        AtomicInteger attempts = new AtomicInteger();
+
+        String result = lockManager.execute("loan", 1L, () -> {
+            if (attempts.incrementAndGet() == 1) {
+                throw new ObjectOptimisticLockingFailureException("Loan", 1L);
+            }
+            return "paid";
+        });
+
+        assertEquals("paid", result);
+        assertEquals(2, attempts.get());
+        assertEquals(1.0, meterRegistry.get("locks.retries").counter().count());
+    }
+
+    @Test
+    void Execute_WhenEveryAttemptFailsThenShouldThrowConcurrentUpdateException() {
+        AtomicInteger attempts = new AtomicInteger();
+
+        assertThrows(ConcurrentUpdateException.class, () -> lockManager.execute("loan", 1L, () -> {
+            attempts.incrementAndGet();
+            throw new OptimisticLockException();
+        }));
+
+        // The first attempt and two retries
+        assertEquals(3, attempts.get());
+        assertFalse(lockManager.stripe("loan", 1L).isLocked());
+    }
+
+    @Test
+    void Execute_WhenStripeIsHeldLongerThanTheTimeoutThenShouldThrowConcurrentUpdateException() throws Exception {
+        CountDownLatch locked = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            Future<Object> holder = executor.submit(() -> lockManager.execute("customer", 3L, () -> {
+                locked.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return null;
+            }));
+            locked.await();
+
+            assertThrows(ConcurrentUpdateException.class, () -> lockManager.execute("customer", 3L, () -> "late"));
+
+            release.countDown();
+            holder.get();
+        }
+        assertEquals("in time", lockManager.execute("customer", 3L, () -> "in time"));
+    }
+
+    @Test
+    void ExecuteAll_WhenCalledConcurrentlyWithOverlappingIdsThenShouldNotDeadlockOrLoseUpdates() {
+        StripedLockManager patientLockManager = new StripedLockManager(16, Duration.ofSeconds(30), 2, meterRegistry);
+        int[] counter = new int[1];
+
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int i = 0; i < 1000; i++) {
+                // The same IDs in opposite orders, together with single locks of one of them
+                List<Long> ids = i % 2 == 0 ? List.of(1L, 2L, 3L, 4L) : List.of(4L, 3L, 2L, 1L);
+                executor.submit(() -> patientLockManager.executeAll("loan", ids, () -> counter[0] = counter[0] + 1));
+                executor.submit(() -> patientLockManager.execute("loan", 3L, () -> counter[0] = counter[0] + 1));
+            }
+        }
+
+        assertEquals(2000, counter[0]);
+        for (long id = 1; id <= 4; id++) {
+            assertFalse(patientLockManager.stripe("loan", id).isLocked());
+        }
+    }
+
+    @Test
+    void ExecuteAll_WhenEveryAttemptFailsThenShouldReleaseEveryStripe() {
+        AtomicInteger attempts = new AtomicInteger();
+
+        assertThrows(ConcurrentUpdateException.class, () -> lockManager.executeAll("loan", List.of(1L, 2L, 3L), () -> {
+            attempts.incrementAndGet();
+            throw new ObjectOptimisticLockingFailureException("Loan", 2L);
+        }));
+
+        assertEquals(3, attempts.get());
+        for (long id = 1; id <= 3; id++) {
+            assertFalse(lockManager.stripe("loan", id).isLocked());
+        }
+    }
+}
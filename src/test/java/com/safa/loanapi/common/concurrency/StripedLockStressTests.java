@@ -0,0 +1,146 @@
+package com.safa.loanapi.common.concurrency;
+
+import com.safa.loanapi.WithMockCustomUser;
+import com.safa.loanapi.customer.CreditLimitLedger;
+import com.safa.loanapi.customer.CustomerService;
+import com.safa.loanapi.customer.CustomerSummaryService;
+import com.safa.loanapi.customer.dao.Customer;
+import com.safa.loanapi.customer.dto.CreateCustomer;
+import com.safa.loanapi.customer.dto.CustomerSummaryView;
+import com.safa.loanapi.exception.NotEnoughLimitException;
+import com.safa.loanapi.installment.InstallmentService;
+import com.safa.loanapi.loan.LoanService;
+import com.safa.loanapi.loan.dao.Loan;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.security.concurrent.DelegatingSecurityContextExecutorService;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Pays the same loans and creates loans for the same customer from many virtual threads at once, then checks that
+ * every installment was paid at most once and that the credit limit, the loans and the customer summary still add up.
+ * The throughput of the run is printed. All originations queue up on the lock of one customer, so the lock timeout is
+ * raised to keep the last of them from giving up.
+ */
+@SpringBootTest(properties = {"penalty.accrual.enabled=false", "spring.jpa.show-sql=false", "debug=false",
+        "logging.level.web=info", "logging.level.security=info", "locks.timeout=60s"})
+@WithMockCustomUser(id = 1L, role = "ROLE_ADMIN")
+class StripedLockStressTests {
+    private static final int LOANS = 20;
+    private static final int PAYMENTS_PER_LOAN = 25;
+    private static final int LOAN_ATTEMPTS = 50;
+    // Installments due within the next 3 months, every payment of 100 covers exactly one of them
+    private static final int PAYABLE_INSTALLMENTS = 3;
+
+    @Autowired
+    private CustomerService customerService;
+
+    @Autowired
+    private LoanService loanService;
+
+    @Autowired
+    private InstallmentService installmentService;
+
+    @Autowired
+    private CustomerSummaryService customerSummaryService;
+
+    @Autowired
+    private CreditLimitLedger creditLimitLedger;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Test
+    void PayAndCreateLoans_WhenCalledConcurrentlyThenNoUpdateShouldBeLost() throws Exception {
+        long customerID = createCustomer(20000.0);
+        List<Loan> loans = new ArrayList<>();
+        for (int i = 0; i < LOANS; i++) {
+            loans.add(loanService.createLoan(customerID, 500, 0.1, 6));
+        }
+
+        AtomicInteger paidInstallments = new AtomicInteger();
+        AtomicInteger createdLoans = new AtomicInteger();
+        AtomicInteger rejectedLoans = new AtomicInteger();
+        List<Future<?>> operations = new ArrayList<>();
+
+        long startedAt = System.nanoTime();
+        try (ExecutorService executor = new DelegatingSecurityContextExecutorService(Executors.newVirtualThreadPerTaskExecutor())) {
+            for (int i = 0; i < PAYMENTS_PER_LOAN; i++) {
+                for (Loan loan : loans) {
+                    operations.add(executor.submit(() -> paidInstallments.addAndGet(
+                            installmentService.payInstallment(customerID, loan.getId(), 100).getPaidInstallments().size())));
+                }
+            }
+            for (int i = 0; i < LOAN_ATTEMPTS; i++) {
+                operations.add(executor.submit(() -> {
+                    try {
+                        loanService.createLoan(customerID, 500, 0.1, 6);
+                        createdLoans.incrementAndGet();
+                    } catch (NotEnoughLimitException e) {
+                        rejectedLoans.incrementAndGet();
+                    }
+                }));
+            }
+            for (Future<?> operation : operations) {
+                operation.get();
+            }
+        }
+        long elapsedNanos = System.nanoTime() - startedAt;
+
+        System.out.printf("%d payments and %d loan originations in %d ms, %.0f operations/sec%n",
+                LOANS * PAYMENTS_PER_LOAN, LOAN_ATTEMPTS, elapsedNanos / 1_000_000, operations.size() * 1e9 / elapsedNanos);
+
+        // Every payable installment was paid exactly once, and the loans counted every one of them
+        assertEquals(LOANS * PAYABLE_INSTALLMENTS, paidInstallments.get());
+        for (Loan loan : loans) {
+            assertEquals(PAYABLE_INSTALLMENTS, count("select count(*) from installment where loan_id = ? and is_paid = true", loan.getId()));
+            assertEquals(6 - PAYABLE_INSTALLMENTS, count("select unpaid_installments from loan where id = ?", loan.getId()));
+        }
+
+        // The credit limit took 500 for every created loan and got the principal of every paid installment back
+        assertEquals(LOAN_ATTEMPTS, createdLoans.get() + rejectedLoans.get());
+        BigDecimal outstanding = jdbcTemplate.queryForObject("select sum(i.amount) from installment i join loan l on l.id = i.loan_id "
+                + "where l.customer_id = ? and i.is_paid = false", BigDecimal.class, customerID);
+        BigDecimal usedCreditLimit = jdbcTemplate.queryForObject("select used_credit_limit from customer where id = ?", BigDecimal.class, customerID);
+        assertEquals(0, outstanding.compareTo(usedCreditLimit));
+        assertEquals(0, BigDecimal.valueOf(20000).subtract(usedCreditLimit).compareTo(creditLimitLedger.getAvailableLimit(customerID)));
+
+        CustomerSummaryView summary = customerSummaryService.getSummary(customerID);
+        assertEquals(0, outstanding.compareTo(summary.getOutstandingPrincipal()));
+        assertEquals(LOANS + createdLoans.get(), summary.getOpenLoans());
+
+        // The lock is held until the transaction committed, so within one process no version check ever failed
+        assertEquals(0.0, meterRegistry.get("locks.retries").counter().count());
+    }
+
+    private long createCustomer(double creditLimit) {
+        CreateCustomer req = new CreateCustomer();
+        req.setName("Stress");
+        req.setSurname("Test");
+        req.setUsername("stress-" + UUID.randomUUID());
+        req.setPassword("secret");
+        req.setRole(Customer.Role.CUSTOMER);
+        req.setCreditLimit(creditLimit);
+        return customerService.createCustomer(req).getId();
+    }
+
+    private int count(String sql, long id) {
+        return jdbcTemplate.queryForObject(sql, Integer.class, id);
+    }
+}
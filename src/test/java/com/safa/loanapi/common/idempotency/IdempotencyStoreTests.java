@@ -0,0 +1,128 @@
+package com.safa.loanapi.common.idempotency;
+
+import com.safa.loanapi.exception.IdempotencyKeyReusedException;
+import com.safa.loanapi.exception.NotEnoughLimitException;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.authentication.TestingAuthenticationToken;
+import org.springframework.security.core.context.SecurityContextHolder;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class IdempotencyStoreTests {
+
+    private SimpleMeterRegistry meterRegistry;
+    private IdempotencyStore idempotencyStore;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        idempotencyStore = new IdempotencyStore(100, Duration.ofMinutes(1), meterRegistry);
+        SecurityContextHolder.getContext().setAuthentication(new TestingAuthenticationToken("customer", null));
+    }
+
+    @AfterEach
+    void tearDown() {
+        SecurityContextHolder.clearContext();
+    }
+
+    @Test
+    void Execute_WhenKeyIsRepeatedThenShouldReplayTheFirstResponse() {
+        AtomicInteger executions = new AtomicInteger();
+
+        ResponseEntity<Integer> first = idempotencyStore.execute("key", "create", "body", () -> ResponseEntity.ok(executions.incrementAndGet()));
+        ResponseEntity<Integer> second = idempotencyStore.execute("key", "create", "body", () -> ResponseEntity.ok(executions.incrementAndGet()));
+
+        assertEquals(1, executions.get());
+        assertEquals(1, second.getBody());
+        assertNull(first.getHeaders().getFirst(IdempotencyStore.REPLAYED_HEADER));
+        assertEquals("true", second.getHeaders().getFirst(IdempotencyStore.REPLAYED_HEADER));
+        assertEquals(1, meterRegistry.get("idempotency.replays").counter().count());
+    }
+
+    @Test
+    void Execute_WhenKeyIsMissingThenShouldExecuteEveryTime() {
+        AtomicInteger executions = new AtomicInteger();
+
+        idempotencyStore.execute(null, "create", "body", () -> ResponseEntity.ok(executions.incrementAndGet()));
+        idempotencyStore.execute(null, "create", "body", () -> ResponseEntity.ok(executions.incrementAndGet()));
+
+        assertEquals(2, executions.get());
+    }
+
+    @Test
+    void Execute_WhenKeyIsUsedByAnotherUserOrOperationThenShouldExecuteAgain() {
+        AtomicInteger executions = new AtomicInteger();
+
+        idempotencyStore.execute("key", "create", "body", () -> ResponseEntity.ok(executions.incrementAndGet()));
+        idempotencyStore.execute("key", "pay", "body", () -> ResponseEntity.ok(executions.incrementAndGet()));
+        SecurityContextHolder.getContext().setAuthentication(new TestingAuthenticationToken("other", null));
+        idempotencyStore.execute("key", "create", "body", () -> ResponseEntity.ok(executions.incrementAndGet()));
+
+        assertEquals(3, executions.get());
+    }
+
+    @Test
+    void Execute_WhenKeyIsReusedForADifferentRequestThenShouldThrowIdempotencyKeyReusedException() {
+        idempotencyStore.execute("key", "create", "body", () -> ResponseEntity.ok(1));
+
+        assertThrows(IdempotencyKeyReusedException.class,
+                () -> idempotencyStore.execute("key", "create", "other body", () -> ResponseEntity.ok(2)));
+    }
+
+    @Test
+    void Execute_WhenActionFailsThenShouldExecuteAgainOnRetry() {
+        assertThrows(NotEnoughLimitException.class, () -> idempotencyStore.execute("key", "create", "body", () -> {
+            throw new NotEnoughLimitException(1L);
+        }));
+
+        ResponseEntity<Integer> retry = idempotencyStore.execute("key", "create", "body", () -> ResponseEntity.ok(2));
+        assertEquals(2, retry.getBody());
+    }
+
+    @Test
+    void Execute_WhenDuplicateArrivesWhileInFlightThenShouldWaitForTheFirstResponse() throws Exception {
+        AtomicInteger executions = new AtomicInteger();
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        var authentication = SecurityContextHolder.getContext().getAuthentication();
+
+        CompletableFuture<ResponseEntity<Integer>> first = CompletableFuture.supplyAsync(() -> {
+            SecurityContextHolder.getContext().setAuthentication(authentication);
+            return idempotencyStore.execute("key", "create", "body", () -> {
+                started.countDown();
+                await(release);
+                return ResponseEntity.ok(executions.incrementAndGet());
+            });
+        });
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+
+        CompletableFuture<ResponseEntity<Integer>> duplicate = CompletableFuture.supplyAsync(() -> {
+            SecurityContextHolder.getContext().setAuthentication(authentication);
+            return idempotencyStore.execute("key", "create", "body", () -> ResponseEntity.ok(executions.incrementAndGet()));
+        });
+        assertFalse(duplicate.isDone());
+
+        release.countDown();
+        assertEquals(1, first.get(5, TimeUnit.SECONDS).getBody());
+        assertEquals(1, duplicate.get(5, TimeUnit.SECONDS).getBody());
+        assertEquals(1, executions.get());
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,140 @@
+package com.safa.loanapi.common.sql;
+
+import com.safa.loanapi.WithMockCustomUser;
+import com.safa.loanapi.customer.CustomerRepository;
+import com.safa.loanapi.installment.InstallmentRepository;
+import com.safa.loanapi.loan.LoanService;
+import com.safa.loanapi.loan.dto.LoanQuery;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInstance;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.annotation.DirtiesContext;
+
+import java.sql.Types;
+import java.time.LocalDate;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Checks that the lookups of the hot paths are served by the indexes of the migrations on a database of a million
+ * installments, by running H2's {@code EXPLAIN} on the SQL Hibernate generates for each repository method.
+ *
+ * <p>The test runs on its own in-memory database, which is dropped with the context after the class.</p>
+ */
+@SpringBootTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:query_plan",
+        "spring.jpa.properties.hibernate.session_factory.statement_inspector=com.safa.loanapi.common.sql.RecordingStatementInspector",
+        "penalty.accrual.enabled=false",
+        "spring.jpa.show-sql=false"})
+@DirtiesContext(classMode = DirtiesContext.ClassMode.AFTER_CLASS)
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+@WithMockCustomUser(role = "ROLE_ADMIN")
+class QueryPlanTests {
+    private static final int CUSTOMERS = 10_000;
+    private static final int LOANS = 100_000;
+    private static final int INSTALLMENTS = 1_000_000;
+    private static final long SEED_ID = 1_000_000_000L;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private InstallmentRepository installmentRepository;
+
+    @Autowired
+    private CustomerRepository customerRepository;
+
+    @Autowired
+    private LoanService loanService;
+
+    @BeforeAll
+    void seed() {
+        // Customers, 10 loans per customer and 10 installments per loan, a third of them paid
+        jdbcTemplate.update("insert into customer (name, surname, username, password, role, credit_limit, used_credit_limit) "
+                + "select 'Seed', 'Customer', 'seed-' || x, 'secret', 'CUSTOMER', 100000, 0 from system_range(1, ?)", CUSTOMERS);
+        long firstCustomerId = jdbcTemplate.queryForObject("select min(id) from customer where username like 'seed-%'", Long.class);
+        jdbcTemplate.update("insert into loan (id, customer_id, amount, total_amount, number_of_installments, created_at, is_paid, unpaid_installments, version) "
+                + "select ? + x, ? + mod(x, ?), 1000, 1100, 10, dateadd('SECOND', x, timestamp '2025-01-01 00:00:00'), false, 7, 0 "
+                + "from system_range(0, ? - 1)", SEED_ID, firstCustomerId, CUSTOMERS, LOANS);
+        jdbcTemplate.update("insert into installment (id, loan_id, amount, total_amount, paid_amount, due_date, is_paid, accrued_penalty, overdue_days) "
+                + "select ? + x, ? + x / 10, 100, 110, 0, dateadd('MONTH', mod(x, 10), date '2025-02-01'), mod(x, 10) < 3, 0, 0 "
+                + "from system_range(0, ? - 1)", SEED_ID, SEED_ID, INSTALLMENTS);
+        jdbcTemplate.execute("analyze");
+
+        assertEquals(INSTALLMENTS, jdbcTemplate.queryForObject("select count(*) from installment where id >= ?", Long.class, SEED_ID));
+    }
+
+    @BeforeEach
+    void setUp() {
+        RecordingStatementInspector.clear();
+    }
+
+    @Test
+    void FindAllByLoanId_WhenTableIsLargeThenShouldUseTheInstallmentIndex() {
+        assertEquals(10, installmentRepository.findAllByLoanId(SEED_ID + 42).size());
+
+        assertUsesIndex("idx_installment_loan_paid_due_date");
+    }
+
+    @Test
+    void FindViewsByLoanId_WhenTableIsLargeThenShouldUseTheInstallmentIndex() {
+        assertEquals(10, installmentRepository.findViewsByLoanId(SEED_ID + 42).size());
+
+        assertUsesIndex("idx_installment_loan_paid_due_date");
+    }
+
+    @Test
+    void FindAllByLoanIdAndIsPaidOrderByDueDateAsc_WhenTableIsLargeThenShouldUseTheInstallmentIndex() {
+        assertEquals(7, installmentRepository.findAllByLoanIdAndIsPaidOrderByDueDateAsc(SEED_ID + 42, false).size());
+
+        assertUsesIndex("idx_installment_loan_paid_due_date");
+    }
+
+    @Test
+    void FindPayableByLoanId_WhenTableIsLargeThenShouldUseTheInstallmentIndex() {
+        installmentRepository.findPayableByLoanId(SEED_ID + 42, LocalDate.of(2025, 8, 1));
+
+        assertUsesIndex("idx_installment_loan_paid_due_date");
+    }
+
+    @Test
+    void FindByUsername_WhenTableIsLargeThenShouldUseTheUniqueUsernameIndex() {
+        assertTrue(customerRepository.findByUsername("seed-4242").isPresent());
+
+        assertUsesIndex("ux_customer_username");
+    }
+
+    @Test
+    void ListLoans_WhenTableIsLargeThenShouldUseTheCustomerIndex() {
+        long customerId = jdbcTemplate.queryForObject("select id from customer where username = 'seed-42'", Long.class);
+
+        assertEquals(10, loanService.listLoans(customerId, new LoanQuery(50, null, null, null, null, false)).getLoans().size());
+
+        assertUsesIndex("idx_loan_customer_created_at");
+    }
+
+    /**
+     * Explains the first statement the repository method issued and checks it is served by the index.
+     */
+    private void assertUsesIndex(String index) {
+        List<String> statements = RecordingStatementInspector.statements();
+        assertFalse(statements.isEmpty(), "No statement was recorded");
+        String sql = statements.get(0);
+
+        // Plans do not depend on the parameter values, so every parameter is bound to null
+        String plan = jdbcTemplate.query("explain " + sql, ps -> {
+            for (int i = 1; i <= ps.getParameterMetaData().getParameterCount(); i++) {
+                ps.setNull(i, Types.NULL);
+            }
+        }, rs -> rs.next() ? rs.getString(1) : null);
+
+        assertNotNull(plan);
+        assertTrue(plan.toLowerCase().contains("public." + index), () -> "Expected " + index + " in the plan of " + sql + "\n" + plan);
+        assertFalse(plan.contains("tableScan"), () -> "Expected no table scan in the plan of " + sql + "\n" + plan);
+    }
+}
@@ -0,0 +1,41 @@
+package com.safa.loanapi.common.sql;
+
+import org.hibernate.resource.jdbc.spi.StatementInspector;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Records the SQL Hibernate prepares, so tests can look at the statements a repository method issues.
+ */
+public class RecordingStatementInspector implements StatementInspector {
+    private static final List<String> STATEMENTS = new ArrayList<>();
+
+    @Override
+    public String inspect(String sql) {
+        synchronized (STATEMENTS) {
+            STATEMENTS.add(sql);
+        }
+        return sql;
+    }
+
+    /**
+     * Forgets the statements recorded so far.
+     */
+    public static void clear() {
+        synchronized (STATEMENTS) {
+            STATEMENTS.clear();
+        }
+    }
+
+    /**
+     * Returns the statements recorded since the last {@link #clear()}, in the order they were prepared.
+     *
+     * @return the recorded SQL
+     */
+    public static List<String> statements() {
+        synchronized (STATEMENTS) {
+            return List.copyOf(STATEMENTS);
+        }
+    }
+}
@@ -0,0 +1,33 @@
+package com.safa.loanapi.common.sql;
+
+import org.springframework.test.web.servlet.ResultMatcher;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+
+/**
+ * Asserts the number of SQL statements a request executed, from the {@code X-Sql-Statement-Count} response header.
+ *
+ * <p>Budgets are exact: a request issuing more statements than expected is usually an N+1 or a per-row save that
+ * crept in, one issuing fewer means the budget can be tightened.</p>
+ */
+public final class SqlStatementBudget {
+
+    private SqlStatementBudget() {
+    }
+
+    /**
+     * Expects the request to have executed exactly {@code expected} SQL statements.
+     *
+     * @param expected the statement budget of the request
+     * @return a matcher for {@code andExpect}
+     */
+    public static ResultMatcher statements(long expected) {
+        return result -> {
+            String header = result.getResponse().getHeader(SqlStatementCountHeaderAdvice.STATEMENT_COUNT_HEADER);
+            assertNotNull(header, "The response has no " + SqlStatementCountHeaderAdvice.STATEMENT_COUNT_HEADER + " header");
+            assertEquals(expected, Long.parseLong(header), () -> "SQL statement budget of "
+                    + result.getRequest().getMethod() + " " + result.getRequest().getRequestURI());
+        };
+    }
+}
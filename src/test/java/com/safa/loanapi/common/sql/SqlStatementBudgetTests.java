@@ -0,0 +1,145 @@
+package com.safa.loanapi.common.sql;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.ResultActions;
+
+import java.util.Map;
+import java.util.UUID;
+
+import static com.safa.loanapi.common.sql.SqlStatementBudget.statements;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * Guards the number of SQL statements of every endpoint, so N+1 queries and per-row saves fail the build.
+ *
+ * <p>Requests authenticate with an access token, which is verified without a query, so the budgets only cover the
+ * endpoint itself.</p>
+ */
+@SpringBootTest(properties = "spring.jpa.show-sql=false")
+@AutoConfigureMockMvc
+class SqlStatementBudgetTests {
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    private long customerID;
+
+    private String token;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        String username = "budget-" + UUID.randomUUID();
+        customerID = json(mockMvc.perform(post("/customers")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(Map.of("name", "Budget", "surname", "Test",
+                                "username", username, "password", "secret", "role", "CUSTOMER", "credit_limit", 100000))))
+                .andExpect(status().isOk())
+                .andReturn()).get("id").asLong();
+
+        token = "Bearer " + json(mockMvc.perform(post("/auth/token")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(Map.of("username", username, "password", "secret"))))
+                .andExpect(status().isOk())
+                .andReturn()).get("access_token").asText();
+    }
+
+    @Test
+    void CreateCustomer_WhenCalledThenShouldStayWithinStatementBudget() throws Exception {
+        mockMvc.perform(post("/customers")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(Map.of("name", "Budget", "surname", "Test",
+                                "username", "budget-" + UUID.randomUUID(), "password", "secret", "role", "CUSTOMER", "credit_limit", 1000))))
+                .andExpect(status().isOk())
+                .andExpect(statements(2));
+    }
+
+    @Test
+    void CreateLoan_WhenCalledThenShouldStayWithinStatementBudget() throws Exception {
+        // The loan, one batch for its whole schedule, the credit limit update and the customer summary update
+        createLoan(24)
+                .andExpect(statements(4));
+    }
+
+    @Test
+    void ListLoans_WhenCalledThenShouldStayWithinStatementBudget() throws Exception {
+        for (int i = 0; i < 5; i++) {
+            createLoan(6);
+        }
+
+        // The page of loans and the installments of all of them
+        mockMvc.perform(get("/customers/{customer_id}/loans", customerID).header(HttpHeaders.AUTHORIZATION, token))
+                .andExpect(status().isOk())
+                .andExpect(statements(2));
+        mockMvc.perform(get("/customers/{customer_id}/loans", customerID).header(HttpHeaders.AUTHORIZATION, token)
+                        .param("include_installments", "false"))
+                .andExpect(status().isOk())
+                .andExpect(statements(1));
+    }
+
+    @Test
+    void ListInstallments_WhenCalledThenShouldStayWithinStatementBudget() throws Exception {
+        long loanID = json(createLoan(12).andReturn()).get("id").asLong();
+
+        mockMvc.perform(get("/customers/{customer_id}/loans/{loan_id}/installments", customerID, loanID).header(HttpHeaders.AUTHORIZATION, token))
+                .andExpect(status().isOk())
+                .andExpect(statements(1));
+    }
+
+    @Test
+    void PayInstallment_WhenCalledThenShouldStayWithinStatementBudget() throws Exception {
+        long loanID = json(createLoan(6).andReturn()).get("id").asLong();
+
+        // The payable installments, one batch for the paid installments, the loan update with its unpaid count and
+        // version, the credit limit update and the customer summary update; the loan comes from the entity cache
+        mockMvc.perform(post("/customers/{customer_id}/loans/{loan_id}/payment", customerID, loanID)
+                        .header(HttpHeaders.AUTHORIZATION, token)
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"amount\": 1000}"))
+                .andExpect(status().isOk())
+                .andExpect(statements(5));
+    }
+
+    @Test
+    void QuotePayment_WhenRepeatedThenShouldOnlyReadTheLoanVersion() throws Exception {
+        long loanID = json(createLoan(6).andReturn()).get("id").asLong();
+
+        // The loan version and its unpaid installments, then the version alone while the loan is unchanged
+        mockMvc.perform(get("/customers/{customer_id}/loans/{loan_id}/payment/quote", customerID, loanID)
+                        .header(HttpHeaders.AUTHORIZATION, token)
+                        .param("amount", "500"))
+                .andExpect(status().isOk())
+                .andExpect(statements(2));
+        mockMvc.perform(get("/customers/{customer_id}/loans/{loan_id}/payment/quote", customerID, loanID)
+                        .header(HttpHeaders.AUTHORIZATION, token)
+                        .param("amount", "500"))
+                .andExpect(status().isOk())
+                .andExpect(statements(1));
+    }
+
+    private ResultActions createLoan(int numberOfInstallments) throws Exception {
+        return mockMvc.perform(post("/customers/{customer_id}/loans", customerID)
+                        .header(HttpHeaders.AUTHORIZATION, token)
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(Map.of("amount", 1000, "rate", 0.1, "number_of_installments", numberOfInstallments))))
+                .andExpect(status().isOk());
+    }
+
+    private JsonNode json(MvcResult result) throws Exception {
+        return objectMapper.readTree(result.getResponse().getContentAsString());
+    }
+}
@@ -0,0 +1,222 @@
+package com.safa.loanapi.customer;
+
+import com.safa.loanapi.common.LoanMetrics;
+import com.safa.loanapi.customer.dao.Customer;
+import com.safa.loanapi.exception.CustomerNotFoundException;
+import com.safa.loanapi.exception.NotEnoughLimitException;
+import jakarta.persistence.Cache;
+import jakarta.persistence.EntityManagerFactory;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class CreditLimitLedgerTests {
+
+    @InjectMocks
+    private CreditLimitLedger creditLimitLedger;
+
+    @Mock
+    private CustomerRepository customerRepository;
+
+    @Mock
+    private JdbcTemplate jdbcTemplate;
+
+    @Mock
+    private LoanMetrics loanMetrics;
+
+    @Mock
+    private EntityManagerFactory entityManagerFactory;
+
+    @Mock
+    private Cache entityCache;
+
+    @BeforeEach
+    void setUp() {
+        lenient().when(entityManagerFactory.getCache()).thenReturn(entityCache);
+    }
+
+    @AfterEach
+    void tearDown() {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+    }
+
+    @Test
+    void Reserve_WhenLimitIsEnoughThenItShouldBeReservedAndWrittenThrough() {
+        creditLimitLedger.register(customer(1L, 5000.0, 1000.0));
+        when(jdbcTemplate.batchUpdate(anyString(), anyList())).thenReturn(new int[]{1});
+
+        creditLimitLedger.reserve(1L, BigDecimal.valueOf(1500.25));
+
+        assertEquals(new BigDecimal("2499.75"), creditLimitLedger.getAvailableLimit(1L));
+        verify(jdbcTemplate).batchUpdate(anyString(), argThat((List<Object[]> args) ->
+                args.size() == 1 && new BigDecimal("1500.25").equals(args.get(0)[0]) && Long.valueOf(1L).equals(args.get(0)[1])));
+    }
+
+    @Test
+    void Reserve_WhenLimitIsNotEnoughThenShouldThrowNotEnoughLimitException() {
+        creditLimitLedger.register(customer(1L, 4000.0, 1000.0));
+
+        assertThrows(NotEnoughLimitException.class, () -> creditLimitLedger.reserve(1L, BigDecimal.valueOf(3000.01)));
+
+        assertEquals(new BigDecimal("3000.00"), creditLimitLedger.getAvailableLimit(1L));
+        verifyNoInteractions(jdbcTemplate);
+        verify(loanMetrics).limitRejected();
+    }
+
+    @Test
+    void Reserve_WhenCustomerIsUnknownThenItShouldBeLoadedOrNotFound() {
+        when(customerRepository.findById(1L)).thenReturn(Optional.of(customer(1L, 100.0, 0.0)));
+        when(customerRepository.findById(2L)).thenReturn(Optional.empty());
+        when(jdbcTemplate.batchUpdate(anyString(), anyList())).thenReturn(new int[]{1});
+
+        creditLimitLedger.reserve(1L, BigDecimal.valueOf(100.0));
+
+        assertEquals(0, BigDecimal.ZERO.compareTo(creditLimitLedger.getAvailableLimit(1L)));
+        assertThrows(CustomerNotFoundException.class, () -> creditLimitLedger.reserve(2L, BigDecimal.ONE));
+    }
+
+    @Test
+    void Reserve_WhenTransactionRollsBackThenReservationShouldBeUndone() {
+        creditLimitLedger.register(customer(1L, 1000.0, 0.0));
+        TransactionSynchronizationManager.initSynchronization();
+
+        creditLimitLedger.reserve(1L, BigDecimal.valueOf(400.0));
+        creditLimitLedger.release(1L, BigDecimal.valueOf(100.0));
+        assertEquals(new BigDecimal("700.00"), creditLimitLedger.getAvailableLimit(1L));
+
+        List<TransactionSynchronization> synchronizations = TransactionSynchronizationManager.getSynchronizations();
+        assertEquals(1, synchronizations.size());
+        synchronizations.forEach(synchronization -> synchronization.afterCompletion(TransactionSynchronization.STATUS_ROLLED_BACK));
+
+        assertEquals(new BigDecimal("1000.00"), creditLimitLedger.getAvailableLimit(1L));
+        assertNull(TransactionSynchronizationManager.getResource(creditLimitLedger));
+        verifyNoInteractions(jdbcTemplate);
+    }
+
+    @Test
+    void Reserve_WhenCounterIsReloadedBeforeTheRollbackThenTheReloadedCounterShouldNotBeReverted() throws Exception {
+        creditLimitLedger.register(customer(1L, 1000.0, 0.0));
+        TransactionSynchronizationManager.initSynchronization();
+        creditLimitLedger.reserve(1L, BigDecimal.valueOf(400.0));
+
+        // Another instance used 300, a reservation outside the transaction is rejected by the row and reloads the counter
+        when(jdbcTemplate.batchUpdate(anyString(), anyList())).thenReturn(new int[]{0});
+        when(customerRepository.findById(1L)).thenReturn(Optional.of(customer(1L, 1000.0, 300.0)));
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Future<?> rejected = executor.submit(() -> creditLimitLedger.reserve(1L, BigDecimal.valueOf(100.0)));
+            ExecutionException e = assertThrows(ExecutionException.class, rejected::get);
+            assertInstanceOf(NotEnoughLimitException.class, e.getCause());
+        } finally {
+            executor.shutdown();
+        }
+        assertEquals(new BigDecimal("700.00"), creditLimitLedger.getAvailableLimit(1L));
+
+        // The 400 was never part of the reloaded counter, so it is read from the row again instead of given back
+        TransactionSynchronizationManager.getSynchronizations()
+                .forEach(synchronization -> synchronization.afterCompletion(TransactionSynchronization.STATUS_ROLLED_BACK));
+        assertEquals(new BigDecimal("700.00"), creditLimitLedger.getAvailableLimit(1L));
+        verify(customerRepository, times(2)).findById(1L);
+    }
+
+    @Test
+    void Reserve_WhenTransactionCommitsThenCustomerShouldBeEvictedFromTheEntityCache() {
+        creditLimitLedger.register(customer(1L, 1000.0, 0.0));
+        when(jdbcTemplate.batchUpdate(anyString(), anyList())).thenReturn(new int[]{1});
+        TransactionSynchronizationManager.initSynchronization();
+
+        creditLimitLedger.reserve(1L, BigDecimal.valueOf(400.0));
+        verifyNoInteractions(entityCache);
+
+        // Evicted once the update is written, and again after the commit
+        List<TransactionSynchronization> synchronizations = TransactionSynchronizationManager.getSynchronizations();
+        synchronizations.forEach(synchronization -> synchronization.beforeCommit(false));
+        verify(entityCache, times(1)).evict(Customer.class, 1L);
+        synchronizations.forEach(synchronization -> synchronization.afterCompletion(TransactionSynchronization.STATUS_COMMITTED));
+        verify(entityCache, times(2)).evict(Customer.class, 1L);
+    }
+
+    @Test
+    void Reserve_WhenRowDoesNotCoverTheReservationThenCommitShouldFailAndCustomerShouldBeReloaded() {
+        // Another instance used 800 of the limit since this one loaded the customer
+        creditLimitLedger.register(customer(1L, 1000.0, 0.0));
+        creditLimitLedger.register(customer(2L, 1000.0, 0.0));
+        when(jdbcTemplate.batchUpdate(anyString(), anyList())).thenReturn(new int[]{0, 1});
+        when(customerRepository.findById(1L)).thenReturn(Optional.of(customer(1L, 1000.0, 800.0)));
+        TransactionSynchronizationManager.initSynchronization();
+
+        creditLimitLedger.reserve(1L, BigDecimal.valueOf(400.0));
+        creditLimitLedger.reserve(2L, BigDecimal.valueOf(100.0));
+
+        List<TransactionSynchronization> synchronizations = TransactionSynchronizationManager.getSynchronizations();
+        assertThrows(NotEnoughLimitException.class, () -> synchronizations.forEach(synchronization -> synchronization.beforeCommit(false)));
+        synchronizations.forEach(synchronization -> synchronization.afterCompletion(TransactionSynchronization.STATUS_ROLLED_BACK));
+
+        assertEquals(new BigDecimal("200.00"), creditLimitLedger.getAvailableLimit(1L));
+        assertEquals(new BigDecimal("1000.00"), creditLimitLedger.getAvailableLimit(2L));
+        verify(loanMetrics).limitRejected();
+    }
+
+    @Test
+    void Reserve_WhenCalledConcurrentlyThenNoUpdateShouldBeLost() throws Exception {
+        creditLimitLedger.register(customer(1L, 10000.0, 0.0));
+        when(jdbcTemplate.batchUpdate(anyString(), anyList())).thenReturn(new int[]{1});
+
+        int threads = 16;
+        int reservationsPerThread = 1000;
+        AtomicInteger reserved = new AtomicInteger();
+        AtomicInteger rejected = new AtomicInteger();
+
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        for (int i = 0; i < threads; i++) {
+            executor.submit(() -> {
+                for (int j = 0; j < reservationsPerThread; j++) {
+                    try {
+                        creditLimitLedger.reserve(1L, BigDecimal.ONE);
+                        reserved.incrementAndGet();
+                    } catch (NotEnoughLimitException e) {
+                        rejected.incrementAndGet();
+                    }
+                }
+            });
+        }
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(30, TimeUnit.SECONDS));
+
+        assertEquals(10000, reserved.get());
+        assertEquals(threads * reservationsPerThread - 10000, rejected.get());
+        assertEquals(0, BigDecimal.ZERO.compareTo(creditLimitLedger.getAvailableLimit(1L)));
+    }
+
+    private Customer customer(Long id, double creditLimit, double usedCreditLimit) {
+        Customer customer = new Customer();
+        customer.setId(id);
+        customer.setCreditLimit(BigDecimal.valueOf(creditLimit));
+        customer.setUsedCreditLimit(BigDecimal.valueOf(usedCreditLimit));
+        return customer;
+    }
+}
@@ -0,0 +1,193 @@
+package com.safa.loanapi.customer;
+
+import com.safa.loanapi.WithMockCustomUser;
+import com.safa.loanapi.customer.dao.Customer;
+import com.safa.loanapi.customer.dto.CreateCustomer;
+import com.safa.loanapi.customer.dto.CustomerSummaryView;
+import com.safa.loanapi.exception.CustomerNotFoundException;
+import com.safa.loanapi.installment.InstallmentRepository;
+import com.safa.loanapi.installment.InstallmentService;
+import com.safa.loanapi.installment.dao.Installment;
+import com.safa.loanapi.loan.LoanService;
+import com.safa.loanapi.loan.dao.Loan;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.util.AopTestUtils;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.time.Clock;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Checks that the summaries maintained by loan originations and payments match the customers' loans.
+ */
+@SpringBootTest(properties = {"penalty.accrual.enabled=false", "spring.jpa.show-sql=false"})
+@WithMockCustomUser(id = 1L, role = "ROLE_ADMIN")
+class CustomerSummaryServiceTests {
+
+    @Autowired
+    private CustomerSummaryService customerSummaryService;
+
+    @Autowired
+    private CustomerService customerService;
+
+    @Autowired
+    private LoanService loanService;
+
+    @Autowired
+    private InstallmentService installmentService;
+
+    @Autowired
+    private InstallmentRepository installmentRepository;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    private long customerID;
+
+    @BeforeEach
+    void setUp() {
+        CreateCustomer req = new CreateCustomer();
+        req.setName("Summary");
+        req.setSurname("Test");
+        req.setUsername("summary-" + UUID.randomUUID());
+        req.setPassword("secret");
+        req.setRole(Customer.Role.CUSTOMER);
+        req.setCreditLimit(100000.0);
+        customerID = customerService.createCustomer(req).getId();
+    }
+
+    @Test
+    void GetSummary_WhenLoansAreCreatedThenShouldAddTheirPrincipal() {
+        loanService.createLoan(customerID, 1000, 0.1, 6);
+        loanService.createLoan(customerID, 2000.5, 0.2, 12);
+
+        CustomerSummaryView summary = customerSummaryService.getSummary(customerID);
+
+        assertEquals(new BigDecimal("3000.50"), summary.getOutstandingPrincipal());
+        assertEquals(2, summary.getOpenLoans());
+        assertEquals(0, summary.getOverdueInstallments());
+        assertEquals(LocalDate.now().withDayOfMonth(1).plusMonths(1), summary.getNextDueDate());
+    }
+
+    @Test
+    void GetSummary_WhenInstallmentsArePaidThenShouldMatchTheUnpaidInstallments() {
+        Loan loan = loanService.createLoan(customerID, 1000, 0.1, 6);
+        customerSummaryService.getSummary(customerID);
+
+        installmentService.payInstallment(customerID, loan.getId(), 250);
+
+        List<Installment> unpaid = installmentRepository.findAllByLoanIdAndIsPaidOrderByDueDateAsc(loan.getId(), false);
+        CustomerSummaryView summary = customerSummaryService.getSummary(customerID);
+        assertEquals(unpaid.stream().map(Installment::getAmount).reduce(BigDecimal.ZERO, BigDecimal::add), summary.getOutstandingPrincipal());
+        assertEquals(1, summary.getOpenLoans());
+        assertEquals(unpaid.get(0).getDueDate(), summary.getNextDueDate());
+    }
+
+    @Test
+    void GetSummary_WhenLastInstallmentIsPaidThenLoanShouldNotBeOpen() {
+        Loan loan = loanService.createLoan(customerID, 1000, 0.1, 3);
+
+        installmentService.payInstallment(customerID, loan.getId(), 10000);
+
+        CustomerSummaryView summary = customerSummaryService.getSummary(customerID);
+        assertEquals(0, summary.getOutstandingPrincipal().compareTo(BigDecimal.ZERO));
+        assertEquals(0, summary.getOpenLoans());
+        assertNull(summary.getNextDueDate());
+    }
+
+    @Test
+    void GetSummary_WhenTransactionRollsBackThenShouldNotChange() {
+        loanService.createLoan(customerID, 1000, 0.1, 6);
+
+        assertThrows(IllegalStateException.class, () -> transactionTemplate.executeWithoutResult(status -> {
+            loanService.createLoan(customerID, 500, 0.1, 6);
+            throw new IllegalStateException("rolled back");
+        }));
+
+        CustomerSummaryView summary = customerSummaryService.getSummary(customerID);
+        assertEquals(new BigDecimal("1000.00"), summary.getOutstandingPrincipal());
+        assertEquals(1, summary.getOpenLoans());
+    }
+
+    @Test
+    void RefreshOverdue_WhenInstallmentsBecomeOverdueThenShouldCountThem() {
+        LocalDate today = LocalDate.now();
+        Loan loan = loanService.createLoan(customerID, 1000, 0.1, 6);
+        assertEquals(0, customerSummaryService.getSummary(customerID).getOverdueInstallments());
+
+        // Two installments are overdue once their due dates have passed
+        customerSummaryService.refreshOverdue(installmentRepository.findAllByLoanId(loan.getId()).stream()
+                .map(Installment::getDueDate).sorted().skip(1).findFirst().orElseThrow().plusDays(1));
+        assertEquals(2, customerSummaryService.getSummary(customerID).getOverdueInstallments());
+
+        customerSummaryService.refreshOverdue(today);
+        assertEquals(0, customerSummaryService.getSummary(customerID).getOverdueInstallments());
+    }
+
+    @Test
+    void InstallmentsPaid_WhenOverdueInstallmentsArePaidThenShouldSubtractThem() {
+        Loan loan = loanService.createLoan(customerID, 1000, 0.1, 6);
+        List<Installment> installments = installmentRepository.findAllByLoanIdAndIsPaidOrderByDueDateAsc(loan.getId(), false);
+        LocalDate today = installments.get(2).getDueDate().plusDays(1);
+        customerSummaryService.refreshOverdue(today);
+        assertEquals(3, customerSummaryService.getSummary(customerID).getOverdueInstallments());
+
+        // Only the change is applied, two of the three overdue installments are paid
+        customerSummaryService.installmentsPaid(customerID, installments.subList(0, 2), today, false);
+
+        CustomerSummaryView summary = customerSummaryService.getSummary(customerID);
+        assertEquals(1, summary.getOverdueInstallments());
+        assertEquals(new BigDecimal("1000.00").subtract(installments.get(0).getAmount()).subtract(installments.get(1).getAmount()),
+                summary.getOutstandingPrincipal());
+    }
+
+    @Test
+    void RefreshOverdue_WhenSummariesSpanManyChunksThenShouldRefreshEveryOne() {
+        Loan loan = loanService.createLoan(customerID, 1000, 0.1, 6);
+        LocalDate today = installmentRepository.findAllByLoanId(loan.getId()).stream()
+                .map(Installment::getDueDate).min(LocalDate::compareTo).orElseThrow().plusDays(1);
+        int summaries = customerSummaryService.refreshOverdue(LocalDate.now());
+
+        ReflectionTestUtils.setField(customerSummaryService, "refreshChunkSize", 2);
+        try {
+            assertEquals(summaries, customerSummaryService.refreshOverdue(today));
+        } finally {
+            ReflectionTestUtils.setField(customerSummaryService, "refreshChunkSize", 1000);
+        }
+        assertEquals(1, customerSummaryService.getSummary(customerID).getOverdueInstallments());
+    }
+
+    @Test
+    void GetSummary_WhenSummaryIsBuiltFromTheLoansThenShouldCountOverdueInstallmentsOnTheDateOfTheClock() {
+        Loan loan = loanService.createLoan(customerID, 1000, 0.1, 6);
+        jdbcTemplate.update("delete from customer_summary where customer_id = ?", customerID);
+        LocalDate today = installmentRepository.findAllByLoanIdAndIsPaidOrderByDueDateAsc(loan.getId(), false).get(1).getDueDate().plusDays(1);
+        CustomerSummaryService target = AopTestUtils.getTargetObject(customerSummaryService);
+        Clock clock = (Clock) ReflectionTestUtils.getField(target, "clock");
+        ReflectionTestUtils.setField(target, "clock", Clock.fixed(today.atStartOfDay(ZoneOffset.UTC).toInstant(), ZoneOffset.UTC));
+        try {
+            assertEquals(2, customerSummaryService.getSummary(customerID).getOverdueInstallments());
+        } finally {
+            ReflectionTestUtils.setField(target, "clock", clock);
+        }
+    }
+
+    @Test
+    void GetSummary_WhenCustomerNotFoundThenShouldThrowCustomerNotFoundException() {
+        assertThrows(CustomerNotFoundException.class, () -> customerSummaryService.getSummary(Long.MAX_VALUE));
+    }
+}
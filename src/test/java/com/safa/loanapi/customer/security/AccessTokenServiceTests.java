@@ -0,0 +1,92 @@
+package com.safa.loanapi.customer.security;
+
+import com.safa.loanapi.customer.dto.AccessToken;
+import org.junit.jupiter.api.Test;
+import org.springframework.security.authentication.BadCredentialsException;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AccessTokenServiceTests {
+    private static final Instant NOW = Instant.parse("2024-12-01T10:00:00Z");
+
+    private final AccessTokenService accessTokenService = service("secret", NOW);
+
+    @Test
+    void Verify_WhenTokenIsValidThenItShouldReturnTheUserItWasIssuedFor() {
+        AccessToken token = accessTokenService.issue(user(2L, "safa:yildirim", "ROLE_CUSTOMER"));
+
+        CustomUserDetails user = accessTokenService.verify(token.getAccessToken());
+
+        assertEquals("Bearer", token.getTokenType());
+        assertEquals(900, token.getExpiresIn());
+        assertEquals(2L, user.getId());
+        assertEquals("safa:yildirim", user.getUsername());
+        assertNull(user.getPassword());
+        assertEquals("ROLE_CUSTOMER", user.getAuthorities().iterator().next().getAuthority());
+    }
+
+    @Test
+    void Verify_WhenTokenIsTamperedOrSignedWithAnotherKeyThenItShouldBeRejected() {
+        String token = accessTokenService.issue(user(2L, "safa", "ROLE_CUSTOMER")).getAccessToken();
+        String adminToken = accessTokenService.issue(user(2L, "safa", "ROLE_ADMIN")).getAccessToken();
+
+        // Payload of an admin token with the signature of a customer token
+        String forged = adminToken.substring(0, adminToken.indexOf('.')) + token.substring(token.indexOf('.'));
+
+        assertThrows(BadCredentialsException.class, () -> accessTokenService.verify(forged));
+        assertThrows(BadCredentialsException.class, () -> service("other", NOW).verify(token));
+        assertThrows(BadCredentialsException.class, () -> accessTokenService.verify("not-a-token"));
+        assertThrows(BadCredentialsException.class, () -> accessTokenService.verify("a.b.c"));
+    }
+
+    @Test
+    void Verify_WhenTokenIsExpiredThenItShouldBeRejected() {
+        String token = accessTokenService.issue(user(2L, "safa", "ROLE_CUSTOMER")).getAccessToken();
+
+        assertDoesNotThrow(() -> service("secret", NOW.plusSeconds(899)).verify(token));
+        assertThrows(BadCredentialsException.class, () -> service("secret", NOW.plusSeconds(900)).verify(token));
+    }
+
+    @Test
+    void Verify_WhenCalledFromManyThreadsThenEveryTokenShouldBeVerified() throws Exception {
+        List<String> tokens = new ArrayList<>();
+        for (long id = 1; id <= 100; id++) {
+            tokens.add(accessTokenService.issue(user(id, "user-" + id, "ROLE_CUSTOMER")).getAccessToken());
+        }
+
+        // Many more threads than pooled MACs, every thread verifies a token of another user
+        List<Future<CustomUserDetails>> verified = new ArrayList<>();
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int i = 0; i < 10_000; i++) {
+                String token = tokens.get(i % tokens.size());
+                verified.add(executor.submit(() -> accessTokenService.verify(token)));
+            }
+        }
+
+        for (int i = 0; i < verified.size(); i++) {
+            assertEquals(i % tokens.size() + 1, verified.get(i).get().getId());
+        }
+    }
+
+    private AccessTokenService service(String secret, Instant now) {
+        return new AccessTokenService(secret, Duration.ofMinutes(15), Clock.fixed(now, ZoneOffset.UTC));
+    }
+
+    private CustomUserDetails user(Long id, String username, String role) {
+        return new CustomUserDetails(id, username, "encoded",
+                Collections.<GrantedAuthority>singleton(new SimpleGrantedAuthority(role)));
+    }
+}
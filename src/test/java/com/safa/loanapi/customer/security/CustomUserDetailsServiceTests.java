@@ -0,0 +1,75 @@
+package com.safa.loanapi.customer.security;
+
+import com.safa.loanapi.customer.CustomerRepository;
+import com.safa.loanapi.customer.dao.Customer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.security.core.userdetails.UsernameNotFoundException;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.Duration;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class CustomUserDetailsServiceTests {
+
+    @InjectMocks
+    private CustomUserDetailsService customUserDetailsService;
+
+    @Mock
+    private CustomerRepository customerRepository;
+
+    private CustomUserDetailsCache userDetailsCache;
+
+    @BeforeEach
+    void setUp() {
+        userDetailsCache = new CustomUserDetailsCache(100, Duration.ofMinutes(5), new SimpleMeterRegistry());
+        ReflectionTestUtils.setField(customUserDetailsService, "userDetailsCache", userDetailsCache);
+    }
+
+    @Test
+    void LoadUserByUsername_WhenUserIsCachedThenDatabaseShouldNotBeQueriedAgain() {
+        when(customerRepository.findByUsername("safa")).thenReturn(Optional.of(customer()));
+
+        UserDetails first = customUserDetailsService.loadUserByUsername("safa");
+        UserDetails second = customUserDetailsService.loadUserByUsername("safa");
+
+        assertSame(first, second);
+        assertEquals(2L, ((CustomUserDetails) second).getId());
+        verify(customerRepository, times(1)).findByUsername("safa");
+        assertEquals(1, userDetailsCache.stats().hitCount());
+        assertEquals(1, userDetailsCache.stats().missCount());
+    }
+
+    @Test
+    void LoadUserByUsername_WhenUserIsInvalidatedOrMissingThenItShouldBeLoadedAgain() {
+        when(customerRepository.findByUsername("safa")).thenReturn(Optional.empty(), Optional.of(customer()));
+
+        // Unknown usernames are not cached, the customer may be created right after
+        assertThrows(UsernameNotFoundException.class, () -> customUserDetailsService.loadUserByUsername("safa"));
+        customUserDetailsService.loadUserByUsername("safa");
+
+        userDetailsCache.invalidate("safa");
+        customUserDetailsService.loadUserByUsername("safa");
+
+        verify(customerRepository, times(3)).findByUsername("safa");
+    }
+
+    private Customer customer() {
+        Customer customer = new Customer();
+        customer.setId(2L);
+        customer.setUsername("safa");
+        customer.setPassword("encoded");
+        customer.setRole(Customer.Role.CUSTOMER);
+        return customer;
+    }
+}
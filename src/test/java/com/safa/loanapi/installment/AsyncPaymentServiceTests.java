@@ -0,0 +1,221 @@
+package com.safa.loanapi.installment;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.safa.loanapi.exception.LoanNotFoundException;
+import com.safa.loanapi.exception.PaymentNotFoundException;
+import com.safa.loanapi.exception.PaymentQueueFullException;
+import com.safa.loanapi.installment.dao.AsyncPayment;
+import com.safa.loanapi.installment.dto.PaymentStatus;
+import com.safa.loanapi.loan.dto.LoanPaymentInfo;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.math.BigDecimal;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class AsyncPaymentServiceTests {
+
+    private static final Instant NOW = Instant.parse("2025-01-01T10:00:00Z");
+
+    @Mock
+    private InstallmentService installmentService;
+
+    @Mock
+    private AsyncPaymentRepository asyncPaymentRepository;
+
+    private final ObjectMapper objectMapper = new ObjectMapper().findAndRegisterModules();
+
+    private SimpleMeterRegistry meterRegistry;
+
+    private AsyncPaymentService asyncPaymentService;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        asyncPaymentService = service(Duration.ofSeconds(30));
+    }
+
+    @AfterEach
+    void tearDown() throws InterruptedException {
+        asyncPaymentService.shutdown();
+    }
+
+    @Test
+    void Submit_WhenPaymentIsProcessedThenStatusShouldBeCompletedWithTheResult() {
+        LoanPaymentInfo info = new LoanPaymentInfo();
+        info.setTotalAmountSpent(450.0);
+        when(installmentService.payInstallment(2L, 1L, 500.0)).thenReturn(info);
+
+        PaymentStatus submitted = asyncPaymentService.submit(2L, 1L, 500.0);
+        assertEquals(PaymentStatus.State.PENDING, submitted.getStatus());
+
+        PaymentStatus status = asyncPaymentService.getStatus(2L, 1L, submitted.getPaymentId(), Duration.ofSeconds(5)).join();
+        assertEquals(PaymentStatus.State.COMPLETED, status.getStatus());
+        assertEquals(info, status.getResult());
+        assertNotNull(status.getCompletedAt());
+
+        // Stored as pending before it was queued, then with its result
+        ArgumentCaptor<AsyncPayment> stored = ArgumentCaptor.forClass(AsyncPayment.class);
+        verify(asyncPaymentRepository, times(2)).save(stored.capture());
+        assertEquals(PaymentStatus.State.PENDING, stored.getAllValues().get(0).getStatus());
+        assertEquals(new BigDecimal("500.00"), stored.getAllValues().get(0).getAmount());
+        assertEquals(PaymentStatus.State.COMPLETED, stored.getAllValues().get(1).getStatus());
+        assertNotNull(stored.getAllValues().get(1).getResult());
+    }
+
+    @Test
+    void Purge_WhenPaymentsAreOlderThanTheRetentionThenTheyShouldBeDeleted() {
+        PaymentStatus submitted = asyncPaymentService.submit(2L, 1L, 500.0);
+
+        asyncPaymentService.purge();
+
+        assertEquals(LocalDateTime.ofInstant(NOW, ZoneOffset.UTC), submitted.getSubmittedAt());
+        verify(asyncPaymentRepository).deleteSubmittedBefore(LocalDateTime.ofInstant(NOW, ZoneOffset.UTC).minusHours(1));
+    }
+
+    @Test
+    void GetStatus_WhenPaymentWasSubmittedBeforeARestartThenShouldReturnTheStoredStatus() throws Exception {
+        LoanPaymentInfo info = new LoanPaymentInfo();
+        info.setTotalAmountSpent(450.0);
+        info.setLoanPaidCompletely(true);
+        LocalDateTime submittedAt = LocalDateTime.of(2025, 1, 1, 10, 0);
+        when(asyncPaymentRepository.findById("abc")).thenReturn(Optional.of(new AsyncPayment("abc", 2L, 1L, new BigDecimal("500.00"),
+                PaymentStatus.State.COMPLETED, submittedAt, submittedAt.plusSeconds(1), objectMapper.writeValueAsString(info), null)));
+
+        PaymentStatus status = asyncPaymentService.getStatus(2L, 1L, "abc", Duration.ofSeconds(5)).join();
+
+        assertEquals(PaymentStatus.State.COMPLETED, status.getStatus());
+        assertEquals(info, status.getResult());
+        assertEquals(submittedAt, status.getSubmittedAt());
+        assertThrows(PaymentNotFoundException.class, () -> asyncPaymentService.getStatus(3L, 1L, "abc", Duration.ZERO));
+    }
+
+    @Test
+    void Shutdown_WhenPaymentsAreStillQueuedThenTheyShouldBeStoredAsFailed() throws InterruptedException {
+        AsyncPaymentService impatient = service(Duration.ofMillis(50));
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        when(installmentService.payInstallment(eq(2L), eq(1L), anyDouble())).thenAnswer(invocation -> {
+            started.countDown();
+            release.await();
+            return new LoanPaymentInfo();
+        });
+
+        PaymentStatus running = impatient.submit(2L, 1L, 100.0);
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        PaymentStatus queued = impatient.submit(2L, 1L, 200.0);
+
+        impatient.shutdown();
+
+        PaymentStatus dropped = impatient.getStatus(2L, 1L, queued.getPaymentId(), Duration.ZERO).join();
+        assertEquals(PaymentStatus.State.FAILED, dropped.getStatus());
+        assertEquals(AsyncPaymentService.NOT_PROCESSED, dropped.getError());
+        verify(asyncPaymentRepository).save(argThat(payment -> payment.getId().equals(queued.getPaymentId())
+                && payment.getStatus() == PaymentStatus.State.FAILED));
+
+        // The running payment is left to finish
+        release.countDown();
+        assertEquals(PaymentStatus.State.COMPLETED,
+                impatient.getStatus(2L, 1L, running.getPaymentId(), Duration.ofSeconds(5)).join().getStatus());
+    }
+
+    @Test
+    void Submit_WhenPaymentFailsThenStatusShouldBeFailedWithTheError() {
+        when(installmentService.payInstallment(2L, 1L, 500.0)).thenThrow(new LoanNotFoundException(1L));
+
+        PaymentStatus submitted = asyncPaymentService.submit(2L, 1L, 500.0);
+
+        PaymentStatus status = asyncPaymentService.getStatus(2L, 1L, submitted.getPaymentId(), Duration.ofSeconds(5)).join();
+        assertEquals(PaymentStatus.State.FAILED, status.getStatus());
+        assertNull(status.getResult());
+        assertNotNull(status.getError());
+    }
+
+    @Test
+    void Submit_WhenLaneIsFullThenShouldThrowPaymentQueueFullException() throws InterruptedException {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        when(installmentService.payInstallment(eq(2L), eq(1L), anyDouble())).thenAnswer(invocation -> {
+            started.countDown();
+            release.await();
+            return new LoanPaymentInfo();
+        });
+
+        // One payment is processed and two fill the lane of the loan
+        asyncPaymentService.submit(2L, 1L, 100.0);
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        asyncPaymentService.submit(2L, 1L, 100.0);
+        asyncPaymentService.submit(2L, 1L, 100.0);
+        assertEquals(2, meterRegistry.get("payments.async.queued").gauge().value());
+
+        assertThrows(PaymentQueueFullException.class, () -> asyncPaymentService.submit(2L, 1L, 100.0));
+        verify(asyncPaymentRepository).deleteById(anyString());
+        release.countDown();
+    }
+
+    @Test
+    void Submit_WhenSeveralPaymentsOfALoanThenShouldBeProcessedInSubmissionOrder() {
+        List<Double> processed = Collections.synchronizedList(new ArrayList<>());
+        when(installmentService.payInstallment(eq(2L), eq(1L), anyDouble())).thenAnswer(invocation -> {
+            processed.add(invocation.getArgument(2));
+            return new LoanPaymentInfo();
+        });
+
+        asyncPaymentService.submit(2L, 1L, 1.0);
+        asyncPaymentService.submit(2L, 1L, 2.0);
+        PaymentStatus last = asyncPaymentService.submit(2L, 1L, 3.0);
+        asyncPaymentService.getStatus(2L, 1L, last.getPaymentId(), Duration.ofSeconds(5)).join();
+
+        assertEquals(List.of(1.0, 2.0, 3.0), processed);
+    }
+
+    @Test
+    void GetStatus_WhenPaymentIsStillPendingThenShouldReturnPendingAfterTheWait() throws InterruptedException {
+        CountDownLatch release = new CountDownLatch(1);
+        when(installmentService.payInstallment(2L, 1L, 500.0)).thenAnswer(invocation -> {
+            release.await();
+            return new LoanPaymentInfo();
+        });
+
+        PaymentStatus submitted = asyncPaymentService.submit(2L, 1L, 500.0);
+
+        assertEquals(PaymentStatus.State.PENDING, asyncPaymentService.getStatus(2L, 1L, submitted.getPaymentId(), Duration.ZERO).join().getStatus());
+        assertEquals(PaymentStatus.State.PENDING, asyncPaymentService.getStatus(2L, 1L, submitted.getPaymentId(), Duration.ofMillis(50)).join().getStatus());
+        release.countDown();
+    }
+
+    @Test
+    void GetStatus_WhenPaymentBelongsToAnotherLoanThenShouldThrowPaymentNotFoundException() {
+        PaymentStatus submitted = asyncPaymentService.submit(2L, 1L, 500.0);
+
+        assertThrows(PaymentNotFoundException.class, () -> asyncPaymentService.getStatus(2L, 7L, submitted.getPaymentId(), Duration.ZERO));
+        assertThrows(PaymentNotFoundException.class, () -> asyncPaymentService.getStatus(3L, 1L, submitted.getPaymentId(), Duration.ZERO));
+        assertThrows(PaymentNotFoundException.class, () -> asyncPaymentService.getStatus(2L, 1L, "unknown", Duration.ZERO));
+    }
+
+    private AsyncPaymentService service(Duration shutdownTimeout) {
+        return new AsyncPaymentService(installmentService, asyncPaymentRepository, objectMapper, 2, 4, Duration.ofHours(1), 1000,
+                shutdownTimeout, Clock.fixed(NOW, ZoneOffset.UTC), meterRegistry);
+    }
+}
@@ -1,27 +1,39 @@
 package com.safa.loanapi.installment;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.safa.loanapi.common.idempotency.IdempotencyStore;
 import com.safa.loanapi.installment.dao.Installment;
+import com.safa.loanapi.installment.dto.InstallmentView;
 import com.safa.loanapi.installment.dto.PayInstallment;
+import com.safa.loanapi.installment.dto.PaymentQuote;
+import com.safa.loanapi.installment.dto.PaymentStatus;
 import com.safa.loanapi.loan.dto.LoanPaymentInfo;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
+import org.mockito.Spy;
 import org.mockito.junit.jupiter.MockitoExtension;
 import org.springframework.http.MediaType;
 import org.springframework.test.web.servlet.MockMvc;
 import org.springframework.test.web.servlet.setup.MockMvcBuilders;
 
 import java.math.BigDecimal;
+import java.time.Duration;
 import java.time.LocalDate;
+import java.time.LocalDateTime;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 import static org.mockito.Mockito.*;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
 @ExtendWith(MockitoExtension.class)
@@ -30,6 +42,15 @@ class InstallmentControllerTests {
     @Mock
     private InstallmentService installmentService;
 
+    @Mock
+    private AsyncPaymentService asyncPaymentService;
+
+    @Mock
+    private PaymentQuoteService paymentQuoteService;
+
+    @Spy
+    private IdempotencyStore idempotencyStore = new IdempotencyStore(100, Duration.ofMinutes(1), new SimpleMeterRegistry());
+
     @InjectMocks
     private InstallmentController installmentController;
 
@@ -51,7 +72,7 @@ class InstallmentControllerTests {
                 new Installment(loanId, BigDecimal.valueOf(500.0), BigDecimal.valueOf(500.0), LocalDate.now().plusMonths(1))
         );
 
-        when(installmentService.listInstallments(customerId, loanId)).thenReturn(mockInstallments);
+        when(installmentService.listInstallments(customerId, loanId)).thenReturn(InstallmentView.of(mockInstallments));
 
         mockMvc.perform(get("/customers/2/loans/{loan_id}/installments", loanId)
                         .accept(MediaType.APPLICATION_JSON))
@@ -75,7 +96,7 @@ class InstallmentControllerTests {
         request.setAmount(500.0);
 
         LoanPaymentInfo mockPaymentInfo = new LoanPaymentInfo();
-        mockPaymentInfo.setPaidInstallments(List.of(paid));
+        mockPaymentInfo.setPaidInstallments(List.of(InstallmentView.of(paid)));
         mockPaymentInfo.setTotalAmountSpent(450.0);
         mockPaymentInfo.setLoanPaidCompletely(true);
 
@@ -94,4 +115,58 @@ class InstallmentControllerTests {
 
         verify(installmentService, times(1)).payInstallment(customerId, loanId, request.getAmount());
     }
+
+    @Test
+    void SubmitPayment_WhenAsyncThenShouldReturnAcceptedWithPaymentLocation() throws Exception {
+        PayInstallment request = new PayInstallment();
+        request.setAmount(500.0);
+
+        PaymentStatus pending = new PaymentStatus("abc", 1L, PaymentStatus.State.PENDING, LocalDateTime.now(), null, null, null);
+        when(asyncPaymentService.submit(2L, 1L, 500.0)).thenReturn(pending);
+
+        mockMvc.perform(post("/customers/2/loans/1/payment")
+                        .param("async", "true")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(request)))
+                .andExpect(status().isAccepted())
+                .andExpect(header().string("Location", "/customers/2/loans/1/payments/abc"))
+                .andExpect(jsonPath("$.paymentId").value("abc"))
+                .andExpect(jsonPath("$.status").value("PENDING"));
+
+        verify(installmentService, never()).payInstallment(anyLong(), anyLong(), anyDouble());
+    }
+
+    @Test
+    void GetPayment_WhenLongPollingThenShouldReturnTheCompletedPayment() throws Exception {
+        LoanPaymentInfo info = new LoanPaymentInfo();
+        info.setTotalAmountSpent(450.0);
+        PaymentStatus completed = new PaymentStatus("abc", 1L, PaymentStatus.State.COMPLETED, LocalDateTime.now(), LocalDateTime.now(), info, null);
+        when(asyncPaymentService.getStatus(2L, 1L, "abc", Duration.ofSeconds(10))).thenReturn(CompletableFuture.completedFuture(completed));
+
+        var result = mockMvc.perform(get("/customers/2/loans/1/payments/abc").param("wait", "10"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        mockMvc.perform(asyncDispatch(result))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.status").value("COMPLETED"))
+                .andExpect(jsonPath("$.result.totalAmountSpent").value(450.0));
+    }
+
+    @Test
+    void QuotePayment_WhenAmountIsGivenThenShouldReturnTheQuote() throws Exception {
+        PaymentQuote quote = new PaymentQuote();
+        quote.setLoanId(1L);
+        quote.setAmount(500.0);
+        quote.setTotalAmountSpent(450.0);
+        quote.setRemainingAmount(50.0);
+        when(paymentQuoteService.quote(2L, 1L, 500.0)).thenReturn(quote);
+
+        mockMvc.perform(get("/customers/2/loans/1/payment/quote").param("amount", "500"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.totalAmountSpent").value(450.0))
+                .andExpect(jsonPath("$.remainingAmount").value(50.0));
+
+        verify(installmentService, never()).payInstallment(anyLong(), anyLong(), anyDouble());
+    }
 }
@@ -1,11 +1,12 @@
 package com.safa.loanapi.installment;
 
 import com.safa.loanapi.WithMockCustomUser;
-import com.safa.loanapi.customer.CustomerRepository;
-import com.safa.loanapi.customer.dao.Customer;
+import com.safa.loanapi.customer.CreditLimitLedger;
+import com.safa.loanapi.customer.CustomerSummaryService;
 import com.safa.loanapi.exception.CustomerNotFoundException;
 import com.safa.loanapi.exception.LoanNotFoundException;
 import com.safa.loanapi.installment.dao.Installment;
+import com.safa.loanapi.installment.dto.InstallmentView;
 import com.safa.loanapi.loan.LoanRepository;
 import com.safa.loanapi.loan.dao.Loan;
 import com.safa.loanapi.loan.dto.LoanPaymentInfo;
@@ -18,7 +19,9 @@ import org.springframework.security.access.AccessDeniedException;
 import org.springframework.security.config.annotation.method.configuration.EnableMethodSecurity;
 
 import java.math.BigDecimal;
+import java.time.Clock;
 import java.time.LocalDate;
+import java.time.ZoneOffset;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Optional;
@@ -29,6 +32,8 @@ import static org.mockito.Mockito.*;
 @SpringBootTest
 @EnableMethodSecurity
 public class InstallmentServiceTests {
+    // Payments are made on the first of a month, so the discounts do not depend on the day the tests run
+    private static final LocalDate TODAY = LocalDate.of(2025, 1, 1);
 
     @Autowired
     private InstallmentService installmentService;
@@ -40,10 +45,18 @@ public class InstallmentServiceTests {
     private InstallmentRepository installmentRepository;
 
     @MockBean
-    private CustomerRepository customerRepository;
+    private CreditLimitLedger creditLimitLedger;
+
+    @MockBean
+    private CustomerSummaryService customerSummaryService;
+
+    @MockBean
+    private Clock clock;
 
     @BeforeEach
     public void setup() {
+        when(clock.getZone()).thenReturn(ZoneOffset.UTC);
+        when(clock.instant()).thenReturn(TODAY.atStartOfDay(ZoneOffset.UTC).toInstant());
     }
 
     @Test
@@ -57,13 +70,14 @@ public class InstallmentServiceTests {
         loan.setCustomerId(customerID);
         loan.setId(loanId);
         loan.setIsPaid(false);
+        loan.setUnpaidInstallments(4);
 
         Installment installment1 = new Installment();
         installment1.setId(1L);
         installment1.setLoanId(loanId);
         installment1.setAmount(BigDecimal.valueOf(100.00));
         installment1.setTotalAmount(BigDecimal.valueOf(105.00));
-        installment1.setDueDate(LocalDate.now().plusMonths(1).withDayOfMonth(1));
+        installment1.setDueDate(TODAY.plusMonths(1));
         installment1.setIsPaid(false);
 
         Installment installment2 = new Installment();
@@ -71,7 +85,7 @@ public class InstallmentServiceTests {
         installment2.setLoanId(loanId);
         installment2.setAmount(BigDecimal.valueOf(100.00));
         installment2.setTotalAmount(BigDecimal.valueOf(105.00));
-        installment2.setDueDate(LocalDate.now().plusMonths(2).withDayOfMonth(1));
+        installment2.setDueDate(TODAY.plusMonths(2));
         installment2.setIsPaid(false);
 
         Installment installment3 = new Installment();
@@ -79,7 +93,7 @@ public class InstallmentServiceTests {
         installment3.setLoanId(loanId);
         installment3.setAmount(BigDecimal.valueOf(100.00));
         installment3.setTotalAmount(BigDecimal.valueOf(105.00));
-        installment3.setDueDate(LocalDate.now().plusMonths(3).withDayOfMonth(1));
+        installment3.setDueDate(TODAY.plusMonths(3));
         installment3.setIsPaid(false);
 
         List<Installment> installments = new ArrayList<>();
@@ -87,29 +101,17 @@ public class InstallmentServiceTests {
         installments.add(installment2);
         installments.add(installment3);
 
-        loan.setInstallments(installments);
-
-        Customer customer = new Customer();
-        customer.setId(customerID);
-        customer.setUsername("customer1");
-
         when(loanRepository.findById(loanId)).thenReturn(Optional.of(loan));
-        when(customerRepository.findById(customerID)).thenReturn(Optional.of(customer));
-
-        List<Installment> unpaidInstallments = new ArrayList<>();
-        Installment unpaidInstallment = new Installment();
-        unpaidInstallment.setId(4L);
-        unpaidInstallments.add(unpaidInstallment);
-        when(installmentRepository.findAllByLoanIdAndIsPaidOrderByDueDateAsc(loanId, false)).thenReturn(unpaidInstallments);
+        when(installmentRepository.findPayableByLoanId(eq(loanId), any(LocalDate.class))).thenReturn(installments);
 
         LoanPaymentInfo info = installmentService.payInstallment(customerID, loanId, paymentAmount);
 
         assertEquals(3, info.getPaidInstallments().size());
         assertFalse(info.isLoanPaidCompletely());
 
-        verify(installmentRepository).save(installment1);
-        verify(installmentRepository).save(installment2);
-        verify(customerRepository).save(customer);
+        verify(installmentRepository).saveAll(List.of(installment1, installment2, installment3));
+        verify(installmentRepository, never()).findAllByLoanIdAndIsPaidOrderByDueDateAsc(anyLong(), anyBoolean());
+        verify(creditLimitLedger).release(eq(customerID), any(BigDecimal.class));
     }
 
     @Test
@@ -123,13 +125,14 @@ public class InstallmentServiceTests {
         loan.setCustomerId(customerID);
         loan.setId(loanId);
         loan.setIsPaid(false);
+        loan.setUnpaidInstallments(2);
 
         Installment installment1 = new Installment();
         installment1.setId(1L);
         installment1.setLoanId(loanId);
         installment1.setAmount(BigDecimal.valueOf(100.00));
         installment1.setTotalAmount(BigDecimal.valueOf(105.00));
-        installment1.setDueDate(LocalDate.now().plusMonths(1).withDayOfMonth(1));
+        installment1.setDueDate(TODAY.plusMonths(1));
         installment1.setIsPaid(false);
 
         Installment installment2 = new Installment();
@@ -137,32 +140,25 @@ public class InstallmentServiceTests {
         installment2.setLoanId(loanId);
         installment2.setAmount(BigDecimal.valueOf(100.00));
         installment2.setTotalAmount(BigDecimal.valueOf(105.00));
-        installment2.setDueDate(LocalDate.now().plusMonths(2).withDayOfMonth(1));
+        installment2.setDueDate(TODAY.plusMonths(2));
         installment2.setIsPaid(false);
 
         List<Installment> installments = new ArrayList<>();
         installments.add(installment1);
         installments.add(installment2);
 
-        loan.setInstallments(installments);
-
-        Customer customer = new Customer();
-        customer.setId(customerID);
-        customer.setUsername("customer1");
-
         when(loanRepository.findById(loanId)).thenReturn(Optional.of(loan));
-        when(customerRepository.findById(customerID)).thenReturn(Optional.of(customer));
-        when(installmentRepository.findAllByLoanIdAndIsPaidOrderByDueDateAsc(loanId, false)).thenReturn(new ArrayList<>());
+        when(installmentRepository.findPayableByLoanId(eq(loanId), any(LocalDate.class))).thenReturn(installments);
 
         LoanPaymentInfo info = installmentService.payInstallment(customerID, loanId, paymentAmount);
 
         assertEquals(2, info.getPaidInstallments().size());
         assertTrue(info.isLoanPaidCompletely());
 
-        verify(installmentRepository).save(installment1);
-        verify(installmentRepository).save(installment2);
+        verify(installmentRepository).saveAll(List.of(installment1, installment2));
         verify(loanRepository).save(loan);
-        verify(customerRepository).save(customer);
+        assertEquals(0, loan.getUnpaidInstallments());
+        verify(creditLimitLedger).release(customerID, BigDecimal.valueOf(200.0));
     }
 
     @Test
@@ -176,13 +172,14 @@ public class InstallmentServiceTests {
         loan.setCustomerId(customerID);
         loan.setId(loanId);
         loan.setIsPaid(false);
+        loan.setUnpaidInstallments(3);
 
         Installment installment1 = new Installment();
         installment1.setId(1L);
         installment1.setLoanId(loanId);
         installment1.setAmount(BigDecimal.valueOf(100.00));
         installment1.setTotalAmount(BigDecimal.valueOf(105.00));
-        installment1.setDueDate(LocalDate.now().minusMonths(1));
+        installment1.setDueDate(TODAY.minusMonths(1));
         installment1.setIsPaid(false);
 
         Installment installment2 = new Installment();
@@ -190,7 +187,7 @@ public class InstallmentServiceTests {
         installment2.setLoanId(loanId);
         installment2.setAmount(BigDecimal.valueOf(100.00));
         installment2.setTotalAmount(BigDecimal.valueOf(105.00));
-        installment2.setDueDate(LocalDate.now().plusMonths(2).withDayOfMonth(1));
+        installment2.setDueDate(TODAY.plusMonths(2));
         installment2.setIsPaid(false);
 
         Installment installment3 = new Installment();
@@ -198,36 +195,24 @@ public class InstallmentServiceTests {
         installment3.setLoanId(loanId);
         installment3.setAmount(BigDecimal.valueOf(100.00));
         installment3.setTotalAmount(BigDecimal.valueOf(105.00));
-        installment3.setDueDate(LocalDate.now().plusMonths(4).withDayOfMonth(1));
+        installment3.setDueDate(TODAY.plusMonths(4));
         installment3.setIsPaid(false);
 
         List<Installment> installments = new ArrayList<>();
         installments.add(installment1);
         installments.add(installment2);
 
-        loan.setInstallments(installments);
-
-        Customer customer = new Customer();
-        customer.setId(customerID);
-        customer.setUsername("customer1");
-
         when(loanRepository.findById(loanId)).thenReturn(Optional.of(loan));
-        when(customerRepository.findById(customerID)).thenReturn(Optional.of(customer));
-
-        List<Installment> unpaidInstallments = new ArrayList<>();
-        Installment unpaidInstallment = new Installment();
-        unpaidInstallment.setId(4L);
-        unpaidInstallments.add(unpaidInstallment);
-        when(installmentRepository.findAllByLoanIdAndIsPaidOrderByDueDateAsc(loanId, false)).thenReturn(unpaidInstallments);
+        when(installmentRepository.findPayableByLoanId(eq(loanId), any(LocalDate.class))).thenReturn(installments);
 
         LoanPaymentInfo info = installmentService.payInstallment(customerID, loanId, paymentAmount);
 
         assertEquals(2, info.getPaidInstallments().size());
         assertFalse(info.isLoanPaidCompletely());
 
-        verify(installmentRepository).save(installment1);
-        verify(installmentRepository).save(installment2);
-        verify(customerRepository).save(customer);
+        verify(installmentRepository).saveAll(List.of(installment1, installment2));
+        assertEquals(1, loan.getUnpaidInstallments());
+        verify(creditLimitLedger).release(customerID, BigDecimal.valueOf(200.0));
     }
 
     @Test
@@ -254,8 +239,10 @@ public class InstallmentServiceTests {
         loan.setId(loanId);
         loan.setIsPaid(false);
 
+        loan.setUnpaidInstallments(1);
+
         when(loanRepository.findById(loanId)).thenReturn(Optional.of(loan));
-        when(customerRepository.findById(customerID)).thenReturn(Optional.empty());
+        doThrow(new CustomerNotFoundException(customerID)).when(creditLimitLedger).release(eq(customerID), any(BigDecimal.class));
 
         assertThrows(CustomerNotFoundException.class, () -> installmentService.payInstallment(customerID, loanId, paymentAmount));
     }
@@ -272,14 +259,7 @@ public class InstallmentServiceTests {
         loan.setId(loanId);
         loan.setIsPaid(false);
 
-        Customer customer = new Customer();
-        customer.setId(customerID);
-        customer.setUsername("customer1");
-        customer.setCreditLimit(BigDecimal.valueOf(5000.0));
-        customer.setUsedCreditLimit(BigDecimal.valueOf(1000.0));
-
         when(loanRepository.findById(loanId)).thenReturn(Optional.of(loan));
-        when(customerRepository.findById(customerID)).thenReturn(Optional.of(customer));
 
         assertThrows(AccessDeniedException.class, () -> installmentService.payInstallment(customerID, loanId, paymentAmount));
     }
@@ -295,42 +275,29 @@ public class InstallmentServiceTests {
         loan.setCustomerId(customerID);
         loan.setId(loanId);
         loan.setIsPaid(false);
+        loan.setUnpaidInstallments(2);
 
         Installment installment1 = new Installment();
         installment1.setId(1L);
         installment1.setLoanId(loanId);
         installment1.setAmount(BigDecimal.valueOf(100.00));
         installment1.setTotalAmount(BigDecimal.valueOf(105.00));
-        installment1.setDueDate(LocalDate.now().minusMonths(1));
+        installment1.setDueDate(TODAY.minusMonths(1));
         installment1.setIsPaid(false);
 
         List<Installment> installments = new ArrayList<>();
         installments.add(installment1);
 
-        loan.setInstallments(installments);
-
-        Customer customer = new Customer();
-        customer.setId(customerID);
-        customer.setUsername("customer1");
-        customer.setCreditLimit(BigDecimal.valueOf(5000.0));
-        customer.setUsedCreditLimit(BigDecimal.valueOf(1000.0));
-
         when(loanRepository.findById(loanId)).thenReturn(Optional.of(loan));
-        when(customerRepository.findById(customerID)).thenReturn(Optional.of(customer));
-
-        List<Installment> unpaidInstallments = new ArrayList<>();
-        Installment unpaidInstallment = new Installment();
-        unpaidInstallment.setId(4L);
-        unpaidInstallments.add(unpaidInstallment);
-        when(installmentRepository.findAllByLoanIdAndIsPaidOrderByDueDateAsc(loanId, false)).thenReturn(unpaidInstallments);
+        when(installmentRepository.findPayableByLoanId(eq(loanId), any(LocalDate.class))).thenReturn(installments);
 
         LoanPaymentInfo info = installmentService.payInstallment(customerID, loanId, paymentAmount);
 
         assertEquals(1, info.getPaidInstallments().size());
         assertFalse(info.isLoanPaidCompletely());
 
-        verify(installmentRepository).save(installment1);
-        verify(customerRepository).save(customer);
+        verify(installmentRepository).saveAll(List.of(installment1));
+        verify(creditLimitLedger).release(customerID, BigDecimal.valueOf(100.0));
     }
 
     @Test
@@ -342,22 +309,22 @@ public class InstallmentServiceTests {
         installment1.setLoanId(loanID);
         installment1.setAmount(BigDecimal.valueOf(1500.0));
         installment1.setTotalAmount(BigDecimal.valueOf(2000.0));
-        installment1.setDueDate(LocalDate.now().plusMonths(1).withDayOfMonth(1));
+        installment1.setDueDate(TODAY.plusMonths(1));
 
         Installment installment2 = new Installment();
         installment2.setLoanId(loanID);
         installment2.setAmount(BigDecimal.valueOf(1500.0));
         installment2.setTotalAmount(BigDecimal.valueOf(2000.0));
-        installment2.setDueDate(LocalDate.now().plusMonths(2).withDayOfMonth(1));
+        installment2.setDueDate(TODAY.plusMonths(2));
 
         List<Installment> mockInstallments = List.of(installment1, installment2);
 
         Installment queryObject = new Installment();
         queryObject.setLoanId(loanID);
 
-        when(installmentRepository.findAllByLoanId(loanID)).thenReturn(mockInstallments);
+        when(installmentRepository.findViewsByLoanId(loanID)).thenReturn(InstallmentView.of(mockInstallments));
 
-        List<Installment> result = installmentService.listInstallments(customerID, loanID);
+        List<InstallmentView> result = installmentService.listInstallments(customerID, loanID);
 
         assertNotNull(result);
         assertEquals(2, result.size());
@@ -368,7 +335,7 @@ public class InstallmentServiceTests {
         assertEquals(BigDecimal.valueOf(1500.0), result.get(1).getAmount());
         assertEquals(BigDecimal.valueOf(2000.0), result.get(1).getTotalAmount());
 
-        verify(installmentRepository, times(1)).findAllByLoanId(loanID);
+        verify(installmentRepository, times(1)).findViewsByLoanId(loanID);
     }
 
     @Test
@@ -382,13 +349,13 @@ public class InstallmentServiceTests {
 
         List<Installment> mockInstallments = new ArrayList<>();
 
-        when(installmentRepository.findAllByLoanId(loanID)).thenReturn(mockInstallments);
+        when(installmentRepository.findViewsByLoanId(loanID)).thenReturn(InstallmentView.of(mockInstallments));
 
-        List<Installment> result = installmentService.listInstallments(customerID, loanID);
+        List<InstallmentView> result = installmentService.listInstallments(customerID, loanID);
 
         assertNotNull(result);
         assertEquals(0, result.size());
 
-        verify(installmentRepository, times(1)).findAllByLoanId(loanID);
+        verify(installmentRepository, times(1)).findViewsByLoanId(loanID);
     }
 }
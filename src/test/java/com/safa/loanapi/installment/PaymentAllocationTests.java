@@ -0,0 +1,71 @@
+package com.safa.loanapi.installment;
+
+import com.safa.loanapi.installment.dao.Installment;
+import com.safa.loanapi.installment.dto.QuotedInstallment;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PaymentAllocationTests {
+    private static final LocalDateTime NOW = LocalDateTime.of(2025, 1, 1, 10, 0);
+
+    @Test
+    void Pay_WhenAmountDoesNotCoverTheNextInstallmentThenShouldStopThere() {
+        Installment overdue = installment(1L, NOW.toLocalDate().minusDays(10));
+        Installment early = installment(2L, NOW.toLocalDate().plusDays(20));
+        Installment next = installment(3L, NOW.toLocalDate().plusMonths(2));
+
+        PaymentAllocation<Installment> allocation = PaymentAllocation.pay(List.of(overdue, early, next), 200.0, NOW);
+
+        // 100 + 1% penalty, then 100 - 2% discount, which leaves less than the third one costs
+        assertEquals(List.of(overdue, early), allocation.getPaid());
+        assertEquals(199.0, allocation.getTotalAmountSpent());
+        assertEquals(1.0, allocation.getRemainingAmount());
+        assertTrue(overdue.getIsPaid());
+        assertEquals(new BigDecimal("101.00"), overdue.getPaidAmount());
+        assertEquals(new BigDecimal("98.00"), early.getPaidAmount());
+        assertEquals(NOW, early.getPaymentDate());
+        assertFalse(next.getIsPaid());
+    }
+
+    @Test
+    void Allocate_WhenInstallmentsAreNotPayableThenShouldSkipThemWithoutChangingAnything() {
+        Installment paid = installment(1L, NOW.toLocalDate());
+        paid.setIsPaid(true);
+        Installment tooLate = installment(2L, NOW.toLocalDate().plusMonths(4));
+
+        PaymentAllocation<Installment> allocation = PaymentAllocation.allocate(List.of(paid, tooLate), 1000.0, NOW.toLocalDate());
+
+        assertTrue(allocation.getPaid().isEmpty());
+        assertEquals(1000.0, allocation.getRemainingAmount());
+        assertFalse(tooLate.getIsPaid());
+    }
+
+    @Test
+    void Allocate_WhenInstallmentsArePricedThenShouldSpendWhatPayingThemSpends() {
+        Installment first = installment(1L, NOW.toLocalDate().plusDays(5));
+        Installment second = installment(2L, NOW.toLocalDate().plusDays(35));
+        List<QuotedInstallment> quoted = List.of(first, second).stream()
+                .map(installment -> new QuotedInstallment(installment.getId(), installment.getDueDate(), installment.getTotalAmount(),
+                        InstallmentService.amountToPay(installment, NOW.toLocalDate())))
+                .toList();
+
+        PaymentAllocation<QuotedInstallment> quote = PaymentAllocation.allocate(quoted, QuotedInstallment::getAmountToPay, 180.0);
+        PaymentAllocation<Installment> payment = PaymentAllocation.pay(List.of(first, second), 180.0, NOW);
+
+        assertEquals(payment.getPaid().size(), quote.getPaid().size());
+        assertEquals(payment.getTotalAmountSpent(), quote.getTotalAmountSpent());
+        assertEquals(payment.getRemainingAmount(), quote.getRemainingAmount());
+    }
+
+    private Installment installment(Long id, LocalDate dueDate) {
+        Installment installment = new Installment(1L, BigDecimal.valueOf(90.0), BigDecimal.valueOf(100.0), dueDate);
+        installment.setId(id);
+        return installment;
+    }
+}
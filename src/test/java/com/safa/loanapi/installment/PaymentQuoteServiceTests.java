@@ -0,0 +1,109 @@
+package com.safa.loanapi.installment;
+
+import com.safa.loanapi.exception.LoanNotFoundException;
+import com.safa.loanapi.installment.dao.Installment;
+import com.safa.loanapi.installment.dto.PaymentQuote;
+import com.safa.loanapi.loan.LoanRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.math.BigDecimal;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class PaymentQuoteServiceTests {
+
+    @Mock
+    private LoanRepository loanRepository;
+
+    @Mock
+    private InstallmentRepository installmentRepository;
+
+    private PaymentQuoteService paymentQuoteService;
+
+    @BeforeEach
+    void setUp() {
+        paymentQuoteService = new PaymentQuoteService(loanRepository, installmentRepository, 100, Duration.ofHours(1), new SimpleMeterRegistry(), Clock.systemDefaultZone());
+    }
+
+    @Test
+    void Quote_WhenAmountCoversSomeInstallmentsThenShouldQuoteThemWithTheirDiscount() {
+        LocalDate today = LocalDate.now();
+        Installment first = installment(1L, today.plusDays(10));
+        Installment second = installment(2L, today.plusDays(40));
+        Installment third = installment(3L, today.plusMonths(5));
+        when(loanRepository.findVersionById(1L)).thenReturn(Optional.of(0L));
+        when(installmentRepository.findAllByLoanIdAndIsPaidOrderByDueDateAsc(1L, false)).thenReturn(List.of(first, second, third));
+
+        PaymentQuote quote = paymentQuoteService.quote(5L, 1L, 150.0);
+
+        // The first installment is 1% off, the second one is not covered by the remaining amount
+        assertEquals(1, quote.getInstallments().size());
+        assertEquals(1L, quote.getInstallments().get(0).getId());
+        assertEquals(InstallmentService.amountToPay(first, today), quote.getInstallments().get(0).getAmountToPay());
+        assertEquals(99.0, quote.getTotalAmountSpent());
+        assertEquals(51.0, quote.getRemainingAmount());
+        assertFalse(quote.isLoanPaidCompletely());
+        verify(installmentRepository, never()).save(any());
+    }
+
+    @Test
+    void Quote_WhenAllUnpaidInstallmentsAreCoveredThenLoanShouldBePaidCompletely() {
+        LocalDate today = LocalDate.now();
+        when(loanRepository.findVersionById(1L)).thenReturn(Optional.of(0L));
+        when(installmentRepository.findAllByLoanIdAndIsPaidOrderByDueDateAsc(1L, false))
+                .thenReturn(List.of(installment(1L, today), installment(2L, today.plusMonths(1))));
+
+        PaymentQuote quote = paymentQuoteService.quote(5L, 1L, 1000.0);
+
+        assertEquals(2, quote.getInstallments().size());
+        assertTrue(quote.isLoanPaidCompletely());
+    }
+
+    @Test
+    void Quote_WhenLoanVersionIsUnchangedThenShouldNotReadTheInstallmentsAgain() {
+        when(loanRepository.findVersionById(1L)).thenReturn(Optional.of(3L));
+        when(installmentRepository.findAllByLoanIdAndIsPaidOrderByDueDateAsc(1L, false))
+                .thenReturn(List.of(installment(1L, LocalDate.now())));
+
+        paymentQuoteService.quote(5L, 1L, 100.0);
+        paymentQuoteService.quote(5L, 1L, 50.0);
+
+        verify(installmentRepository, times(1)).findAllByLoanIdAndIsPaidOrderByDueDateAsc(1L, false);
+    }
+
+    @Test
+    void Quote_WhenLoanWasPaidSinceTheLastQuoteThenShouldPriceItAgain() {
+        when(loanRepository.findVersionById(1L)).thenReturn(Optional.of(3L), Optional.of(4L));
+        when(installmentRepository.findAllByLoanIdAndIsPaidOrderByDueDateAsc(1L, false))
+                .thenReturn(List.of(installment(1L, LocalDate.now()), installment(2L, LocalDate.now().plusMonths(1))),
+                        List.of(installment(2L, LocalDate.now().plusMonths(1))));
+
+        assertEquals(2, paymentQuoteService.quote(5L, 1L, 1000.0).getInstallments().size());
+        assertEquals(1, paymentQuoteService.quote(5L, 1L, 1000.0).getInstallments().size());
+    }
+
+    @Test
+    void Quote_WhenLoanNotFoundThenShouldThrowLoanNotFoundException() {
+        when(loanRepository.findVersionById(1L)).thenReturn(Optional.empty());
+
+        assertThrows(LoanNotFoundException.class, () -> paymentQuoteService.quote(5L, 1L, 100.0));
+    }
+
+    private static Installment installment(Long id, LocalDate dueDate) {
+        Installment installment = new Installment(1L, BigDecimal.valueOf(100.00), BigDecimal.valueOf(100.00), dueDate);
+        installment.setId(id);
+        return installment;
+    }
+}
@@ -0,0 +1,204 @@
+package com.safa.loanapi.loadtest;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Drives a running application with a weighted mix of loan requests and records their latencies.
+ *
+ * <p>Customers are created through {@code POST /customers}, log in for an access token and take a first loan. Every
+ * client is a virtual thread that sends one request at a time for random customers, so the number of clients is the
+ * number of concurrent connections.</p>
+ */
+class LoadDriver {
+    private static final int RECENT_LOANS = 16;
+
+    private final String baseUri;
+    private final ObjectMapper objectMapper;
+    private final HttpClient client = HttpClient.newBuilder()
+            .version(HttpClient.Version.HTTP_1_1)
+            .connectTimeout(Duration.ofSeconds(5))
+            .build();
+
+    LoadDriver(int port, ObjectMapper objectMapper) {
+        this.baseUri = "http://localhost:" + port;
+        this.objectMapper = objectMapper;
+    }
+
+    enum Endpoint {
+        CREATE_LOAN("create-loan", 20),
+        LIST_INSTALLMENTS("list-installments", 60),
+        PAY_INSTALLMENT("pay-installment", 20);
+
+        final String key;
+        final int defaultWeight;
+
+        Endpoint(String key, int defaultWeight) {
+            this.key = key;
+            this.defaultWeight = defaultWeight;
+        }
+    }
+
+    /**
+     * A seeded customer with its access token and the IDs of its most recent loans.
+     */
+    record Customer(long id, String token, AtomicLongArray recentLoans, AtomicLong loanCount) {
+
+        void addLoan(long loanId) {
+            recentLoans.set((int) (loanCount.getAndIncrement() % RECENT_LOANS), loanId);
+        }
+
+        long randomLoan() {
+            int known = (int) Math.min(loanCount.get(), RECENT_LOANS);
+            return recentLoans.get(ThreadLocalRandom.current().nextInt(known));
+        }
+    }
+
+    static class Stats {
+        final Histogram latencies = new ConcurrentHistogram(3);
+        final LongAdder errors = new LongAdder();
+    }
+
+    List<Customer> seed(int customers) throws Exception {
+        List<Customer> seeded = new ArrayList<>(customers);
+        for (int i = 0; i < customers; i++) {
+            String username = "load-customer-" + i;
+            String customer = send(post("/customers", null, Map.of("name", "Load", "surname", "Test" + i,
+                    "username", username, "password", "secret", "role", "CUSTOMER", "credit_limit", 10_000_000)));
+            long id = objectMapper.readTree(customer).get("id").asLong();
+
+            String token = send(post("/auth/token", null, Map.of("username", username, "password", "secret")));
+            Customer seededCustomer = new Customer(id, objectMapper.readTree(token).get("access_token").asText(),
+                    new AtomicLongArray(RECENT_LOANS), new AtomicLong());
+
+            // Every customer starts with a loan, so there is always something to list and pay
+            seededCustomer.addLoan(objectMapper.readTree(send(createLoan(seededCustomer))).get("id").asLong());
+            seeded.add(seededCustomer);
+        }
+        return seeded;
+    }
+
+    /**
+     * Sends requests from {@code clients} concurrent clients until {@code duration} has passed.
+     *
+     * @param mix the endpoints to pick from, each one as often as its weight
+     * @return the latencies and errors of every endpoint
+     */
+    Map<Endpoint, Stats> run(List<Customer> customers, Endpoint[] mix, int clients, Duration duration) throws InterruptedException {
+        Map<Endpoint, Stats> stats = new EnumMap<>(Endpoint.class);
+        for (Endpoint endpoint : Endpoint.values()) {
+            stats.put(endpoint, new Stats());
+        }
+
+        long deadline = System.nanoTime() + duration.toNanos();
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int i = 0; i < clients; i++) {
+                executor.submit(() -> {
+                    ThreadLocalRandom random = ThreadLocalRandom.current();
+                    while (System.nanoTime() < deadline) {
+                        Customer customer = customers.get(random.nextInt(customers.size()));
+                        Endpoint endpoint = mix[random.nextInt(mix.length)];
+                        call(endpoint, customer, stats.get(endpoint));
+                    }
+                });
+            }
+            executor.shutdown();
+            executor.awaitTermination(duration.toSeconds() + 60, TimeUnit.SECONDS);
+        }
+        return stats;
+    }
+
+    /**
+     * Prints the throughput, latency percentiles and errors of every endpoint.
+     */
+    static void print(String title, Map<Endpoint, Stats> stats, Duration duration) {
+        System.out.printf("%n%s%n%-18s %10s %10s %10s %10s %10s %10s %8s%n", title, "endpoint", "requests", "req/s", "p50 ms", "p99 ms", "p99.9 ms", "max ms", "errors");
+        for (Map.Entry<Endpoint, Stats> entry : stats.entrySet()) {
+            Histogram latencies = entry.getValue().latencies;
+            long requests = latencies.getTotalCount();
+
+            System.out.printf("%-18s %10d %10.1f %10.2f %10.2f %10.2f %10.2f %8d%n", entry.getKey().key, requests,
+                    requests / (double) duration.toNanos() * TimeUnit.SECONDS.toNanos(1),
+                    millis(latencies.getValueAtPercentile(50)), millis(latencies.getValueAtPercentile(99)),
+                    millis(latencies.getValueAtPercentile(99.9)), millis(latencies.getMaxValue()), entry.getValue().errors.sum());
+        }
+    }
+
+    static double millis(long nanos) {
+        return nanos / 1_000_000.0;
+    }
+
+    private void call(Endpoint endpoint, Customer customer, Stats stats) {
+        HttpRequest request = switch (endpoint) {
+            case CREATE_LOAN -> createLoan(customer);
+            case LIST_INSTALLMENTS -> HttpRequest.newBuilder(uri("/customers/" + customer.id() + "/loans/" + customer.randomLoan() + "/installments"))
+                    .header("Authorization", "Bearer " + customer.token())
+                    .GET()
+                    .build();
+            case PAY_INSTALLMENT -> post("/customers/" + customer.id() + "/loans/" + customer.randomLoan() + "/payment",
+                    customer.token(), Map.of("amount", 100.0));
+        };
+
+        long startedAt = System.nanoTime();
+        try {
+            HttpResponse<String> response = client.send(request, HttpResponse.BodyHandlers.ofString());
+            stats.latencies.recordValue(System.nanoTime() - startedAt);
+
+            if (response.statusCode() / 100 != 2) {
+                stats.errors.increment();
+            } else if (endpoint == Endpoint.CREATE_LOAN) {
+                customer.addLoan(objectMapper.readTree(response.body()).get("id").asLong());
+            }
+        } catch (Exception e) {
+            stats.latencies.recordValue(System.nanoTime() - startedAt);
+            stats.errors.increment();
+        }
+    }
+
+    private HttpRequest createLoan(Customer customer) {
+        return post("/customers/" + customer.id() + "/loans", customer.token(),
+                Map.of("amount", 100.0, "rate", 0.1, "number_of_installments", 6));
+    }
+
+    private HttpRequest post(String path, String token, Map<String, Object> body) {
+        HttpRequest.Builder request = HttpRequest.newBuilder(uri(path)).header("Content-Type", "application/json");
+        if (token != null) {
+            request.header("Authorization", "Bearer " + token);
+        }
+        try {
+            return request.POST(HttpRequest.BodyPublishers.ofByteArray(objectMapper.writeValueAsBytes(body))).build();
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private String send(HttpRequest request) throws Exception {
+        HttpResponse<String> response = client.send(request, HttpResponse.BodyHandlers.ofString());
+        if (response.statusCode() / 100 != 2) {
+            throw new IllegalStateException(request.uri() + " returned " + response.statusCode() + ": " + response.body());
+        }
+        return response.body();
+    }
+
+    private URI uri(String path) {
+        return URI.create(baseUri + path);
+    }
+}
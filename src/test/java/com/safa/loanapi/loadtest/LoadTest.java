@@ -0,0 +1,115 @@
+package com.safa.loanapi.loadtest;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.safa.loanapi.loadtest.LoadDriver.Endpoint;
+import com.safa.loanapi.loadtest.LoadDriver.Stats;
+import org.HdrHistogram.Histogram;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.core.env.Environment;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static com.safa.loanapi.loadtest.LoadDriver.millis;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * End-to-end load test of the loan endpoints.
+ *
+ * <p>The application is started on a random port with its in-memory database. {@code loadtest.customers} customers
+ * are created through {@code POST /customers}, log in for an access token and take a first loan. Then
+ * {@code loadtest.clients} virtual threads send a weighted mix of create loan, list installments and pay installment
+ * requests for random customers, first for {@code loadtest.warmup} without recording and then for
+ * {@code loadtest.duration}. The throughput and latency percentiles of every endpoint are printed, and the test fails
+ * when an endpoint's p99 or p99.9 latency or error rate exceeds its budget.</p>
+ *
+ * <p>Every setting can be overridden as a system property, e.g.
+ * {@code mvn -Ploadtest test -Dloadtest.clients=256 -Dloadtest.budget.create-loan.p99=100ms}. The test only runs with
+ * the {@code loadtest} profile.</p>
+ */
+@Tag("load")
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT, properties = {
+        "debug=false",
+        "logging.level.web=info",
+        "logging.level.security=info",
+        "spring.jpa.show-sql=false"
+})
+class LoadTest {
+
+    @LocalServerPort
+    private int port;
+
+    @Autowired
+    private Environment environment;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Test
+    void Endpoints_WhenUnderSustainedLoadThenLatenciesShouldStayWithinBudget() throws Exception {
+        int customers = environment.getProperty("loadtest.customers", Integer.class, 20);
+        int clients = environment.getProperty("loadtest.clients", Integer.class, 64);
+        Duration warmup = environment.getProperty("loadtest.warmup", Duration.class, Duration.ofSeconds(3));
+        Duration duration = environment.getProperty("loadtest.duration", Duration.class, Duration.ofSeconds(15));
+
+        LoadDriver driver = new LoadDriver(port, objectMapper);
+        List<LoadDriver.Customer> seeded = driver.seed(customers);
+        Endpoint[] mix = mix(environment);
+
+        // Warm up the JIT, connection pools and caches without recording
+        driver.run(seeded, mix, clients, warmup);
+        Map<Endpoint, Stats> stats = driver.run(seeded, mix, clients, duration);
+
+        LoadDriver.print(clients + " clients", stats, duration);
+        List<String> failures = checkBudgets(stats);
+        assertTrue(failures.isEmpty(), String.join("\n", failures));
+    }
+
+    /**
+     * Builds the request mix from the {@code loadtest.mix.<endpoint>} weights.
+     */
+    static Endpoint[] mix(Environment environment) {
+        List<Endpoint> mix = new ArrayList<>();
+        for (Endpoint endpoint : Endpoint.values()) {
+            int weight = environment.getProperty("loadtest.mix." + endpoint.key, Integer.class, endpoint.defaultWeight);
+            for (int i = 0; i < weight; i++) {
+                mix.add(endpoint);
+            }
+        }
+        return mix.toArray(new Endpoint[0]);
+    }
+
+    private List<String> checkBudgets(Map<Endpoint, Stats> stats) {
+        double errorRateBudget = environment.getProperty("loadtest.budget.error-rate", Double.class, 0.01);
+        List<String> failures = new ArrayList<>();
+
+        for (Map.Entry<Endpoint, Stats> entry : stats.entrySet()) {
+            Endpoint endpoint = entry.getKey();
+            Histogram latencies = entry.getValue().latencies;
+            long requests = latencies.getTotalCount();
+            long errors = entry.getValue().errors.sum();
+            if (requests == 0) {
+                continue;
+            }
+
+            Duration p99Budget = environment.getProperty("loadtest.budget." + endpoint.key + ".p99", Duration.class, Duration.ofMillis(250));
+            Duration p999Budget = environment.getProperty("loadtest.budget." + endpoint.key + ".p999", Duration.class, Duration.ofSeconds(1));
+            if (latencies.getValueAtPercentile(99) > p99Budget.toNanos()) {
+                failures.add(String.format("%s p99 %.2f ms exceeds the budget of %d ms", endpoint.key, millis(latencies.getValueAtPercentile(99)), p99Budget.toMillis()));
+            }
+            if (latencies.getValueAtPercentile(99.9) > p999Budget.toNanos()) {
+                failures.add(String.format("%s p99.9 %.2f ms exceeds the budget of %d ms", endpoint.key, millis(latencies.getValueAtPercentile(99.9)), p999Budget.toMillis()));
+            }
+            if (errors > requests * errorRateBudget) {
+                failures.add(String.format("%s error rate %.4f exceeds the budget of %.4f", endpoint.key, errors / (double) requests, errorRateBudget));
+            }
+        }
+        return failures;
+    }
+}
@@ -0,0 +1,92 @@
+package com.safa.loanapi.loadtest;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.safa.loanapi.LoanApiApplication;
+import com.safa.loanapi.loadtest.LoadDriver.Endpoint;
+import com.safa.loanapi.loadtest.LoadDriver.Stats;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.convert.ApplicationConversionService;
+import org.springframework.boot.web.servlet.context.ServletWebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.core.env.StandardEnvironment;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Compares the throughput of the request handling modes under {@code loadtest.threading.clients} (default 1000)
+ * concurrent connections.
+ *
+ * <p>The application is started once per mode with its own in-memory database and driven with the same request mix
+ * as {@link LoadTest}:</p>
+ * <ul>
+ *   <li>{@code platform}: Tomcat's bounded pool of platform threads.</li>
+ *   <li>{@code virtual}: a virtual thread per request, limited to the connection pool size.</li>
+ *   <li>{@code virtual-unlimited}: a virtual thread per request without the concurrency limit, so every request
+ *   queues on the connection pool.</li>
+ * </ul>
+ *
+ * <p>The numbers are printed for comparison, the test only fails if a mode could not serve any request. Run it with
+ * {@code mvn -Ploadtest test -Dtest=ThreadingModeLoadTest}.</p>
+ */
+@Tag("load")
+class ThreadingModeLoadTest {
+
+    private final StandardEnvironment environment = new StandardEnvironment();
+
+    ThreadingModeLoadTest() {
+        // Read the loadtest.* system properties with the same conversions as the application, e.g. for durations
+        environment.setConversionService(new ApplicationConversionService());
+    }
+
+    @Test
+    void Modes_WhenUnderThousandsOfConnectionsThenThroughputShouldBeReported() throws Exception {
+        Map<String, String[]> modes = new LinkedHashMap<>();
+        modes.put("platform", new String[]{"--spring.threads.virtual.enabled=false"});
+        modes.put("virtual", new String[]{"--spring.threads.virtual.enabled=true"});
+        modes.put("virtual-unlimited", new String[]{"--spring.threads.virtual.enabled=true", "--concurrency.maxRequests=1000000"});
+
+        for (Map.Entry<String, String[]> mode : modes.entrySet()) {
+            long requests = run(mode.getKey(), mode.getValue());
+            assertTrue(requests > 0, mode.getKey() + " did not serve any request");
+        }
+    }
+
+    private long run(String mode, String[] args) throws Exception {
+        int customers = environment.getProperty("loadtest.customers", Integer.class, 20);
+        int clients = environment.getProperty("loadtest.threading.clients", Integer.class, 1000);
+        Duration warmup = environment.getProperty("loadtest.warmup", Duration.class, Duration.ofSeconds(3));
+        Duration duration = environment.getProperty("loadtest.duration", Duration.class, Duration.ofSeconds(15));
+
+        String[] commonArgs = {
+                "--server.port=0",
+                "--spring.datasource.url=jdbc:h2:mem:loadtest-" + mode,
+                "--debug=false",
+                "--logging.level.web=info",
+                "--logging.level.security=info",
+                "--spring.jpa.show-sql=false"
+        };
+        try (ConfigurableApplicationContext context = new SpringApplicationBuilder(LoanApiApplication.class)
+                .run(Stream.concat(Arrays.stream(commonArgs), Arrays.stream(args)).toArray(String[]::new))) {
+            int port = ((ServletWebServerApplicationContext) context).getWebServer().getPort();
+
+            LoadDriver driver = new LoadDriver(port, context.getBean(ObjectMapper.class));
+            List<LoadDriver.Customer> seeded = driver.seed(customers);
+            Endpoint[] mix = LoadTest.mix(environment);
+
+            driver.run(seeded, mix, clients, warmup);
+            Map<Endpoint, Stats> stats = driver.run(seeded, mix, clients, duration);
+
+            LoadDriver.print(mode + ", " + clients + " clients", stats, duration);
+            return stats.values().stream().mapToLong(s -> s.latencies.getTotalCount() - s.errors.sum()).sum();
+        }
+    }
+}
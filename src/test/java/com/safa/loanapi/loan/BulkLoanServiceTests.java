@@ -0,0 +1,188 @@
+package com.safa.loanapi.loan;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.PropertyNamingStrategies;
+import com.safa.loanapi.common.LoanMetrics;
+import com.safa.loanapi.common.concurrency.StripedLockManager;
+import com.safa.loanapi.customer.CreditLimitLedger;
+import com.safa.loanapi.customer.CustomerSummaryService;
+import com.safa.loanapi.exception.CustomerNotFoundException;
+import com.safa.loanapi.exception.NotEnoughLimitException;
+import com.safa.loanapi.installment.InstallmentRepository;
+import com.safa.loanapi.installment.dao.Installment;
+import com.safa.loanapi.loan.dao.Loan;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.persistence.EntityManager;
+import jakarta.validation.Validation;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.time.Duration;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class BulkLoanServiceTests {
+
+    @InjectMocks
+    private BulkLoanService bulkLoanService;
+
+    @Mock
+    private LoanRepository loanRepository;
+
+    @Mock
+    private InstallmentRepository installmentRepository;
+
+    @Mock
+    private CreditLimitLedger creditLimitLedger;
+
+    @Mock
+    private CustomerSummaryService customerSummaryService;
+
+    @Mock
+    private LoanMetrics loanMetrics;
+
+    @Mock
+    private EntityManager entityManager;
+
+    @Mock
+    private TransactionTemplate transactionTemplate;
+
+    private final ObjectMapper objectMapper = new ObjectMapper().setPropertyNamingStrategy(PropertyNamingStrategies.SNAKE_CASE);
+
+    @BeforeEach
+    void setUp() {
+        ReflectionTestUtils.setField(bulkLoanService, "objectMapper", objectMapper);
+        ReflectionTestUtils.setField(bulkLoanService, "validator", Validation.buildDefaultValidatorFactory().getValidator());
+        ReflectionTestUtils.setField(bulkLoanService, "chunkSize", 2);
+        ReflectionTestUtils.setField(bulkLoanService, "stripedLockManager",
+                new StripedLockManager(16, Duration.ofMillis(50), 1, new SimpleMeterRegistry()));
+
+        lenient().when(transactionTemplate.execute(any())).thenAnswer(invocation ->
+                invocation.getArgument(0, TransactionCallback.class).doInTransaction(mock(TransactionStatus.class)));
+
+        AtomicLong ids = new AtomicLong();
+        lenient().when(loanRepository.saveAll(anyList())).thenAnswer(invocation -> {
+            List<Loan> loans = invocation.getArgument(0);
+            loans.forEach(loan -> loan.setId(ids.incrementAndGet()));
+            return loans;
+        });
+    }
+
+    @Test
+    void CreateLoans_WhenLimitRunsOutThenRemainingRequestsOfCustomerShouldBeRejected() throws Exception {
+        doNothing().doNothing().doThrow(new NotEnoughLimitException(1L)).when(creditLimitLedger).reserve(eq(1L), any(BigDecimal.class));
+
+        String input = """
+                {"customer_id": 1, "amount": 1000.0, "rate": 0.1, "number_of_installments": 6}
+                {"customer_id": 1, "amount": 1000.0, "rate": 0.1, "number_of_installments": 12}
+                {"customer_id": 1, "amount": 1000.0, "rate": 0.1, "number_of_installments": 6}
+                """;
+
+        List<JsonNode> results = createLoans(input);
+
+        assertEquals(3, results.size());
+        assertEquals("CREATED", results.get(0).get("status").asText());
+        assertEquals("CREATED", results.get(1).get("status").asText());
+        assertEquals("REJECTED", results.get(2).get("status").asText());
+        assertEquals(2, results.get(2).get("index").asLong());
+        assertEquals("Customer 1 do not have enough credit limit", results.get(2).get("error").asText());
+
+        // The first chunk's schedule is saved in one batch
+        verify(creditLimitLedger, times(3)).reserve(1L, BigDecimal.valueOf(1000.0));
+        verify(installmentRepository).saveAll(argThat((List<Installment> installments) -> installments.size() == 18));
+        verify(installmentRepository, never()).save(any());
+    }
+
+    @Test
+    void CreateLoans_WhenRequestIsInvalidOrCustomerIsMissingThenOnlyThoseShouldBeRejected() throws Exception {
+        doThrow(new CustomerNotFoundException(2L)).when(creditLimitLedger).reserve(eq(2L), any(BigDecimal.class));
+
+        String input = """
+                [
+                  {"customer_id": 1, "amount": 1000.0, "rate": 0.9, "number_of_installments": 6},
+                  {"customer_id": 2, "amount": 1000.0, "rate": 0.1, "number_of_installments": 6},
+                  {"customer_id": 1, "amount": 1000.0, "rate": 0.1, "number_of_installments": 9}
+                ]
+                """;
+
+        List<JsonNode> results = createLoans(input);
+
+        assertEquals(3, results.size());
+        assertEquals("REJECTED", results.get(0).get("status").asText());
+        assertEquals("rate: Rate must be at most 0.5", results.get(0).get("error").asText());
+        assertEquals("REJECTED", results.get(1).get("status").asText());
+        assertEquals("Customer with id 2 not found", results.get(1).get("error").asText());
+        assertEquals("CREATED", results.get(2).get("status").asText());
+        assertTrue(results.get(2).has("loan_id"));
+    }
+
+    @Test
+    void CreateLoans_WhenStoredCreditLimitOfCustomerDoesNotCoverItsLoansThenOnlyItsRequestsShouldBeRejected() throws Exception {
+        ReflectionTestUtils.setField(bulkLoanService, "chunkSize", 3);
+
+        // The ledger's counter of customer 2 still allows the loan, but its row does not, so the commit fails
+        Set<Long> reserved = new HashSet<>();
+        doAnswer(invocation -> reserved.add(invocation.getArgument(0))).when(creditLimitLedger).reserve(anyLong(), any(BigDecimal.class));
+        doAnswer(invocation -> {
+            reserved.clear();
+            Object created = invocation.getArgument(0, TransactionCallback.class).doInTransaction(mock(TransactionStatus.class));
+            if (reserved.contains(2L)) {
+                throw new NotEnoughLimitException(2L);
+            }
+            return created;
+        }).when(transactionTemplate).execute(any());
+
+        String input = """
+                {"customer_id": 1, "amount": 1000.0, "rate": 0.1, "number_of_installments": 6}
+                {"customer_id": 2, "amount": 1000.0, "rate": 0.1, "number_of_installments": 6}
+                {"customer_id": 1, "amount": 1000.0, "rate": 0.1, "number_of_installments": 6}
+                {"customer_id": 3, "amount": 1000.0, "rate": 0.1, "number_of_installments": 6}
+                """;
+
+        List<JsonNode> results = createLoans(input);
+
+        assertEquals(4, results.size());
+        assertEquals("CREATED", results.get(0).get("status").asText());
+        assertEquals("REJECTED", results.get(1).get("status").asText());
+        assertEquals("Customer 2 do not have enough credit limit", results.get(1).get("error").asText());
+        assertEquals("CREATED", results.get(2).get("status").asText());
+        assertEquals("CREATED", results.get(3).get("status").asText());
+
+        // The failed chunk is created one request at a time, the next chunk at once again
+        verify(transactionTemplate, times(5)).execute(any());
+        verify(loanMetrics).loansCreated(2);
+        verify(loanMetrics).loansCreated(1);
+    }
+
+    private List<JsonNode> createLoans(String input) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        bulkLoanService.createLoans(new ByteArrayInputStream(input.getBytes(StandardCharsets.UTF_8)), out);
+
+        List<JsonNode> results = new ArrayList<>();
+        for (String line : out.toString(StandardCharsets.UTF_8).split("\n")) {
+            results.add(objectMapper.readTree(line));
+        }
+        return results;
+    }
+}
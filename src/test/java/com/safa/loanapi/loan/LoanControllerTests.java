@@ -2,25 +2,34 @@ package com.safa.loanapi.loan;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.safa.loanapi.WithMockCustomUser;
+import com.safa.loanapi.common.idempotency.IdempotencyStore;
 import com.safa.loanapi.loan.dao.Loan;
 import com.safa.loanapi.loan.dto.CreateLoan;
+import com.safa.loanapi.loan.dto.LoanPage;
+import com.safa.loanapi.loan.dto.LoanQuery;
+import com.safa.loanapi.loan.dto.LoanView;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
+import org.mockito.Spy;
 import org.mockito.junit.jupiter.MockitoExtension;
 import org.springframework.http.MediaType;
 import org.springframework.test.web.servlet.MockMvc;
 import org.springframework.test.web.servlet.setup.MockMvcBuilders;
 
 import java.math.BigDecimal;
+import java.time.Duration;
+import java.time.LocalDate;
 import java.util.Arrays;
 import java.util.List;
 
 import static org.mockito.Mockito.*;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
@@ -30,6 +39,9 @@ class LoanControllerTests {
     @Mock
     private LoanService loanService;
 
+    @Spy
+    private IdempotencyStore idempotencyStore = new IdempotencyStore(100, Duration.ofMinutes(1), new SimpleMeterRegistry());
+
     @InjectMocks
     private LoanController controller;
 
@@ -63,24 +75,66 @@ class LoanControllerTests {
         verify(loanService, times(1)).createLoan(eq(1L), eq(1000.0), eq(0.1), eq(12));
     }
 
+    @Test
+    void CreateLoan_WhenRetriedWithTheSameIdempotencyKeyThenShouldReturnTheFirstLoan() throws Exception {
+        CreateLoan request = new CreateLoan(1000.0, 0.1, 12);
+        Loan mockLoan = new Loan(1L, BigDecimal.valueOf(1000.0), BigDecimal.valueOf(1050.0), 12, false);
+        mockLoan.setId(1L);
+
+        when(loanService.createLoan(anyLong(), anyDouble(), anyDouble(), anyInt()))
+                .thenReturn(mockLoan);
+
+        for (int i = 0; i < 2; i++) {
+            mockMvc.perform(post("/customers/1/loans")
+                            .header(IdempotencyStore.HEADER, "retry-1")
+                            .contentType(MediaType.APPLICATION_JSON)
+                            .content(objectMapper.writeValueAsString(request)))
+                    .andExpect(status().isOk())
+                    .andExpect(jsonPath("$.id").value(1L));
+        }
+
+        verify(loanService, times(1)).createLoan(eq(1L), eq(1000.0), eq(0.1), eq(12));
+    }
+
     @Test
     void ListLoans_Success() throws Exception {
         // Arrange
         Loan loan1 = new Loan(1L, BigDecimal.valueOf(1000.0), BigDecimal.valueOf(1050.0), 12, false);
         Loan loan2 = new Loan(2L, BigDecimal.valueOf(2000.0), BigDecimal.valueOf(2100.0), 24, false);
-        List<Loan> mockLoans = Arrays.asList(loan1, loan2);
+        List<LoanView> mockLoans = Arrays.asList(LoanView.of(loan1, null), LoanView.of(loan2, null));
 
-        when(loanService.listLoans(1L)).thenReturn(mockLoans);
+        when(loanService.listLoans(eq(1L), any(LoanQuery.class))).thenReturn(new LoanPage(mockLoans, null));
 
         // Act & Assert
         mockMvc.perform(get("/customers/1/loans")
                         .contentType(MediaType.APPLICATION_JSON))
                 .andExpect(status().isOk())
+                .andExpect(header().doesNotExist(LoanController.NEXT_CURSOR_HEADER))
                 .andExpect(jsonPath("$.size()").value(2))
                 .andExpect(jsonPath("$[0].amount").value(1000.0))
                 .andExpect(jsonPath("$[1].amount").value(2000.0));
 
-        verify(loanService, times(1)).listLoans(1L);
+        verify(loanService, times(1)).listLoans(1L, new LoanQuery(50, null, null, null, null, true));
+    }
+
+    @Test
+    void ListLoans_WhenMoreLoansFollowThenNextCursorShouldBeReturned() throws Exception {
+        Loan loan = new Loan(1L, BigDecimal.valueOf(1000.0), BigDecimal.valueOf(1050.0), 12, true);
+
+        when(loanService.listLoans(eq(1L), any(LoanQuery.class))).thenReturn(new LoanPage(List.of(LoanView.of(loan, List.of())), "next"));
+
+        mockMvc.perform(get("/customers/1/loans")
+                        .param("limit", "1")
+                        .param("cursor", "current")
+                        .param("is_paid", "true")
+                        .param("created_from", "2024-01-01")
+                        .param("created_to", "2024-12-31")
+                        .param("include_installments", "false"))
+                .andExpect(status().isOk())
+                .andExpect(header().string(LoanController.NEXT_CURSOR_HEADER, "next"))
+                .andExpect(jsonPath("$.size()").value(1));
+
+        verify(loanService).listLoans(1L, new LoanQuery(1, "current", true, LocalDate.of(2024, 1, 1), LocalDate.of(2024, 12, 31), false));
     }
 
     @Test
@@ -0,0 +1,127 @@
+package com.safa.loanapi.loan;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.PropertyNamingStrategies;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import com.safa.loanapi.installment.InstallmentRepository;
+import com.safa.loanapi.installment.dao.Installment;
+import com.safa.loanapi.loan.dao.Loan;
+import jakarta.persistence.EntityManager;
+import org.hibernate.CacheMode;
+import org.hibernate.Session;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.io.ByteArrayOutputStream;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class LoanExportServiceTests {
+
+    @InjectMocks
+    private LoanExportService loanExportService;
+
+    @Mock
+    private LoanRepository loanRepository;
+
+    @Mock
+    private InstallmentRepository installmentRepository;
+
+    @Mock
+    private EntityManager entityManager;
+
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    @Mock
+    private Session session;
+
+    private final ObjectMapper objectMapper = new ObjectMapper()
+            .setPropertyNamingStrategy(PropertyNamingStrategies.SNAKE_CASE)
+            .registerModule(new JavaTimeModule());
+
+    @BeforeEach
+    void setUp() {
+        ReflectionTestUtils.setField(loanExportService, "objectMapper", objectMapper);
+        when(entityManager.unwrap(Session.class)).thenReturn(session);
+    }
+
+    @Test
+    void Export_WhenAllCustomersAreExportedThenInstallmentsShouldBeMergedIntoTheirLoans() throws Exception {
+        AtomicBoolean loansClosed = new AtomicBoolean();
+        AtomicBoolean installmentsClosed = new AtomicBoolean();
+        when(loanRepository.streamAllByOrderByIdAsc()).thenReturn(Stream.of(loan(1L), loan(2L), loan(4L)).onClose(() -> loansClosed.set(true)));
+        when(installmentRepository.streamAllByOrderByLoanIdAscDueDateAsc()).thenReturn(Stream.of(
+                installment(1L), installment(1L),
+                // Installments of a loan without a loan row are skipped
+                installment(3L),
+                installment(4L)).onClose(() -> installmentsClosed.set(true)));
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        long count = loanExportService.export(null, out);
+
+        List<JsonNode> lines = lines(out);
+        assertEquals(3, count);
+        assertEquals(3, lines.size());
+        assertEquals(2, lines.get(0).get("installments").size());
+        assertEquals(0, lines.get(1).get("installments").size());
+        assertEquals(1, lines.get(2).get("installments").size());
+        assertEquals(4L, lines.get(2).get("id").asLong());
+
+        // Every entity is released from the persistence context once written
+        verify(entityManager, times(7)).detach(any());
+        assertTrue(loansClosed.get());
+        assertTrue(installmentsClosed.get());
+        verify(loanRepository, never()).findAll();
+        verify(session).setCacheMode(CacheMode.IGNORE);
+    }
+
+    @Test
+    void Export_WhenCustomerIsGivenThenOnlyItsLoansShouldBeRead() throws Exception {
+        when(loanRepository.streamAllByCustomerIdOrderByIdAsc(7L)).thenReturn(Stream.of(loan(5L)));
+        when(installmentRepository.streamAllByCustomerId(7L)).thenReturn(Stream.of(installment(5L)));
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        loanExportService.export(7L, out);
+
+        List<JsonNode> lines = lines(out);
+        assertEquals(1, lines.size());
+        assertEquals(5L, lines.get(0).get("installments").get(0).get("loan_id").asLong());
+        verify(loanRepository, never()).streamAllByOrderByIdAsc();
+    }
+
+    private List<JsonNode> lines(ByteArrayOutputStream out) throws Exception {
+        List<JsonNode> lines = new ArrayList<>();
+        for (String line : out.toString(StandardCharsets.UTF_8).split("\n")) {
+            lines.add(objectMapper.readTree(line));
+        }
+        return lines;
+    }
+
+    private Loan loan(Long id) {
+        Loan loan = new Loan(1L, BigDecimal.valueOf(1000.0), BigDecimal.valueOf(1100.0), 6, false);
+        loan.setId(id);
+        return loan;
+    }
+
+    private Installment installment(Long loanId) {
+        return new Installment(loanId, BigDecimal.valueOf(100.0), BigDecimal.valueOf(110.0), LocalDate.of(2025, 1, 1));
+    }
+}
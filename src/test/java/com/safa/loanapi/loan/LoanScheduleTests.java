@@ -0,0 +1,95 @@
+package com.safa.loanapi.loan;
+
+import org.junit.jupiter.api.Test;
+
+import java.lang.management.ManagementFactory;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LoanScheduleTests {
+
+    @Test
+    void Flat_WhenAmountsDoNotDivideEvenlyThenRemainderShouldGoToLastInstallments() {
+        LoanSchedule schedule = new LoanSchedule(1).flat(100_000, 110_001, 3);
+
+        assertEquals(3, schedule.size());
+        assertArrayEquals(new long[]{33_333, 33_333, 33_334}, principals(schedule));
+        assertArrayEquals(new long[]{36_667, 36_667, 36_667}, totals(schedule));
+        assertEquals(110_001, IntStream.range(0, 3).mapToLong(schedule::totalCents).sum());
+    }
+
+    @Test
+    void Flat_WhenAmountIsLargerThanIntRangeThenItShouldNotOverflow() {
+        long principal = 5_000_000_000_00L;
+
+        LoanSchedule schedule = new LoanSchedule(24).flat(principal, principal, 24);
+
+        assertEquals(principal, IntStream.range(0, 24).mapToLong(schedule::principalCents).sum());
+        assertTrue(schedule.principalCents(0) > Integer.MAX_VALUE);
+    }
+
+    @Test
+    void EqualPrincipal_WhenRateIsGivenThenInterestShouldFollowOutstandingBalance() {
+        LoanSchedule schedule = new LoanSchedule(4).equalPrincipal(120_000, 0.01, 4);
+
+        assertArrayEquals(new long[]{30_000, 30_000, 30_000, 30_000}, principals(schedule));
+        assertArrayEquals(new long[]{31_200, 30_900, 30_600, 30_300}, totals(schedule));
+    }
+
+    @Test
+    void Annuity_WhenRateIsGivenThenInstallmentsShouldBeEqualAndPayOffPrincipal() {
+        LoanSchedule schedule = new LoanSchedule(12).annuity(100_000, 0.01, 12);
+
+        long[] totals = totals(schedule);
+        for (int i = 0; i < 11; i++) {
+            assertEquals(8_885, totals[i]);
+        }
+        assertEquals(100_000, IntStream.range(0, 12).mapToLong(schedule::principalCents).sum());
+        assertTrue(Math.abs(totals[11] - 8_885) <= 12);
+
+        // Interest decreases and principal increases over the schedule
+        assertTrue(schedule.principalCents(0) < schedule.principalCents(10));
+    }
+
+    @Test
+    void Annuity_WhenRateIsZeroThenPrincipalShouldBeSplitEvenly() {
+        LoanSchedule schedule = new LoanSchedule(6).annuity(100, 0, 6);
+
+        assertArrayEquals(new long[]{16, 16, 17, 17, 17, 17}, totals(schedule));
+    }
+
+    @Test
+    void Schedule_WhenNumberOfInstallmentsIsNotPositiveThenShouldThrowArithmeticException() {
+        assertThrows(ArithmeticException.class, () -> new LoanSchedule(6).flat(100, 100, 0));
+        assertThrows(ArithmeticException.class, () -> new LoanSchedule(6).annuity(100, 0.01, -1));
+    }
+
+    @Test
+    void Schedule_WhenReusedThenItShouldNotAllocate() {
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        LoanSchedule schedule = new LoanSchedule(24);
+        long checksum = 0;
+        for (int i = 0; i < 10_000; i++) {
+            checksum += schedule.annuity(100_000 + i, 0.01, 24).totalCents(23);
+        }
+
+        long before = threads.getCurrentThreadAllocatedBytes();
+        for (int i = 0; i < 10_000; i++) {
+            checksum += schedule.flat(100_000 + i, 110_000 + i, 24).totalCents(23);
+            checksum += schedule.annuity(100_000 + i, 0.01, 24).totalCents(23);
+        }
+        long allocated = threads.getCurrentThreadAllocatedBytes() - before;
+
+        assertTrue(checksum > 0);
+        assertTrue(allocated < 16 * 1024, "allocated " + allocated + " bytes");
+    }
+
+    private long[] principals(LoanSchedule schedule) {
+        return IntStream.range(0, schedule.size()).mapToLong(schedule::principalCents).toArray();
+    }
+
+    private long[] totals(LoanSchedule schedule) {
+        return IntStream.range(0, schedule.size()).mapToLong(schedule::totalCents).toArray();
+    }
+}
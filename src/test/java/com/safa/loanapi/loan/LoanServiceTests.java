@@ -1,23 +1,30 @@
 package com.safa.loanapi.loan;
 
-import com.safa.loanapi.customer.CustomerRepository;
-import com.safa.loanapi.customer.dao.Customer;
+import com.safa.loanapi.common.LoanMetrics;
+import com.safa.loanapi.customer.CreditLimitLedger;
+import com.safa.loanapi.customer.CustomerSummaryService;
 import com.safa.loanapi.exception.CustomerNotFoundException;
+import com.safa.loanapi.exception.InvalidCursorException;
 import com.safa.loanapi.exception.NotEnoughLimitException;
 import com.safa.loanapi.installment.InstallmentRepository;
 import com.safa.loanapi.installment.dao.Installment;
+import com.safa.loanapi.installment.dto.InstallmentView;
 import com.safa.loanapi.loan.dao.Loan;
+import com.safa.loanapi.loan.dto.LoanPage;
+import com.safa.loanapi.loan.dto.LoanQuery;
+import com.safa.loanapi.loan.dto.LoanView;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.jpa.domain.Specification;
 
 import java.math.BigDecimal;
 import java.math.RoundingMode;
+import java.time.LocalDateTime;
 import java.util.List;
-import java.util.Optional;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.Mockito.*;
@@ -35,7 +42,13 @@ public class LoanServiceTests {
     private InstallmentRepository installmentRepository;
 
     @Mock
-    private CustomerRepository customerRepository;
+    private CreditLimitLedger creditLimitLedger;
+
+    @Mock
+    private CustomerSummaryService customerSummaryService;
+
+    @Mock
+    private LoanMetrics loanMetrics;
 
     public LoanServiceTests() {
         MockitoAnnotations.openMocks(this);
@@ -48,14 +61,6 @@ public class LoanServiceTests {
         double rate = 0.1;
         int numOfInstallments = 6;
 
-        Customer customer = new Customer();
-        customer.setId(customerId);
-        customer.setUsername("admin");
-        customer.setCreditLimit(BigDecimal.valueOf(5000.0));
-        customer.setUsedCreditLimit(BigDecimal.valueOf(1000.0));
-
-        when(customerRepository.findById(customerId)).thenReturn(Optional.of(customer));
-
         Loan loan = new Loan(customerId, BigDecimal.valueOf(amount), BigDecimal.valueOf(1100.0), numOfInstallments, false);
         when(loanRepository.save(any(Loan.class))).thenReturn(loan);
 
@@ -68,8 +73,11 @@ public class LoanServiceTests {
         assertEquals(numOfInstallments, createdLoan.getNumberOfInstallments());
         assertFalse(createdLoan.getIsPaid());
 
-        verify(customerRepository).save(customer);
-        verify(installmentRepository, times(numOfInstallments)).save(any(Installment.class));
+        verify(creditLimitLedger).reserve(customerId, BigDecimal.valueOf(amount));
+        verify(installmentRepository).saveAll(argThat((List<Installment> installments) -> installments.size() == numOfInstallments));
+        verify(installmentRepository, never()).save(any(Installment.class));
+        assertEquals(numOfInstallments, createdLoan.getInstallments().size());
+        verify(loanMetrics).loansCreated(1);
     }
 
     @Test
@@ -79,11 +87,11 @@ public class LoanServiceTests {
         double rate = 0.1;
         int numOfInstallments = 5;
 
-        when(customerRepository.findById(customerId)).thenReturn(Optional.empty());
+        doThrow(new CustomerNotFoundException(customerId)).when(creditLimitLedger).reserve(eq(customerId), any(BigDecimal.class));
 
         assertThrows(CustomerNotFoundException.class, () -> loanService.createLoan(customerId, amount, rate, numOfInstallments));
 
-        verify(customerRepository).findById(customerId);
+        verify(creditLimitLedger).reserve(customerId, BigDecimal.valueOf(amount));
         verifyNoInteractions(loanRepository, installmentRepository);
     }
 
@@ -94,19 +102,76 @@ public class LoanServiceTests {
         double rate = 0.1;
         int numOfInstallments = 5;
 
-        Customer customer = new Customer();
-        customer.setId(customerId);
-        customer.setUsername("user1");
-        customer.setCreditLimit(BigDecimal.valueOf(4000.0));
-        customer.setUsedCreditLimit(BigDecimal.valueOf(1000.0));
-
-        when(customerRepository.findById(customerId)).thenReturn(Optional.of(customer));
+        doThrow(new NotEnoughLimitException(customerId)).when(creditLimitLedger).reserve(eq(customerId), any(BigDecimal.class));
 
         assertThrows(NotEnoughLimitException.class, () -> loanService.createLoan(customerId, amount, rate, numOfInstallments));
 
-        verify(customerRepository).findById(customerId);
+        verify(creditLimitLedger).reserve(customerId, BigDecimal.valueOf(amount));
         verifyNoInteractions(loanRepository, installmentRepository);
     }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void ListLoans_WhenMoreLoansThanLimitThenNextCursorShouldPointAfterLastLoan() {
+        LocalDateTime createdAt = LocalDateTime.of(2024, 12, 1, 10, 0);
+        List<LoanView> loans = List.of(loan(1L, createdAt), loan(2L, createdAt), loan(3L, createdAt.plusDays(1)));
+        when(loanRepository.findViews(any(Specification.class), anyInt())).thenReturn(loans);
+
+        LoanPage page = loanService.listLoans(1L, LoanQuery.builder().limit(2).build());
+
+        assertEquals(List.of(1L, 2L), page.getLoans().stream().map(LoanView::getId).toList());
+        assertEquals(new LoanCursor(createdAt, 2L), LoanCursor.decode(page.getNextCursor()));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void ListLoans_WhenLastPageThenNextCursorShouldBeNull() {
+        LocalDateTime createdAt = LocalDateTime.of(2024, 12, 1, 10, 0);
+        when(loanRepository.findViews(any(Specification.class), anyInt())).thenReturn(List.of(loan(3L, createdAt)));
+
+        String cursor = new LoanCursor(createdAt, 2L).encode();
+        LoanPage page = loanService.listLoans(1L, LoanQuery.builder().limit(2).cursor(cursor).build());
+
+        assertEquals(1, page.getLoans().size());
+        assertNull(page.getNextCursor());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void ListLoans_WhenInstallmentsAreIncludedThenTheyShouldBeLoadedWithOneQuery() {
+        LocalDateTime createdAt = LocalDateTime.of(2024, 12, 1, 10, 0);
+        when(loanRepository.findViews(any(Specification.class), anyInt())).thenReturn(List.of(loan(1L, createdAt), loan(2L, createdAt)));
+        when(installmentRepository.findViewsByLoanIdIn(List.of(1L, 2L)))
+                .thenReturn(List.of(InstallmentView.of(new Installment(1L, BigDecimal.TEN, BigDecimal.TEN, createdAt.toLocalDate()))));
+
+        LoanPage page = loanService.listLoans(1L, LoanQuery.builder().limit(10).build());
+
+        assertEquals(1, page.getLoans().get(0).getInstallments().size());
+        assertEquals(List.of(), page.getLoans().get(1).getInstallments());
+        verify(installmentRepository, times(1)).findViewsByLoanIdIn(anyCollection());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void ListLoans_WhenInstallmentsAreExcludedThenTheyShouldNotBeLoaded() {
+        when(loanRepository.findViews(any(Specification.class), anyInt())).thenReturn(List.of(loan(1L, LocalDateTime.now())));
+
+        LoanPage page = loanService.listLoans(1L, LoanQuery.builder().limit(10).includeInstallments(false).build());
+
+        assertNull(page.getLoans().get(0).getInstallments());
+        verifyNoInteractions(installmentRepository);
+    }
+
+    @Test
+    void ListLoans_WhenCursorIsMalformedThenShouldThrowInvalidCursorException() {
+        assertThrows(InvalidCursorException.class, () -> loanService.listLoans(1L, LoanQuery.builder().limit(2).cursor("bm90LWEtY3Vyc29y").build()));
+        assertThrows(InvalidCursorException.class, () -> loanService.listLoans(1L, LoanQuery.builder().limit(2).cursor("%%%").build()));
+        verifyNoInteractions(loanRepository);
+    }
+
+    private LoanView loan(Long id, LocalDateTime createdAt) {
+        return new LoanView(id, 1L, BigDecimal.valueOf(1000.0), BigDecimal.valueOf(1100.0), 6, createdAt, false);
+    }
 }
 
 class DivideEvenlyTests {
@@ -185,6 +250,27 @@ class DivideEvenlyTests {
         assertTrue(result.stream().allMatch(value -> value == -25.0));
     }
 
+    @Test
+    void testDivideEvenlyLargeAmount() {
+        // Test case with an amount whose cents do not fit into an int
+        double amount = 50_000_000.0;
+        double divider = 3.0;
+
+        List<Double> result = LoanService.divideEvenly(amount, divider);
+
+        assertEquals(3, result.size());
+        assertEquals(16_666_666.66, result.get(0));
+        assertEquals(16_666_666.67, result.get(2));
+    }
+
+    @Test
+    void testDivideEvenlyNegativeAmountWithRemainder() {
+        // Test case with negative amount that does not divide evenly
+        List<Double> result = LoanService.divideEvenly(-100.01, 3.0);
+
+        assertEquals(List.of(-33.34, -33.34, -33.33), result);
+    }
+
     @Test
     void testDivideEvenlyInvalidDivider() {
         // Test case with invalid divider
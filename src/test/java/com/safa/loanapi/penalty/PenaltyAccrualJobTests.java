@@ -0,0 +1,36 @@
+package com.safa.loanapi.penalty;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+
+import static org.mockito.Mockito.verify;
+
+@ExtendWith(MockitoExtension.class)
+class PenaltyAccrualJobTests {
+
+    @InjectMocks
+    private PenaltyAccrualJob penaltyAccrualJob;
+
+    @Mock
+    private PenaltyAccrualService penaltyAccrualService;
+
+    @Test
+    void Run_WhenScheduledThenShouldAccrueForTheDateOfTheClock() {
+        // Already the 2nd in Istanbul while it is still the 1st in UTC
+        ReflectionTestUtils.setField(penaltyAccrualJob, "clock",
+                Clock.fixed(Instant.parse("2025-01-01T22:30:00Z"), ZoneId.of("Europe/Istanbul")));
+
+        penaltyAccrualJob.run();
+
+        verify(penaltyAccrualService).accrue(LocalDate.of(2025, 1, 2));
+    }
+}
@@ -0,0 +1,95 @@
+package com.safa.loanapi.penalty;
+
+import com.safa.loanapi.installment.InstallmentRepository;
+import com.safa.loanapi.installment.dao.Installment;
+import com.safa.loanapi.loan.LoanRepository;
+import com.safa.loanapi.loan.dao.Loan;
+import com.safa.loanapi.penalty.dto.PenaltyAccrualReport;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Runs the penalty accrual against the database with pages of 2 installments, so the overdue installments are
+ * accrued by several workers.
+ */
+@SpringBootTest(properties = {"penalty.accrual.chunkSize=2", "penalty.accrual.enabled=false", "spring.jpa.show-sql=false"})
+class PenaltyAccrualServiceTests {
+
+    @Autowired
+    private PenaltyAccrualService penaltyAccrualService;
+
+    @Autowired
+    private LoanRepository loanRepository;
+
+    @Autowired
+    private InstallmentRepository installmentRepository;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Test
+    void Accrue_WhenInstallmentsAreOverdueThenPenaltyShouldBeAccruedPerDay() {
+        LocalDate today = LocalDate.now();
+        Loan loan = loanRepository.save(new Loan(1L, BigDecimal.valueOf(500.00), BigDecimal.valueOf(500.00), 6, false));
+
+        Installment paid = installment(loan, today.minusDays(50));
+        paid.setIsPaid(true);
+        List<Installment> installments = installmentRepository.saveAll(List.of(
+                installment(loan, today.minusDays(40)),
+                installment(loan, today.minusDays(20)),
+                installment(loan, today.minusDays(10)),
+                paid,
+                installment(loan, today),
+                installment(loan, today.plusMonths(1))));
+
+        PenaltyAccrualReport report = penaltyAccrualService.accrue(today);
+
+        Map<Long, Installment> accrued = installmentRepository.findAllByLoanId(loan.getId()).stream()
+                .collect(Collectors.toMap(Installment::getId, Function.identity()));
+        assertAccrued(accrued.get(installments.get(0).getId()), 40, "4.00");
+        assertAccrued(accrued.get(installments.get(1).getId()), 20, "2.00");
+        assertAccrued(accrued.get(installments.get(2).getId()), 10, "1.00");
+
+        // Paid installments and the ones that are not overdue yet are left alone
+        assertAccrued(accrued.get(installments.get(3).getId()), 0, "0.00");
+        assertAccrued(accrued.get(installments.get(4).getId()), 0, "0.00");
+        assertAccrued(accrued.get(installments.get(5).getId()), 0, "0.00");
+
+        assertTrue(report.getInstallments() >= 3);
+        assertTrue(report.getAccruedPenalty().compareTo(new BigDecimal("7.00")) >= 0);
+        assertEquals(1.0, meterRegistry.get("penalty.accrual.progress").gauge().value());
+        assertEquals(report.getInstallments(), (long) meterRegistry.get("installments.overdue").gauge().value());
+    }
+
+    @Test
+    void Accrue_WhenRunAgainOnALaterDayThenPenaltyShouldBeRecomputed() {
+        LocalDate today = LocalDate.now();
+        Loan loan = loanRepository.save(new Loan(1L, BigDecimal.valueOf(100.00), BigDecimal.valueOf(100.00), 6, false));
+        Installment installment = installmentRepository.save(installment(loan, today.minusDays(5)));
+
+        penaltyAccrualService.accrue(today);
+        penaltyAccrualService.accrue(today.plusDays(1));
+
+        assertAccrued(installmentRepository.findById(installment.getId()).orElseThrow(), 6, "0.60");
+    }
+
+    private static Installment installment(Loan loan, LocalDate dueDate) {
+        return new Installment(loan.getId(), BigDecimal.valueOf(100.00), BigDecimal.valueOf(100.00), dueDate);
+    }
+
+    private static void assertAccrued(Installment installment, int overdueDays, String penalty) {
+        assertEquals(overdueDays, installment.getOverdueDays());
+        assertEquals(new BigDecimal(penalty), installment.getAccruedPenalty());
+    }
+}
@@ -0,0 +1,281 @@
+package com.safa.loanapi.settlement;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.safa.loanapi.common.LoanMetrics;
+import com.safa.loanapi.common.concurrency.StripedLockManager;
+import com.safa.loanapi.customer.CreditLimitLedger;
+import com.safa.loanapi.customer.CustomerSummaryService;
+import com.safa.loanapi.exception.ConcurrentUpdateException;
+import com.safa.loanapi.installment.InstallmentRepository;
+import com.safa.loanapi.installment.dao.Installment;
+import com.safa.loanapi.loan.LoanRepository;
+import com.safa.loanapi.loan.dao.Loan;
+import com.safa.loanapi.settlement.dto.SettlementReport;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.persistence.EntityManager;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.LongStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class SettlementServiceTests {
+
+    @InjectMocks
+    private SettlementService settlementService;
+
+    @Mock
+    private LoanRepository loanRepository;
+
+    @Mock
+    private InstallmentRepository installmentRepository;
+
+    @Mock
+    private CreditLimitLedger creditLimitLedger;
+
+    @Mock
+    private CustomerSummaryService customerSummaryService;
+
+    @Mock
+    private LoanMetrics loanMetrics;
+
+    @Mock
+    private EntityManager entityManager;
+
+    @Mock
+    private TransactionTemplate transactionTemplate;
+
+    @TempDir
+    private Path tempDir;
+
+    @BeforeEach
+    void setUp() {
+        ReflectionTestUtils.setField(settlementService, "objectMapper", new ObjectMapper());
+        ReflectionTestUtils.setField(settlementService, "clock", Clock.systemDefaultZone());
+        ReflectionTestUtils.setField(settlementService, "chunkSize", 2);
+        ReflectionTestUtils.setField(settlementService, "lockBatchSize", 50);
+        ReflectionTestUtils.setField(settlementService, "stripedLockManager",
+                new StripedLockManager(16, Duration.ofMillis(50), 1, new SimpleMeterRegistry()));
+
+        when(transactionTemplate.execute(any())).thenAnswer(invocation ->
+                invocation.getArgument(0, TransactionCallback.class).doInTransaction(mock(TransactionStatus.class)));
+    }
+
+    @Test
+    void Settle_WhenPaymentsCoverInstallmentsThenTheyShouldBePaidAndReported() throws Exception {
+        Loan loan = new Loan();
+        loan.setId(1L);
+        loan.setCustomerId(100L);
+        loan.setIsPaid(false);
+
+        List<Installment> installments = new ArrayList<>();
+        installments.add(installment(1L, LocalDate.now().minusDays(10)));
+        installments.add(installment(2L, LocalDate.now()));
+
+        when(loanRepository.findAllById(anyIterable())).thenReturn(List.of(loan));
+        when(installmentRepository.findAllByLoanIdInAndIsPaidOrderByDueDateAsc(anyCollection(), eq(false))).thenReturn(installments);
+
+        Path input = tempDir.resolve("payments.csv");
+        Files.writeString(input, """
+                loan_id,amount
+                1,101.0
+                {"loan_id": 1, "amount": 106.0}
+                not-a-payment
+                """);
+        Path output = tempDir.resolve("results.csv");
+
+        SettlementReport report = settlementService.settle(input, output);
+
+        assertEquals(3, report.getRecords());
+        assertEquals(2, report.getSettled());
+        assertEquals(1, report.getRejected());
+
+        List<String> results = Files.readAllLines(output);
+        assertEquals(SettlementService.RESULT_HEADER, results.get(0));
+        assertEquals("2,1,SETTLED,1,101.0,false,", results.get(1));
+        assertEquals("3,1,SETTLED,1,100.0,true,", results.get(2));
+        assertTrue(results.get(3).startsWith("4,,REJECTED,"));
+
+        assertTrue(loan.getIsPaid());
+        verify(creditLimitLedger, times(2)).release(100L, BigDecimal.valueOf(100.0));
+        verify(installmentRepository, never()).save(any());
+        verify(entityManager, times(2)).clear();
+    }
+
+    @Test
+    void Settle_WhenLoanDoesNotExistThenPaymentShouldBeRejected() throws Exception {
+        when(loanRepository.findAllById(anyIterable())).thenReturn(List.of());
+
+        Path input = tempDir.resolve("payments.csv");
+        Files.writeString(input, "42,100.0\n");
+        Path output = tempDir.resolve("results.csv");
+
+        SettlementReport report = settlementService.settle(input, output);
+
+        assertEquals(1, report.getRejected());
+        assertEquals("1,42,REJECTED,0,0.0,false,\"Loan with id 42 not found\"", Files.readAllLines(output).get(1));
+    }
+
+    @Test
+    void Settle_WhenAmountIsNotAPositiveNumberThenPaymentShouldBeRejectedWithoutPayingAnything() throws Exception {
+        Loan loan = loan(1L, 100L);
+        Installment installment = installment(1L, LocalDate.now());
+        lenient().when(loanRepository.findAllById(anyIterable())).thenReturn(List.of(loan));
+        lenient().when(installmentRepository.findAllByLoanIdInAndIsPaidOrderByDueDateAsc(anyCollection(), eq(false))).thenReturn(List.of(installment));
+
+        Path input = tempDir.resolve("payments.csv");
+        Files.writeString(input, """
+                1,NaN
+                1,Infinity
+                1,-5
+                1,0
+                {"loan_id": 1, "amount": "NaN"}
+                """);
+        Path output = tempDir.resolve("results.csv");
+
+        SettlementReport report = settlementService.settle(input, output);
+
+        assertEquals(5, report.getRejected());
+        assertEquals(0, report.getSettled());
+        List<String> results = Files.readAllLines(output);
+        for (int line = 1; line <= 5; line++) {
+            assertEquals(line + ",1,REJECTED,0,0.0,false,\"Amount must be a positive number\"", results.get(line));
+        }
+        assertFalse(installment.getIsPaid());
+        assertFalse(loan.getIsPaid());
+        verify(installmentRepository, never()).findAllByLoanIdInAndIsPaidOrderByDueDateAsc(argThat(ids -> !ids.isEmpty()), anyBoolean());
+        verifyNoInteractions(creditLimitLedger, customerSummaryService);
+    }
+
+    @Test
+    void Settle_WhenChunkKeepsConflictingThenOnlyTheConflictingPaymentShouldBeRejected() throws Exception {
+        when(loanRepository.findAllById(anyIterable())).thenAnswer(invocation -> {
+            List<Loan> loans = new ArrayList<>();
+            invocation.<Iterable<Long>>getArgument(0).forEach(id -> loans.add(loan(id, 100L * id)));
+            return loans;
+        });
+        when(installmentRepository.findAllByLoanIdInAndIsPaidOrderByDueDateAsc(anyCollection(), eq(false))).thenAnswer(invocation -> {
+            List<Installment> installments = new ArrayList<>();
+            for (Long loanId : invocation.<Collection<Long>>getArgument(0)) {
+                Installment installment = installment(loanId, LocalDate.now());
+                installment.setLoanId(loanId);
+                installments.add(installment);
+            }
+            return installments;
+        });
+        // Another instance keeps changing loan 2
+        when(loanRepository.saveAll(anyIterable())).thenAnswer(invocation -> {
+            for (Loan loan : invocation.<Iterable<Loan>>getArgument(0)) {
+                if (loan.getId() == 2L) {
+                    throw new ObjectOptimisticLockingFailureException(Loan.class, 2L);
+                }
+            }
+            return List.of();
+        });
+
+        Path input = tempDir.resolve("payments.csv");
+        Files.writeString(input, "1,100.0\n2,100.0\n");
+        Path output = tempDir.resolve("results.csv");
+
+        SettlementReport report = settlementService.settle(input, output);
+
+        assertEquals(1, report.getSettled());
+        assertEquals(1, report.getRejected());
+        List<String> results = Files.readAllLines(output);
+        assertEquals("1,1,SETTLED,1,100.0,true,", results.get(1));
+        assertEquals("2,2,REJECTED,0,0.0,false,\"The loan 2 is being changed by another request, please try again.\"", results.get(2));
+    }
+
+    @Test
+    void Settle_WhenLargeChunkIsBeingSettledThenUnrelatedLoansShouldNotWaitForIt() throws Exception {
+        StripedLockManager stripedLockManager = new StripedLockManager(1024, Duration.ofMillis(50), 1, new SimpleMeterRegistry());
+        ReflectionTestUtils.setField(settlementService, "stripedLockManager", stripedLockManager);
+        ReflectionTestUtils.setField(settlementService, "chunkSize", 1000);
+        ReflectionTestUtils.setField(settlementService, "lockBatchSize", 10);
+
+        CountDownLatch batchLocked = new CountDownLatch(1);
+        CountDownLatch paymentsMade = new CountDownLatch(1);
+        AtomicInteger largestBatch = new AtomicInteger();
+        when(loanRepository.findAllById(anyIterable())).thenAnswer(invocation -> {
+            List<Loan> loans = new ArrayList<>();
+            invocation.<Iterable<Long>>getArgument(0).forEach(id -> loans.add(loan(id, 100L * id)));
+            largestBatch.accumulateAndGet(loans.size(), Math::max);
+            batchLocked.countDown();
+            assertTrue(paymentsMade.await(5, TimeUnit.SECONDS));
+            return loans;
+        });
+        when(installmentRepository.findAllByLoanIdInAndIsPaidOrderByDueDateAsc(anyCollection(), eq(false))).thenReturn(List.of());
+
+        Path input = tempDir.resolve("payments.csv");
+        Files.writeString(input, LongStream.rangeClosed(1, 1000).mapToObj(id -> id + ",100.0\n").collect(Collectors.joining()));
+        Path output = tempDir.resolve("results.csv");
+
+        CompletableFuture<SettlementReport> settlement = CompletableFuture.supplyAsync(() -> {
+            try {
+                return settlementService.settle(input, output);
+            } catch (Exception e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        assertTrue(batchLocked.await(5, TimeUnit.SECONDS));
+
+        // Payments made through the API to loans that are not in the file, while the first batch holds its locks
+        int paid = 0;
+        for (long loanId = 5001; loanId <= 5100; loanId++) {
+            try {
+                stripedLockManager.execute("loan", loanId, () -> null);
+                paid++;
+            } catch (ConcurrentUpdateException e) {
+                // The loan shares a stripe with a loan of the batch
+            }
+        }
+        paymentsMade.countDown();
+
+        assertEquals(1000, settlement.get(10, TimeUnit.SECONDS).getRecords());
+        assertTrue(paid >= 95, "Only " + paid + " of 100 unrelated payments went through");
+        assertEquals(10, largestBatch.get());
+        verify(loanRepository, times(100)).findAllById(anyIterable());
+    }
+
+    private Loan loan(Long id, Long customerId) {
+        Loan loan = new Loan();
+        loan.setId(id);
+        loan.setCustomerId(customerId);
+        loan.setIsPaid(false);
+        return loan;
+    }
+
+    private Installment installment(Long id, LocalDate dueDate) {
+        Installment installment = new Installment(1L, BigDecimal.valueOf(100.0), BigDecimal.valueOf(100.0), dueDate);
+        installment.setId(id);
+        return installment;
+    }
+}